@@ -2,9 +2,12 @@ package mil.nga.giat.osm;
 
 import com.beust.jcommander.Parameter;
 
+import mil.nga.giat.geowave.datastore.accumulo.util.AccumuloUtils;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+
 public class OSMCommandArgs {
 
-    protected OSMCommandArgs(){}
+    public OSMCommandArgs(){}
 
     protected OSMCommandArgs(String zookeepers, String instanceName, String user, String pass, String osmNamespace, String visibility, Boolean dropOSMData, String ingestDirectory, String hdfsBasePath, String nameNode){
         this.zookeepers = zookeepers;
@@ -40,7 +43,7 @@ public class OSMCommandArgs {
     @Parameter(names = {"--dropOSMData"}, required = false, description = "delete all OSM data for the specified namespace")
 	public boolean dropOSMData;
 
-    @Parameter(names = {"-in", "--inputDirectory"}, required = false, description = "directory to ingest files from - will match all files with the .pbf extension")
+    @Parameter(names = {"-in", "--inputDirectory"}, required = false, description = "directory to ingest files from - will match all files with the .pbf extension, and OSM XML files ending in .osm, .osm.gz or .osm.bz2")
 	public String ingestDirectory;
 
     @Parameter(names = {"-out", "--hdfsBasePath"}, required = false, description = "directory to stage hdfs files to  - user must have write permissions")
@@ -49,8 +52,59 @@ public class OSMCommandArgs {
     @Parameter(names = {"-nn", "--hdfsNamenode"}, required = false, description = "hdfs namenode in the format hostname:port")
 	public String nameNode;
 
+    @Parameter(names = {"-pt", "--parserThreads"}, required = false, description = "number of threads used to inflate/decode PBF blocks, or to decompress .osm.bz2 blocks; 1 uses the single threaded osmosis reader for PBF")
+	public int parserThreads = 1;
+
+    @Parameter(names = {"--mappedInput"}, required = false, description = "memory map PBF files instead of streaming them; blobs are decoded in place with --parserThreads workers")
+	public boolean mappedInput;
+
+    @Parameter(names = {"--directIngest"}, required = false, description = "write parsed entities straight to accumulo instead of staging avro files to hdfs")
+	public boolean directIngest;
+
+    @Parameter(names = {"-wt", "--writerThreads"}, required = false, description = "number of accumulo batch writer threads used by --directIngest")
+	public int writerThreads = 4;
+
+    @Parameter(names = {"-wm", "--writerMemoryMB"}, required = false, description = "accumulo batch writer buffer size in MB used by --directIngest")
+	public int writerMemoryMB = 64;
+
+    @Parameter(names = {"--schemaVersion"}, required = false, description = "row layout written by --directIngest: 1 = one key per attribute/tag, 2 = packed attributes and tags")
+	public int schemaVersion = Schema.VERSION_COLUMNS;
+
+    @Parameter(names = {"--fixedPointCoordinates"}, required = false, description = "store node coordinates written by --directIngest as 1e-7 fixed-point ints instead of doubles")
+	public boolean fixedPointCoordinates;
+
+    @Parameter(names = {"--tablets"}, required = false, description = "number of tablets to pre-split a new OSM table into with --directIngest; overrides --expectedEntities and --tabletSizeMB")
+	public int tablets = 0;
+
+    @Parameter(names = {"--expectedEntities"}, required = false, description = "expected total of nodes, ways, and relations; sizes the pre-split of a new OSM table with --directIngest")
+	public long expectedEntities = 0;
+
+    @Parameter(names = {"--tabletSizeMB"}, required = false, description = "target tablet size used to pre-split a new OSM table with --directIngest")
+	public long tabletSizeMB = 1024;
+
+    @Parameter(names = {"--wayLocations"}, required = false, description = "write each way with the locations of its nodes, so conversion needs no node lookups for it")
+	public boolean wayLocations;
+
+    @Parameter(names = {"--locationIndexFile"}, required = false, description = "memory mapped file --wayLocations moves its node location index to once it outgrows the heap")
+	public String locationIndexFile = System.getProperty("java.io.tmpdir") + "/osm-node-locations.idx";
+
+    @Parameter(names = {"--locationIndexHeapEntries"}, required = false, description = "node locations --wayLocations keeps on the heap (16 bytes each) before moving to --locationIndexFile")
+	public int locationIndexHeapEntries = 10000000;
+
+    @Parameter(names = {"--applyChanges"}, required = false, description = "apply the osmChange files (.osc, .osc.gz, .osc.bz2) in --inputDirectory, in file name order, to the existing OSM table; rows are written with --schemaVersion and --fixedPointCoordinates, which must match the table")
+	public boolean applyChanges;
+
+    @Parameter(names = {"--changeBatchSize"}, required = false, description = "changes --applyChanges reads the stored versions of in one batch scan")
+	public int changeBatchSize = 10000;
+
 	public String extension = ".pbf";
 
+	public String osmTableName = "OSM";
+
+	public String getQualifiedTableName(){
+		return AccumuloUtils.getQualifiedTableName(osmNamespace, osmTableName);
+	}
+
 
 	public String getNodesBasePath(){
 		return hdfsBasePath + "/nodes";
@@ -0,0 +1,283 @@
+package mil.nga.giat.osm.accumulo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.geowave.core.store.data.field.FieldReader;
+import mil.nga.giat.geowave.core.store.data.field.FieldUtils;
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.PackedRow;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.parser.OsmChangeSink;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Applies osmChange entities to the rows already in the OSM table.
+ *
+ * Changes are collected in batches; the current columns of every entity in a batch are read with
+ * one batch scan, changes whose version isn't newer than the stored one are skipped, and each
+ * remaining change becomes a single mutation: the entity's new columns, plus deletes of its old
+ * columns that the new version no longer has (dropped tags, members or way locations). A deleted
+ * entity has all of its columns deleted. Only the column family of the entity's type is touched,
+ * since a node, a way and a relation with the same id share a row.
+ *
+ * Node changes are refused for tables whose ways carry node locations (Schema.hasWayLocations):
+ * there's no index from a node to the ways holding its location, so moving or deleting a node would
+ * leave those ways' locations stale. Such tables are re-ingested instead.
+ */
+public class AccumuloChangeSink implements OsmChangeSink, Closeable
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(AccumuloChangeSink.class);
+
+	private final BatchWriter writer;
+	private final BatchScanner scanner;
+	private final OsmMutationBuilder builder;
+	private final int batchSize;
+	private final FieldReader<Long> longReader = FieldUtils.getDefaultReaderForClass(Long.class);
+
+	//latest change per entity, waiting for the batch scan
+	private final Map<ByteBuffer, Change> pending = new HashMap<>();
+	private boolean pendingNodes = false;
+	private final boolean wayLocations;
+
+	private long updated = 0;
+	private long deleted = 0;
+	private long stale = 0;
+
+	/**
+	 * @param wayLocations the table's ways carry node locations, see Schema.hasWayLocations
+	 */
+	public AccumuloChangeSink(BatchWriter writer, BatchScanner scanner, OsmMutationBuilder builder, int batchSize, boolean wayLocations){
+		this.writer = writer;
+		this.scanner = scanner;
+		this.builder = builder;
+		this.batchSize = Math.max(1, batchSize);
+		this.wayLocations = wayLocations;
+	}
+
+	@Override
+	public void write(Node node) throws IOException {
+		add(Schema.CF.NODE, node.getCommon(), builder.getMutation(node));
+	}
+
+	@Override
+	public void write(Way way) throws IOException {
+		add(Schema.CF.WAY, way.getCommon(), builder.getMutation(way));
+	}
+
+	@Override
+	public void write(Relation relation) throws IOException {
+		add(Schema.CF.RELATION, relation.getCommon(), builder.getMutation(relation));
+	}
+
+	@Override
+	public void delete(Node node) throws IOException {
+		add(Schema.CF.NODE, node.getCommon(), null);
+	}
+
+	@Override
+	public void delete(Way way) throws IOException {
+		add(Schema.CF.WAY, way.getCommon(), null);
+	}
+
+	@Override
+	public void delete(Relation relation) throws IOException {
+		add(Schema.CF.RELATION, relation.getCommon(), null);
+	}
+
+	private void add(byte[] cf, Primitive p, Mutation mutation) throws IOException {
+		Change change = new Change(Schema.getIdHash(p.getId()), cf, p.getVersion(), mutation);
+		ByteBuffer key = entityKey(change.row, cf);
+		Change previous = pending.get(key);
+		if (previous == null || previous.version <= change.version){
+			pending.put(key, change);
+		}
+		if (Arrays.equals(cf, Schema.CF.NODE)){
+			pendingNodes = true;
+		}
+		if (pending.size() >= batchSize){
+			flush();
+		}
+	}
+
+	/**
+	 * Applies the pending changes
+	 */
+	public void flush() throws IOException {
+		if (pending.isEmpty()){
+			return;
+		}
+		if (pendingNodes && wayLocations){
+			throw new IOException("Node changes would leave the way locations (" + new String(Schema.CQ.LOCATIONS, Schema.CHARSET) + ") in this table stale, re-ingest it instead");
+		}
+		Map<ByteBuffer, Current> current = scanCurrent();
+		for (Map.Entry<ByteBuffer, Change> kvp : pending.entrySet()){
+			Change change = kvp.getValue();
+			Current stored = current.get(kvp.getKey());
+			if (stored != null && stored.version > 0 && stored.version >= change.version){
+				stale++;
+				continue;
+			}
+
+			//the builder's updates are copied, a serialized mutation can't take the deletes
+			Mutation m = new Mutation(change.row);
+			//qualifier and visibility, a column stored under another visibility is a different column
+			Set<ByteBuffer> written = new HashSet<>();
+			if (change.mutation != null){
+				for (ColumnUpdate update : change.mutation.getUpdates()){
+					m.put(update.getColumnFamily(), update.getColumnQualifier(), new ColumnVisibility(update.getColumnVisibility()), update.getValue());
+					written.add(columnKey(update.getColumnQualifier(), update.getColumnVisibility()));
+				}
+			}
+			if (stored != null){
+				for (Key column : stored.columns){
+					byte[] cq = column.getColumnQualifierData().toArray();
+					byte[] cv = column.getColumnVisibilityData().toArray();
+					if (!written.contains(columnKey(cq, cv))){
+						m.putDelete(change.cf, cq, new ColumnVisibility(cv));
+					}
+				}
+			}
+			if (m.size() == 0){
+				//delete of an entity that isn't stored
+				continue;
+			}
+			try {
+				writer.addMutation(m);
+			}
+			catch (MutationsRejectedException e) {
+				throw new IOException("Unable to apply OSM change", e);
+			}
+			if (change.mutation == null){
+				deleted++;
+			}
+			else {
+				updated++;
+			}
+		}
+		pending.clear();
+		pendingNodes = false;
+	}
+
+	/**
+	 * Columns and version of each pending entity as stored
+	 */
+	private Map<ByteBuffer, Current> scanCurrent(){
+		List<Range> ranges = new ArrayList<>(pending.size());
+		Set<ByteBuffer> families = new HashSet<>();
+		for (Change change : pending.values()){
+			ranges.add(new Range(new Text(change.row)));
+			families.add(ByteBuffer.wrap(change.cf));
+		}
+		scanner.setRanges(Range.mergeOverlapping(ranges));
+		scanner.clearColumns();
+		for (ByteBuffer cf : families){
+			scanner.fetchColumnFamily(new Text(cf.array()));
+		}
+
+		Map<ByteBuffer, Current> current = new HashMap<>();
+		for (Map.Entry<Key, Value> entry : scanner){
+			Key k = entry.getKey();
+			ByteBuffer key = entityKey(k.getRowData().toArray(), k.getColumnFamilyData().toArray());
+			if (!pending.containsKey(key)){
+				continue;
+			}
+			Current stored = current.get(key);
+			if (stored == null){
+				stored = new Current();
+				current.put(key, stored);
+			}
+			stored.columns.add(k);
+			ByteSequence cq = k.getColumnQualifierData();
+			if (Schema.arraysEqual(cq, Schema.CQ.VERSION)){
+				stored.version = longReader.readField(entry.getValue().get());
+			}
+			else if (Schema.arraysEqual(cq, Schema.CQ.PACKED)){
+				stored.version = PackedRow.decodeCore(entry.getValue().get()).version;
+			}
+		}
+		return current;
+	}
+
+	private static ByteBuffer entityKey(byte[] row, byte[] cf){
+		ByteBuffer key = ByteBuffer.allocate(row.length + cf.length);
+		key.put(row).put(cf).flip();
+		return key;
+	}
+
+	private static ByteBuffer columnKey(byte[] cq, byte[] cv){
+		ByteBuffer key = ByteBuffer.allocate(4 + cq.length + cv.length);
+		key.putInt(cq.length).put(cq).put(cv).flip();
+		return key;
+	}
+
+	public void logStatistics(){
+		LOGGER.info(String.format(
+				"Applied %d updates and %d deletes, skipped %d stale changes",
+				updated,
+				deleted,
+				stale));
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			writer.close();
+		}
+		catch (MutationsRejectedException e) {
+			throw new IOException("Unable to flush OSM changes", e);
+		}
+		finally {
+			scanner.close();
+			logStatistics();
+		}
+	}
+
+	private static class Change
+	{
+		private final byte[] row;
+		private final byte[] cf;
+		private final long version;
+		//null for a delete
+		private final Mutation mutation;
+
+		private Change(byte[] row, byte[] cf, Long version, Mutation mutation){
+			this.row = row;
+			this.cf = cf;
+			this.version = version == null ? 0 : version;
+			this.mutation = mutation;
+		}
+	}
+
+	private static class Current
+	{
+		private final List<Key> columns = new ArrayList<>();
+		private long version = 0;
+	}
+}
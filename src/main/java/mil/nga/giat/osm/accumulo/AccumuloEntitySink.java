@@ -0,0 +1,126 @@
+package mil.nga.giat.osm.accumulo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.Mutation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.parser.OsmEntitySink;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Writes parsed entities straight to the OSM table, bypassing the Avro staging files.
+ *
+ * Rows are built with the same OsmMutationBuilder the ingest mappers use; the BatchWriter does the
+ * multithreaded sending. Entity and byte counts are logged periodically and on close so runs can be
+ * compared against the staged MapReduce path.
+ */
+public class AccumuloEntitySink implements OsmEntitySink, Closeable
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(AccumuloEntitySink.class);
+
+	private static final long REPORT_INTERVAL = 1000000;
+
+	private final BatchWriter writer;
+	private final OsmMutationBuilder builder;
+
+	private final long started = System.nanoTime();
+	private long nodes = 0;
+	private long ways = 0;
+	private long relations = 0;
+	private long bytes = 0;
+
+	public AccumuloEntitySink(BatchWriter writer, OsmMutationBuilder builder){
+		this.writer = writer;
+		this.builder = builder;
+	}
+
+	@Override
+	public void write(Node node) throws IOException {
+		write(builder.getMutation(node));
+		nodes++;
+		report();
+	}
+
+	@Override
+	public void write(Way way) throws IOException {
+		write(builder.getMutation(way));
+		ways++;
+		report();
+	}
+
+	@Override
+	public void write(Relation relation) throws IOException {
+		write(builder.getMutation(relation));
+		relations++;
+		report();
+	}
+
+	private void write(Mutation m) throws IOException {
+		try {
+			writer.addMutation(m);
+		}
+		catch (MutationsRejectedException e) {
+			throw new IOException("Unable to write OSM entity", e);
+		}
+		bytes += m.numBytes();
+	}
+
+	private void report(){
+		if (getEntityCount() % REPORT_INTERVAL == 0){
+			logStatistics();
+		}
+	}
+
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	public long getWayCount() {
+		return ways;
+	}
+
+	public long getRelationCount() {
+		return relations;
+	}
+
+	public long getEntityCount() {
+		return nodes + ways + relations;
+	}
+
+	public long getByteCount() {
+		return bytes;
+	}
+
+	public void logStatistics(){
+		double seconds = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)) / 1000.0;
+		LOGGER.info(String.format(
+				"Ingested %d nodes, %d ways, %d relations (%.0f entities/s, %.2f MB/s of mutations)",
+				nodes,
+				ways,
+				relations,
+				getEntityCount() / seconds,
+				bytes / seconds / (1024 * 1024)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writer.close();
+		}
+		catch (MutationsRejectedException e) {
+			throw new IOException("Unable to flush OSM entities", e);
+		}
+		finally {
+			logStatistics();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package mil.nga.giat.osm.accumulo;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.user.RowFilter;
+
+import mil.nga.giat.osm.accumulo.osmschema.ColumnQualifier;
+import mil.nga.giat.osm.accumulo.osmschema.PackedRow;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.osmfeature.types.features.MappingIndex;
+import mil.nga.giat.osm.types.StringCache;
+import mil.nga.giat.osm.types.TagList;
+
+/**
+ * Drops rows on the tablet server when no tag of any entity in the row is named by a mapping, so
+ * untagged way vertices never leave the tablet server during conversion.
+ *
+ * Configured with one option per mapped tag key, "tag:" + key, holding the newline separated values
+ * (MappingIndex.WILDCARD_VALUE for any value). Both the column per tag and the packed tag layouts
+ * are understood. The class has to be on the tablet servers' classpath.
+ */
+public class MappedTagRowFilter extends RowFilter
+{
+	public static final String TAG_OPTION_PREFIX = "tag:";
+	private static final String VALUE_SEPARATOR = "\n";
+	private static final byte TAG_EXCLUDED_PREFIX = '-';
+
+	private Map<String, Set<String>> tags = new HashMap<>();
+	private final TagList packedTags = new TagList();
+	private final StringCache strings = new StringCache(StringCache.DEFAULT_SIZE);
+
+	/**
+	 * Configures the iterator with every key/value the mapping index can match
+	 */
+	public static void setTags(IteratorSetting is, MappingIndex index){
+		for (Map.Entry<String, Set<String>> kvp : index.getTagValues().entrySet()){
+			is.addOption(TAG_OPTION_PREFIX + kvp.getKey(), join(kvp.getValue()));
+		}
+	}
+
+	private static String join(Collection<String> values){
+		StringBuilder sb = new StringBuilder();
+		for (String value : values){
+			if (sb.length() > 0){
+				sb.append(VALUE_SEPARATOR);
+			}
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key, Value> source, Map<String, String> options, IteratorEnvironment env)
+			throws IOException {
+		super.init(source, options, env);
+		tags = new HashMap<>();
+		for (Map.Entry<String, String> kvp : options.entrySet()){
+			if (kvp.getKey().startsWith(TAG_OPTION_PREFIX)){
+				Set<String> values = new HashSet<>();
+				for (String value : kvp.getValue().split(VALUE_SEPARATOR)){
+					values.add(value);
+				}
+				tags.put(kvp.getKey().substring(TAG_OPTION_PREFIX.length()), values);
+			}
+		}
+	}
+
+	@Override
+	public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env){
+		MappedTagRowFilter copy = (MappedTagRowFilter) super.deepCopy(env);
+		copy.tags = tags;
+		return copy;
+	}
+
+	@Override
+	public boolean acceptRow(SortedKeyValueIterator<Key, Value> rowIterator)
+			throws IOException {
+		while (rowIterator.hasTop()){
+			ByteSequence cq = rowIterator.getTopKey().getColumnQualifierData();
+			if (Schema.arraysEqual(cq, ColumnQualifier.PACKED_TAGS)){
+				packedTags.clear();
+				PackedRow.decodeTags(rowIterator.getTopValue().get(), packedTags, strings);
+				for (int i = 0; i < packedTags.size(); i++){
+					if (matches(packedTags.getKey(i), packedTags.getValue(i))){
+						return true;
+					}
+				}
+			}
+			else if (cq.length() > 0 && cq.byteAt(0) != TAG_EXCLUDED_PREFIX){
+				String key = strings.get(cq.getBackingArray(), cq.offset(), cq.length());
+				byte[] value = rowIterator.getTopValue().get();
+				if (tags.containsKey(key) && matches(key, strings.get(value, 0, value.length))){
+					return true;
+				}
+			}
+			rowIterator.next();
+		}
+		return false;
+	}
+
+	boolean matches(String key, String value){
+		Set<String> values = tags.get(key);
+		return values != null && (values.contains(MappingIndex.WILDCARD_VALUE) || values.contains(value));
+	}
+}
@@ -16,6 +16,13 @@ public class ColumnQualifier {
     public static final byte[] USER_ID = "-uid".getBytes(Schema.CHARSET);
     public static final byte[] OSM_VISIBILITY = "-vis".getBytes(Schema.CHARSET);
     public static final byte[] REFERENCES = "-ref".getBytes(Schema.CHARSET);
+    //way refs as zigzag varint deltas, see TypeUtils.serializeDeltaLongArray; replaces REFERENCES on write
+    public static final byte[] REFERENCES_DELTA = "-rfd".getBytes(Schema.CHARSET);
+    //way node locations resolved at staging time, see TypeUtils.serializeLocations
+    public static final byte[] LOCATIONS = "-loc".getBytes(Schema.CHARSET);
+    //packed layout (Schema.VERSION_PACKED), see PackedRow
+    public static final byte[] PACKED = "-pk".getBytes(Schema.CHARSET);
+    public static final byte[] PACKED_TAGS = "-pt".getBytes(Schema.CHARSET);
     public static final String REFERENCE_MEMID_PREFIX = "-refmem";
     public static final String REFERENCE_ROLEID_PREFIX = "-refrol";
     public static final String REFERENCE_TYPE_PREFIX = "-reftype";
@@ -0,0 +1,216 @@
+package mil.nga.giat.osm.accumulo.osmschema;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.geowave.core.store.data.field.FieldUtils;
+import mil.nga.giat.geowave.core.store.data.field.FieldWriter;
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.TypeUtils;
+import mil.nga.giat.osm.types.generated.LongArray;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Builds the row for a node, way, or relation in the OSM table layout. Shared by the staged ingest
+ * mappers and the direct ingest path so both write identical rows.
+ */
+public class OsmMutationBuilder
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(OsmMutationBuilder.class);
+
+	protected final FieldWriter<?, Long> longWriter = FieldUtils.getDefaultWriterForClass(Long.class);
+	protected final FieldWriter<?, Integer> intWriter = FieldUtils.getDefaultWriterForClass(Integer.class);
+	protected final FieldWriter<?, String> stringWriter = FieldUtils.getDefaultWriterForClass(String.class);
+	protected final FieldWriter<?, Double> doubleWriter = FieldUtils.getDefaultWriterForClass(Double.class);
+	protected final FieldWriter<?, Boolean> booleanWriter = FieldUtils.getDefaultWriterForClass(Boolean.class);
+	protected final FieldWriter<?, Calendar> calendarWriter = FieldUtils.getDefaultWriterForClass(Calendar.class);
+
+	private final ColumnVisibility visibility;
+	private final int schemaVersion;
+	private final boolean fixedPointCoordinates;
+
+	public OsmMutationBuilder(ColumnVisibility visibility){
+		this(visibility, Schema.VERSION_COLUMNS, false);
+	}
+
+	/**
+	 * @param fixedPointCoordinates store node lat/lon columns as 4 byte 1e-7 fixed-point ints rather than doubles;
+	 *                              the packed layout always uses fixed-point
+	 */
+	public OsmMutationBuilder(ColumnVisibility visibility, int schemaVersion, boolean fixedPointCoordinates){
+		if (schemaVersion != Schema.VERSION_COLUMNS && schemaVersion != Schema.VERSION_PACKED){
+			throw new IllegalArgumentException("Unknown OSM schema version: " + schemaVersion);
+		}
+		this.visibility = visibility;
+		this.schemaVersion = schemaVersion;
+		this.fixedPointCoordinates = fixedPointCoordinates;
+	}
+
+	public Mutation getMutation(Node node){
+		Primitive p = node.getCommon();
+		Mutation m = new Mutation(Schema.getIdHash(p.getId()));
+
+		if (schemaVersion == Schema.VERSION_PACKED){
+			putPacked(m, Schema.CF.NODE, p, node.getLatitude(), node.getLongitude());
+			return m;
+		}
+		put(m, Schema.CF.NODE, Schema.CQ.ID, p.getId());
+		if (fixedPointCoordinates){
+			putFixedPoint(m, Schema.CF.NODE, Schema.CQ.LONGITUDE, node.getLongitude());
+			putFixedPoint(m, Schema.CF.NODE, Schema.CQ.LATITUDE, node.getLatitude());
+		}
+		else {
+			put(m, Schema.CF.NODE, Schema.CQ.LONGITUDE, node.getLongitude());
+			put(m, Schema.CF.NODE, Schema.CQ.LATITUDE, node.getLatitude());
+		}
+		putCommon(m, Schema.CF.NODE, p);
+		return m;
+	}
+
+	public Mutation getMutation(Way way){
+		Primitive p = way.getCommon();
+		Mutation m = new Mutation(Schema.getIdHash(p.getId()));
+
+		m.put(Schema.CF.WAY, Schema.CQ.REFERENCES_DELTA, visibility, TypeUtils.serializeDeltaLongArray(way.getNodes()));
+		if (way.getLocations() != null && way.getLocations().size() == way.getNodes().size()){
+			m.put(Schema.CF.WAY, Schema.CQ.LOCATIONS, visibility, TypeUtils.serializeLocations(way.getLocations()));
+		}
+
+		if (schemaVersion == Schema.VERSION_PACKED){
+			putPacked(m, Schema.CF.WAY, p, null, null);
+			return m;
+		}
+		put(m, Schema.CF.WAY, Schema.CQ.ID, p.getId());
+		putCommon(m, Schema.CF.WAY, p);
+		return m;
+	}
+
+	public Mutation getMutation(Relation relation){
+		Primitive p = relation.getCommon();
+		Mutation m = new Mutation(Schema.getIdHash(p.getId()));
+
+		int i = 0;
+		for (RelationMember rm : relation.getMembers()) {
+			put(m, Schema.CF.RELATION, Schema.CQ.getRelationMember(Schema.CQ.REFERENCE_ROLEID_PREFIX, i), rm.getRole());
+			put(m, Schema.CF.RELATION, Schema.CQ.getRelationMember(Schema.CQ.REFERENCE_MEMID_PREFIX, i), rm.getMember());
+			put(m, Schema.CF.RELATION, Schema.CQ.getRelationMember(Schema.CQ.REFERENCE_TYPE_PREFIX, i), rm.getMemberType().toString());
+			i++;
+		}
+
+		if (schemaVersion == Schema.VERSION_PACKED){
+			putPacked(m, Schema.CF.RELATION, p, null, null);
+			return m;
+		}
+		put(m, Schema.CF.RELATION, Schema.CQ.ID, p.getId());
+		putCommon(m, Schema.CF.RELATION, p);
+		return m;
+	}
+
+	/**
+	 * Core attributes and tags as the two PackedRow values
+	 */
+	protected void putPacked(Mutation m, byte[] cf, Primitive p, Double latitude, Double longitude){
+		m.put(cf, Schema.CQ.PACKED, visibility, PackedRow.encodeCore(p, latitude, longitude));
+		if (p.getTags() != null && !p.getTags().isEmpty()) {
+			m.put(cf, Schema.CQ.PACKED_TAGS, visibility, PackedRow.encodeTags(p.getTags()));
+		}
+	}
+
+	/**
+	 * Metadata and tags every entity type carries; zero valued metadata is treated as missing
+	 */
+	protected void putCommon(Mutation m, byte[] cf, Primitive p){
+		if (!Long.valueOf(0).equals(p.getVersion())) {
+			put(m, cf, Schema.CQ.VERSION, p.getVersion());
+		}
+
+		if (!Long.valueOf(0).equals(p.getTimestamp())) {
+			put(m, cf, Schema.CQ.TIMESTAMP, p.getTimestamp());
+		}
+
+		if (!Long.valueOf(0).equals(p.getChangesetId())) {
+			put(m, cf, Schema.CQ.CHANGESET, p.getChangesetId());
+		}
+
+		if (!Long.valueOf(0).equals(p.getUserId())) {
+			put(m, cf, Schema.CQ.USER_ID, p.getUserId());
+		}
+
+		put(m, cf, Schema.CQ.USER_TEXT, p.getUserName());
+		put(m, cf, Schema.CQ.OSM_VISIBILITY, p.getVisible());
+
+		if (p.getTags() != null) {
+			for (Map.Entry<CharSequence, CharSequence> kvp : p.getTags().entrySet()) {
+				put(m, cf, kvp.getKey().toString().getBytes(Schema.CHARSET), kvp.getValue());
+			}
+		}
+	}
+
+	public void putFixedPoint(Mutation m, byte[] cf, byte[] cq, Double degrees) {
+		if (degrees != null) {
+			m.put(cf, cq, visibility, FixedPoint.toBytes(FixedPoint.toFixed(degrees)));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, Long val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, longWriter.writeField(val));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, Integer val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, intWriter.writeField(val));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, Double val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, doubleWriter.writeField(val));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, String val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, stringWriter.writeField(val));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, CharSequence val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, stringWriter.writeField(val.toString()));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, Boolean val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, booleanWriter.writeField(val));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, Calendar val) {
+		if (val != null) {
+			m.put(cf, cq, visibility, calendarWriter.writeField(val));
+		}
+	}
+
+	public void put(Mutation m, byte[] cf, byte[] cq, LongArray val) {
+		if (val != null){
+			try {
+				m.put(cf, cq, visibility, TypeUtils.serializeLongArray(val));
+			} catch (IOException e) {
+				LOGGER.error("Unable to serialize LongArray instance", e);
+			}
+		}
+	}
+}
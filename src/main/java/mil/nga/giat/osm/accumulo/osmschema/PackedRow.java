@@ -0,0 +1,155 @@
+package mil.nga.giat.osm.accumulo.osmschema;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.StringCache;
+import mil.nga.giat.osm.types.TagList;
+import mil.nga.giat.osm.types.VarInt;
+import mil.nga.giat.osm.types.generated.Primitive;
+
+/**
+ * Codec for the packed (schema version 2) row layout. The core attributes of an entity are stored
+ * in a single PACKED value and its tags in a single PACKED_TAGS value, instead of one key per field.
+ *
+ * PACKED: flags byte, zigzag varint id, varint version, zigzag varint timestamp / changeset / user id,
+ * optional length prefixed user name, and for nodes the latitude and longitude as 4 byte fixed-point ints.
+ * PACKED_TAGS: varint count followed by length prefixed key/value pairs.
+ * Zero valued metadata is dropped on read, matching the one column per field layout.
+ */
+public class PackedRow {
+
+	private static final int HAS_COORDINATES = 1;
+	private static final int VISIBLE = 2;
+	private static final int HAS_USER_NAME = 4;
+
+	/**
+	 * Decoded PACKED value; zero valued metadata was not set
+	 */
+	public static class Core {
+		public long id;
+		public long version;
+		public long timestamp;
+		public long changeset;
+		public long userId;
+		public String userName = null;
+		public boolean visible = true;
+		public boolean hasCoordinates = false;
+		public int latitude;
+		public int longitude;
+	}
+
+	public static byte[] encodeCore(Primitive p, Double latitude, Double longitude){
+		ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+		boolean coordinates = latitude != null && longitude != null;
+		int flags = 0;
+		if (coordinates){
+			flags |= HAS_COORDINATES;
+		}
+		if (p.getVisible() == null || p.getVisible()){
+			flags |= VISIBLE;
+		}
+		if (p.getUserName() != null){
+			flags |= HAS_USER_NAME;
+		}
+		out.write(flags);
+		VarInt.writeSignedVarLong(p.getId(), out);
+		VarInt.writeUnsignedVarLong(valueOf(p.getVersion()), out);
+		VarInt.writeSignedVarLong(valueOf(p.getTimestamp()), out);
+		VarInt.writeSignedVarLong(valueOf(p.getChangesetId()), out);
+		VarInt.writeSignedVarLong(valueOf(p.getUserId()), out);
+		if (p.getUserName() != null){
+			VarInt.writeString(p.getUserName().toString(), out);
+		}
+		if (coordinates){
+			byte[] lat = FixedPoint.toBytes(FixedPoint.toFixed(latitude));
+			byte[] lon = FixedPoint.toBytes(FixedPoint.toFixed(longitude));
+			out.write(lat, 0, lat.length);
+			out.write(lon, 0, lon.length);
+		}
+		return out.toByteArray();
+	}
+
+	public static Core decodeCore(byte[] data){
+		return decodeCore(data, new Core());
+	}
+
+	public static Core decodeCore(byte[] data, Core core){
+		return decodeCore(data, core, null);
+	}
+
+	/**
+	 * Decodes into an existing Core, taking the user name from the cache when one is given
+	 */
+	public static Core decodeCore(byte[] data, Core core, StringCache strings){
+		ByteBuffer in = ByteBuffer.wrap(data);
+		int flags = in.get();
+		core.id = VarInt.readSignedVarLong(in);
+		core.version = VarInt.readUnsignedVarLong(in);
+		core.timestamp = VarInt.readSignedVarLong(in);
+		core.changeset = VarInt.readSignedVarLong(in);
+		core.userId = VarInt.readSignedVarLong(in);
+		core.userName = (flags & HAS_USER_NAME) != 0 ? readString(in, strings) : null;
+		core.visible = (flags & VISIBLE) != 0;
+		core.hasCoordinates = (flags & HAS_COORDINATES) != 0;
+		if (core.hasCoordinates){
+			core.latitude = in.getInt();
+			core.longitude = in.getInt();
+		}
+		return core;
+	}
+
+	public static byte[] encodeTags(Map<CharSequence, CharSequence> tags){
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		VarInt.writeUnsignedVarLong(tags.size(), out);
+		for (Map.Entry<CharSequence, CharSequence> kvp : tags.entrySet()){
+			VarInt.writeString(kvp.getKey().toString(), out);
+			VarInt.writeString(kvp.getValue().toString(), out);
+		}
+		return out.toByteArray();
+	}
+
+	public static Map<String, String> decodeTags(byte[] data){
+		ByteBuffer in = ByteBuffer.wrap(data);
+		int count = (int) VarInt.readUnsignedVarLong(in);
+		Map<String, String> tags = new HashMap<>(count * 2);
+		for (int i = 0; i < count; i++){
+			String key = VarInt.readString(in);
+			tags.put(key, VarInt.readString(in));
+		}
+		return tags;
+	}
+
+	/**
+	 * Adds the tags to the list, decoding keys and values through the cache when one is given
+	 */
+	public static void decodeTags(byte[] data, TagList into, StringCache strings){
+		ByteBuffer in = ByteBuffer.wrap(data);
+		int count = (int) VarInt.readUnsignedVarLong(in);
+		for (int i = 0; i < count; i++){
+			String key = readString(in, strings);
+			into.put(key, readString(in, strings));
+		}
+	}
+
+	private static String readString(ByteBuffer in, StringCache strings){
+		if (strings == null){
+			return VarInt.readString(in);
+		}
+		int length = (int) VarInt.readUnsignedVarLong(in);
+		if (length > in.remaining()){
+			throw new BufferUnderflowException();
+		}
+		String value = strings.get(in.array(), in.arrayOffset() + in.position(), length);
+		in.position(in.position() + length);
+		return value;
+	}
+
+	private static long valueOf(Long value){
+		return value == null ? 0 : value;
+	}
+}
@@ -2,10 +2,19 @@ package mil.nga.giat.osm.accumulo.osmschema;
 
 
 
+import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.admin.TableOperations;
 import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.hadoop.io.Text;
 
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -17,11 +26,94 @@ public class Schema {
     public static final ColumnQualifier CQ = new ColumnQualifier();
 	protected static final HashFunction _hf = Hashing.murmur3_128(1);
 
+	//row layouts: one key per attribute/tag, or PackedRow values; readers accept either
+	public static final int VERSION_COLUMNS = 1;
+	public static final int VERSION_PACKED = 2;
+
+	//length in bytes of the row ids produced by getIdHash
+	public static final int ID_HASH_LENGTH = 16;
+
+	//table property set when the ways of a table were written with their node locations (-loc)
+	public static final String WAY_LOCATIONS_PROPERTY = "table.custom.osm.wayLocations";
+	//avro metadata key set on staged way files written with their node locations
+	public static final String WAY_LOCATIONS_META = "osm.wayLocations";
+
+	//rough on disk size of one entity row once compressed in an rfile
+	private static final long ESTIMATED_ENTITY_BYTES = 100;
+	private static final long MAX_PRESPLIT_TABLETS = 100000;
+
 
 	public static byte[] getIdHash(long id){
 		return _hf.hashLong(id).asBytes();
 	}
 
+	/**
+	 * Split points dividing the murmur3 row space into evenly sized tablets. Row ids are uniformly
+	 * distributed hashes, so equal slices of the 128 bit space hold roughly equal numbers of rows.
+	 * @param tablets number of tablets wanted; 1 or less yields no splits
+	 * @return tablets - 1 split points of ID_HASH_LENGTH bytes, in ascending order
+	 */
+	public static SortedSet<Text> getSplitPoints(int tablets){
+		SortedSet<Text> splits = new TreeSet<>();
+		BigInteger space = BigInteger.ONE.shiftLeft(ID_HASH_LENGTH * 8);
+		for (int i = 1; i < tablets; i++){
+			byte[] value = space.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(tablets)).toByteArray();
+			//toByteArray is signed and minimal - strip the sign byte / left pad back to the fixed width
+			byte[] split = new byte[ID_HASH_LENGTH];
+			int length = Math.min(value.length, ID_HASH_LENGTH);
+			System.arraycopy(value, value.length - length, split, ID_HASH_LENGTH - length, length);
+			splits.add(new Text(split));
+		}
+		return splits;
+	}
+
+	/**
+	 * Tablets to pre-split a new table into: the given count if set, otherwise sized from the expected
+	 * number of entities, otherwise from the bytes of input headed for the table
+	 */
+	public static long getTabletCount(long tablets, long expectedEntities, long tabletSizeMB, long inputBytes){
+		if (tablets > 0){
+			return tablets;
+		}
+		long tabletBytes = Math.max(1, tabletSizeMB) * 1024 * 1024;
+		if (expectedEntities > 0){
+			return (expectedEntities * ESTIMATED_ENTITY_BYTES + tabletBytes - 1) / tabletBytes;
+		}
+		return (inputBytes + tabletBytes - 1) / tabletBytes;
+	}
+
+	/**
+	 * Splits a new table before the first write so the load is spread over the cluster from the start.
+	 * Tables that already have splits (an earlier run, or a manual split) are left alone.
+	 * @return true if the table was split
+	 */
+	public static boolean presplit(TableOperations tableOps, String table, long tablets) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+		if (tablets <= 1 || !tableOps.listSplits(table).isEmpty()){
+			return false;
+		}
+		tableOps.addSplits(table, getSplitPoints((int) Math.min(tablets, MAX_PRESPLIT_TABLETS)));
+		return true;
+	}
+
+	/**
+	 * Records on the table that its ways carry node locations
+	 */
+	public static void markWayLocations(TableOperations tableOps, String table) throws AccumuloException, AccumuloSecurityException {
+		tableOps.setProperty(table, WAY_LOCATIONS_PROPERTY, Boolean.TRUE.toString());
+	}
+
+	/**
+	 * @return true if markWayLocations was called for the table
+	 */
+	public static boolean hasWayLocations(TableOperations tableOps, String table) throws AccumuloException, TableNotFoundException {
+		for (Map.Entry<String, String> property : tableOps.getProperties(table)){
+			if (WAY_LOCATIONS_PROPERTY.equals(property.getKey())){
+				return Boolean.parseBoolean(property.getValue());
+			}
+		}
+		return false;
+	}
+
 	public static boolean arraysEqual(ByteSequence array, byte[] value){
 		if (value.length != array.length()){
 			return false;
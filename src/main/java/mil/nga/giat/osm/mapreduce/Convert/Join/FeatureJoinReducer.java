@@ -0,0 +1,76 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import mil.nga.giat.geowave.core.index.ByteArrayId;
+import mil.nga.giat.geowave.core.ingest.hdfs.mapreduce.AbstractMapReduceIngest;
+import mil.nga.giat.geowave.mapreduce.output.GeoWaveOutputKey;
+import mil.nga.giat.osm.mapreduce.Convert.OsmProvider.OsmProvider;
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+import mil.nga.giat.osm.osmfeature.types.features.FeatureDefinitionSet;
+import mil.nga.giat.osm.types.FixedPoint;
+
+/**
+ * Last pass of the join conversion - every entity arrives with the way geometries it needs, so the
+ * features are built against an OsmProvider that never goes back to accumulo.
+ */
+public class FeatureJoinReducer
+		extends Reducer<JoinKey, JoinValue, GeoWaveOutputKey, Object>
+{
+	private ByteArrayId indexId = null;
+	private final SimpleFeatureGenerator sfg = new SimpleFeatureGenerator();
+	private final OsmProvider osmProvider = new OsmProvider();
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		super.setup(context);
+		String primaryIndexIdStr = context.getConfiguration().get(AbstractMapReduceIngest.PRIMARY_INDEX_IDS_KEY);
+		if (primaryIndexIdStr != null){
+			indexId = new ByteArrayId(primaryIndexIdStr);
+		}
+		String mapping = context.getConfiguration().get("osm_mapping");
+		if (mapping != null){
+			FeatureDefinitionSet.initialize(mapping);
+		}
+	}
+
+	@Override
+	protected void reduce(JoinKey key, Iterable<JoinValue> values, Context context) throws IOException, InterruptedException {
+		SimpleFeatureGenerator.OSMUnion osmunion = null;
+		for (JoinValue v : values){
+			if (v.getKind() == JoinValue.Kind.ROW){
+				osmunion = new SimpleFeatureGenerator.OSMUnion(WholeRowIterator.decodeRow(v.getRowKey(), v.getRowValue()));
+			}
+			else if (v.getKind() == JoinValue.Kind.WAY_GEOMETRY){
+				osmProvider.addResolvedWay(v.getId(), v.getReferences(), toCoordinates(v));
+			}
+		}
+
+		if (osmunion != null){
+			List<SimpleFeature> sf = sfg.mapOSMtoSimpleFeature(osmunion, osmProvider);
+			if (sf != null){
+				for (SimpleFeature feat : sf){
+					context.write(new GeoWaveOutputKey(new ByteArrayId(feat.getType().getTypeName()), indexId), feat);
+				}
+			}
+		}
+		osmProvider.clearPrefetched();
+	}
+
+	private static Coordinate[] toCoordinates(JoinValue geometry){
+		Coordinate[] coords = new Coordinate[geometry.getReferences().length];
+		for (int i = 0; i < coords.length; i++){
+			if (geometry.getLatitudes()[i] != JoinValue.MISSING){
+				coords[i] = new Coordinate(FixedPoint.toDegrees(geometry.getLongitudes()[i]), FixedPoint.toDegrees(geometry.getLatitudes()[i]));
+			}
+		}
+		return coords;
+	}
+}
@@ -0,0 +1,76 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+
+/**
+ * Shuffle key for the join conversion stages - node, way and relation ids overlap, so the id is
+ * qualified by the type it refers to.
+ */
+public class JoinKey
+		implements WritableComparable<JoinKey>
+{
+	private SimpleFeatureGenerator.OSMType type = SimpleFeatureGenerator.OSMType.UNSET;
+	private long id;
+
+	public JoinKey(){}
+
+	public JoinKey(SimpleFeatureGenerator.OSMType type, long id){
+		this.type = type;
+		this.id = id;
+	}
+
+	public SimpleFeatureGenerator.OSMType getType() {
+		return type;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(type.ordinal());
+		out.writeLong(id);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		type = SimpleFeatureGenerator.OSMType.values()[in.readByte()];
+		id = in.readLong();
+	}
+
+	@Override
+	public int compareTo(JoinKey o) {
+		int c = type.compareTo(o.type);
+		if (c != 0){
+			return c;
+		}
+		return id < o.id ? -1 : (id == o.id ? 0 : 1);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof JoinKey)){
+			return false;
+		}
+		JoinKey other = (JoinKey) o;
+		return type == other.type && id == other.id;
+	}
+
+	@Override
+	public int hashCode() {
+		//HashPartitioner masks the sign bit, so fold the high half in rather than truncating
+		return 31 * type.ordinal() + (int) (id ^ (id >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return type + ":" + id;
+	}
+}
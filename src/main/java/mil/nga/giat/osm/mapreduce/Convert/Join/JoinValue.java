@@ -0,0 +1,218 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * The records passed between the join conversion stages. Only the fields of the current kind are
+ * populated or serialized; coordinates are 1e-7 fixed-point.
+ */
+public class JoinValue
+		implements Writable
+{
+	public static enum Kind {
+		/** a whole table row, as encoded by WholeRowIterator */
+		ROW,
+		/** a node location, keyed by the node */
+		COORDINATE,
+		/** way id and position of a node reference, keyed by the node */
+		WAY_REFERENCE,
+		/** position and location of one way node, keyed by the way */
+		WAY_COORDINATE,
+		/** id of a relation that has the keyed way as a member */
+		MEMBER_OF,
+		/** a way's references and their locations, keyed by the way itself or a relation using it */
+		WAY_GEOMETRY
+	}
+
+	public static final int MISSING = Integer.MIN_VALUE;
+
+	private Kind kind;
+	private long id;
+	private int position;
+	private int latitude;
+	private int longitude;
+	private Key rowKey;
+	private Value rowValue;
+	private long[] references;
+	private int[] latitudes;
+	private int[] longitudes;
+
+	public JoinValue(){}
+
+	public static JoinValue row(Key key, Value value){
+		JoinValue v = new JoinValue();
+		v.kind = Kind.ROW;
+		v.rowKey = key;
+		v.rowValue = value;
+		return v;
+	}
+
+	public static JoinValue coordinate(int latitude, int longitude){
+		JoinValue v = new JoinValue();
+		v.kind = Kind.COORDINATE;
+		v.latitude = latitude;
+		v.longitude = longitude;
+		return v;
+	}
+
+	public static JoinValue wayReference(long wayId, int position){
+		JoinValue v = new JoinValue();
+		v.kind = Kind.WAY_REFERENCE;
+		v.id = wayId;
+		v.position = position;
+		return v;
+	}
+
+	public static JoinValue wayCoordinate(int position, int latitude, int longitude){
+		JoinValue v = new JoinValue();
+		v.kind = Kind.WAY_COORDINATE;
+		v.position = position;
+		v.latitude = latitude;
+		v.longitude = longitude;
+		return v;
+	}
+
+	public static JoinValue memberOf(long relationId){
+		JoinValue v = new JoinValue();
+		v.kind = Kind.MEMBER_OF;
+		v.id = relationId;
+		return v;
+	}
+
+	/**
+	 * latitudes and longitudes run parallel to references, holding MISSING where a node wasn't found
+	 */
+	public static JoinValue wayGeometry(long wayId, long[] references, int[] latitudes, int[] longitudes){
+		JoinValue v = new JoinValue();
+		v.kind = Kind.WAY_GEOMETRY;
+		v.id = wayId;
+		v.references = references;
+		v.latitudes = latitudes;
+		v.longitudes = longitudes;
+		return v;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public int getLatitude() {
+		return latitude;
+	}
+
+	public int getLongitude() {
+		return longitude;
+	}
+
+	public Key getRowKey() {
+		return rowKey;
+	}
+
+	public Value getRowValue() {
+		return rowValue;
+	}
+
+	public long[] getReferences() {
+		return references;
+	}
+
+	public int[] getLatitudes() {
+		return latitudes;
+	}
+
+	public int[] getLongitudes() {
+		return longitudes;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(kind.ordinal());
+		switch (kind){
+			case ROW:
+				rowKey.write(out);
+				rowValue.write(out);
+				break;
+			case COORDINATE:
+				out.writeInt(latitude);
+				out.writeInt(longitude);
+				break;
+			case WAY_REFERENCE:
+				out.writeLong(id);
+				out.writeInt(position);
+				break;
+			case WAY_COORDINATE:
+				out.writeInt(position);
+				out.writeInt(latitude);
+				out.writeInt(longitude);
+				break;
+			case MEMBER_OF:
+				out.writeLong(id);
+				break;
+			case WAY_GEOMETRY:
+				out.writeLong(id);
+				out.writeInt(references.length);
+				for (int i = 0; i < references.length; i++){
+					out.writeLong(references[i]);
+					out.writeInt(latitudes[i]);
+					out.writeInt(longitudes[i]);
+				}
+				break;
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		//hadoop reuses value instances while iterating, so arrays and rows are always freshly allocated
+		kind = Kind.values()[in.readByte()];
+		switch (kind){
+			case ROW:
+				rowKey = new Key();
+				rowKey.readFields(in);
+				rowValue = new Value();
+				rowValue.readFields(in);
+				break;
+			case COORDINATE:
+				latitude = in.readInt();
+				longitude = in.readInt();
+				break;
+			case WAY_REFERENCE:
+				id = in.readLong();
+				position = in.readInt();
+				break;
+			case WAY_COORDINATE:
+				position = in.readInt();
+				latitude = in.readInt();
+				longitude = in.readInt();
+				break;
+			case MEMBER_OF:
+				id = in.readLong();
+				break;
+			case WAY_GEOMETRY:
+				id = in.readLong();
+				int length = in.readInt();
+				references = new long[length];
+				latitudes = new int[length];
+				longitudes = new int[length];
+				for (int i = 0; i < length; i++){
+					references[i] = in.readLong();
+					latitudes[i] = in.readInt();
+					longitudes[i] = in.readInt();
+				}
+				break;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.StringCache;
+import mil.nga.giat.osm.types.generated.MemberType;
+
+/**
+ * First pass of the join conversion - reads the OSM table sequentially and keys every node location
+ * and every way node reference by node id. Rows needed by the later stages, and the relation
+ * membership of ways, are written straight to the ROWS named output.
+ */
+public class NodeJoinMapper
+		extends Mapper<Key, Value, JoinKey, JoinValue>
+{
+	public static final String ROWS = "rows";
+
+	private MultipleOutputs<JoinKey, JoinValue> mos;
+	private final SimpleFeatureGenerator.OSMUnion osmunion = new SimpleFeatureGenerator.OSMUnion(new StringCache(StringCache.DEFAULT_SIZE));
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		super.setup(context);
+		mos = new MultipleOutputs<>(context);
+	}
+
+	@Override
+	protected void map(Key key, Value value, Context context) throws IOException, InterruptedException {
+		osmunion.reset();
+		for (Map.Entry<Key, Value> entry : WholeRowIterator.decodeRow(key, value).entrySet()){
+			osmunion.add(entry.getKey(), entry.getValue());
+		}
+		if (!osmunion.hasId()){
+			return;
+		}
+
+		switch (osmunion.OsmType){
+			case NODE: {
+				if (osmunion.hasCoordinates()){
+					context.write(new JoinKey(SimpleFeatureGenerator.OSMType.NODE, osmunion.Id),
+							JoinValue.coordinate(FixedPoint.toFixed(osmunion.Lattitude), FixedPoint.toFixed(osmunion.Longitude)));
+				}
+				//untagged nodes are only ever way vertices, never features
+				if (!osmunion.tags.isEmpty()){
+					mos.write(ROWS, new JoinKey(SimpleFeatureGenerator.OSMType.NODE, osmunion.Id), JoinValue.row(key, value));
+				}
+				break;
+			}
+			case WAY: {
+				//ways staged with their node locations need nothing from the node join
+				boolean located = osmunion.Nodes != null && osmunion.Locations != null && osmunion.Locations.length == osmunion.Nodes.length;
+				if (osmunion.Nodes != null && !located){
+					for (int i = 0; i < osmunion.Nodes.length; i++){
+						context.write(new JoinKey(SimpleFeatureGenerator.OSMType.NODE, osmunion.Nodes[i]),
+								JoinValue.wayReference(osmunion.Id, i));
+					}
+				}
+				mos.write(ROWS, new JoinKey(SimpleFeatureGenerator.OSMType.WAY, osmunion.Id), JoinValue.row(key, value));
+				break;
+			}
+			case RELATION: {
+				for (SimpleFeatureGenerator.RelationSet member : osmunion.relationSets.values()){
+					if (member.MemType == MemberType.WAY && member.MemId != null){
+						mos.write(ROWS, new JoinKey(SimpleFeatureGenerator.OSMType.WAY, member.MemId), JoinValue.memberOf(osmunion.Id));
+					}
+				}
+				mos.write(ROWS, new JoinKey(SimpleFeatureGenerator.OSMType.RELATION, osmunion.Id), JoinValue.row(key, value));
+				break;
+			}
+		}
+	}
+
+	@Override
+	protected void cleanup(Context context) throws IOException, InterruptedException {
+		mos.close();
+		super.cleanup(context);
+	}
+}
@@ -0,0 +1,49 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.Reducer;
+
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+
+/**
+ * Attaches each node's location to the ways referencing it, re-keying the result by way.
+ */
+public class NodeJoinReducer
+		extends Reducer<JoinKey, JoinValue, JoinKey, JoinValue>
+{
+	public static enum JoinCounters {
+		MISSING_NODES,
+		MISSING_WAY_ROWS
+	}
+
+	private final List<JoinValue> references = new ArrayList<>();
+
+	@Override
+	protected void reduce(JoinKey key, Iterable<JoinValue> values, Context context) throws IOException, InterruptedException {
+		//no secondary sort, so references seen before the coordinate are held until it turns up
+		references.clear();
+		JoinValue coordinate = null;
+		for (JoinValue v : values){
+			if (v.getKind() == JoinValue.Kind.COORDINATE){
+				coordinate = JoinValue.coordinate(v.getLatitude(), v.getLongitude());
+			}
+			else if (v.getKind() == JoinValue.Kind.WAY_REFERENCE){
+				references.add(JoinValue.wayReference(v.getId(), v.getPosition()));
+			}
+		}
+
+		if (coordinate == null){
+			if (!references.isEmpty()){
+				context.getCounter(JoinCounters.MISSING_NODES).increment(1);
+			}
+			return;
+		}
+		for (JoinValue ref : references){
+			context.write(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, ref.getId()),
+					JoinValue.wayCoordinate(ref.getPosition(), coordinate.getLatitude(), coordinate.getLongitude()));
+		}
+	}
+}
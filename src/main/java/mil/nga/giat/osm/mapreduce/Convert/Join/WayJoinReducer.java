@@ -0,0 +1,85 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+import mil.nga.giat.osm.types.FixedPoint;
+
+/**
+ * Second pass of the join conversion - orders the joined node locations of each way into its
+ * geometry, which is written next to the way row and once for every relation the way belongs to.
+ * Node and relation rows pass through untouched.
+ */
+public class WayJoinReducer
+		extends Reducer<JoinKey, JoinValue, JoinKey, JoinValue>
+{
+	private final List<JoinValue> coordinates = new ArrayList<>();
+	private final List<Long> relations = new ArrayList<>();
+
+	@Override
+	protected void reduce(JoinKey key, Iterable<JoinValue> values, Context context) throws IOException, InterruptedException {
+		if (key.getType() != SimpleFeatureGenerator.OSMType.WAY){
+			for (JoinValue v : values){
+				context.write(key, v);
+			}
+			return;
+		}
+
+		coordinates.clear();
+		relations.clear();
+		JoinValue row = null;
+		for (JoinValue v : values){
+			switch (v.getKind()){
+				case ROW: {
+					row = JoinValue.row(v.getRowKey(), v.getRowValue());
+					break;
+				}
+				case WAY_COORDINATE: {
+					coordinates.add(JoinValue.wayCoordinate(v.getPosition(), v.getLatitude(), v.getLongitude()));
+					break;
+				}
+				case MEMBER_OF: {
+					relations.add(v.getId());
+					break;
+				}
+			}
+		}
+
+		if (row == null){
+			context.getCounter(NodeJoinReducer.JoinCounters.MISSING_WAY_ROWS).increment(1);
+			return;
+		}
+
+		SimpleFeatureGenerator.OSMUnion way = new SimpleFeatureGenerator.OSMUnion(WholeRowIterator.decodeRow(row.getRowKey(), row.getRowValue()));
+		long[] references = way.Nodes == null ? new long[0] : way.Nodes;
+		int[] latitudes = new int[references.length];
+		int[] longitudes = new int[references.length];
+		Arrays.fill(latitudes, JoinValue.MISSING);
+		Arrays.fill(longitudes, JoinValue.MISSING);
+		if (way.Locations != null && way.Locations.length == references.length){
+			for (int i = 0; i < references.length; i++){
+				latitudes[i] = FixedPoint.packedLatitude(way.Locations[i]);
+				longitudes[i] = FixedPoint.packedLongitude(way.Locations[i]);
+			}
+		}
+		for (JoinValue c : coordinates){
+			if (c.getPosition() < references.length){
+				latitudes[c.getPosition()] = c.getLatitude();
+				longitudes[c.getPosition()] = c.getLongitude();
+			}
+		}
+
+		JoinValue geometry = JoinValue.wayGeometry(key.getId(), references, latitudes, longitudes);
+		context.write(key, row);
+		context.write(key, geometry);
+		for (Long relation : relations){
+			context.write(new JoinKey(SimpleFeatureGenerator.OSMType.RELATION, relation), geometry);
+		}
+	}
+}
@@ -1,13 +1,12 @@
 package mil.nga.giat.osm.mapreduce.Convert;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.accumulo.core.data.Key;
-import org.apache.accumulo.core.data.Value;
-import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -18,40 +17,95 @@ import mil.nga.giat.geowave.core.store.adapter.AdapterStore;
 import mil.nga.giat.geowave.datastore.accumulo.metadata.AccumuloAdapterStore;
 import mil.nga.giat.geowave.mapreduce.output.GeoWaveOutputFormat;
 import mil.nga.giat.geowave.mapreduce.output.GeoWaveOutputKey;
+import mil.nga.giat.osm.mapreduce.Convert.OsmProvider.NodeCoordinateCache;
 import mil.nga.giat.osm.mapreduce.Convert.OsmProvider.OsmProvider;
 import mil.nga.giat.osm.mapreduce.Ingest.OSMMapperCommandArgs;
 
 public class OSMConversionMapper extends
-		Mapper<Key, Value, GeoWaveOutputKey, Object>
+		Mapper<Text, SimpleFeatureGenerator.OSMUnion, GeoWaveOutputKey, Object>
 {
 
 	private ByteArrayId indexId = null;
 	private String globalVisibility = "";
 	private final SimpleFeatureGenerator sfg = new SimpleFeatureGenerator();
 	private OsmProvider osmProvider = null;
+	private final List<SimpleFeatureGenerator.OSMUnion> batch = new ArrayList<>();
+	private int batchSize = 1;
+	private long reportedHits = 0;
+	private long reportedMisses = 0;
+	private long reportedEvictions = 0;
+
+	public static enum NodeCacheCounters {
+		HITS,
+		MISSES,
+		EVICTIONS
+	}
 
 	@Override
 	protected void map(
-			final Key key,
-			final Value value,
+			final Text row,
+			final SimpleFeatureGenerator.OSMUnion osmunion,
 			final Context context )
 			throws IOException,
 			InterruptedException {
-		final List<SimpleFeature> sf = sfg.mapOSMtoSimpleFeature(
-				WholeRowIterator.decodeRow(
-						key,
-						value),
-				osmProvider);
-		if ((sf != null) && (sf.size() > 0)) {
-			for (final SimpleFeature feat : sf) {
-				final String name = feat.getType().getTypeName();
-				context.write(
-						new GeoWaveOutputKey(
-								new ByteArrayId(name),
-								indexId),
-						feat);
+		// the input format recycles unions, so the batch has to be flushed within its pool size
+		batch.add(
+				osmunion);
+		if (batch.size() >= batchSize) {
+			flush(
+					context);
+		}
+	}
+
+	/**
+	 * Resolves the references of every buffered row in one pass, then builds their features
+	 */
+	private void flush(
+			final Context context )
+			throws IOException,
+			InterruptedException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		osmProvider.prefetch(
+				batch);
+		for (final SimpleFeatureGenerator.OSMUnion osmunion : batch) {
+			final List<SimpleFeature> sf = sfg.mapOSMtoSimpleFeature(
+					osmunion,
+					osmProvider);
+			if ((sf != null) && (sf.size() > 0)) {
+				for (final SimpleFeature feat : sf) {
+					final String name = feat.getType().getTypeName();
+					context.write(
+							new GeoWaveOutputKey(
+									new ByteArrayId(
+											name),
+									indexId),
+							feat);
+				}
 			}
 		}
+		osmProvider.clearPrefetched();
+		batch.clear();
+		updateCacheCounters(
+				context);
+	}
+
+	private void updateCacheCounters(
+			final Context context ) {
+		final NodeCoordinateCache cache = osmProvider.getNodeCache();
+		context.getCounter(
+				NodeCacheCounters.HITS).increment(
+						cache.getHits() - reportedHits);
+		context.getCounter(
+				NodeCacheCounters.MISSES).increment(
+						cache.getMisses() - reportedMisses);
+		context.getCounter(
+				NodeCacheCounters.EVICTIONS).increment(
+						cache.getEvictions() - reportedEvictions);
+		reportedHits = cache.getHits();
+		reportedMisses = cache.getMisses();
+		reportedEvictions = cache.getEvictions();
 	}
 
 	@Override
@@ -59,6 +113,8 @@ public class OSMConversionMapper extends
 			final Context context )
 			throws IOException,
 			InterruptedException {
+		flush(
+				context);
 		osmProvider.close();
 
 		super.cleanup(
@@ -87,6 +143,9 @@ public class OSMConversionMapper extends
 							"arguments"));
 			osmProvider = new OsmProvider(
 					args);
+			batchSize = Math.max(
+					1,
+					args.conversionBatchSize);
 		}
 		catch (final Exception e) {
 			throw new IllegalArgumentException(
@@ -1,10 +1,12 @@
 package mil.nga.giat.osm.mapreduce.Convert;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.ClientConfiguration;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.client.mapreduce.AbstractInputFormat;
@@ -17,11 +19,22 @@ import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.util.Pair;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.SnappyCodec;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.opengis.feature.simple.SimpleFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.beust.jcommander.JCommander;
 
@@ -35,13 +48,23 @@ import mil.nga.giat.geowave.datastore.accumulo.BasicAccumuloOperations;
 import mil.nga.giat.geowave.datastore.accumulo.metadata.AccumuloAdapterStore;
 import mil.nga.giat.geowave.mapreduce.output.GeoWaveOutputFormat;
 import mil.nga.giat.geowave.mapreduce.output.GeoWaveOutputKey;
+import mil.nga.giat.osm.accumulo.MappedTagRowFilter;
+import mil.nga.giat.osm.mapreduce.Convert.Join.FeatureJoinReducer;
+import mil.nga.giat.osm.mapreduce.Convert.Join.JoinKey;
+import mil.nga.giat.osm.mapreduce.Convert.Join.JoinValue;
+import mil.nga.giat.osm.mapreduce.Convert.Join.NodeJoinMapper;
+import mil.nga.giat.osm.mapreduce.Convert.Join.NodeJoinReducer;
+import mil.nga.giat.osm.mapreduce.Convert.Join.WayJoinReducer;
 import mil.nga.giat.osm.mapreduce.Ingest.OSMMapperCommandArgs;
 import mil.nga.giat.osm.osmfeature.types.features.FeatureDefinitionSet;
+import mil.nga.giat.osm.osmfeature.types.features.MappingIndex;
 
 public class OSMConversionRunner extends
 		Configured implements
 		Tool
 {
+	private static final Logger LOGGER = LoggerFactory.getLogger(
+			OSMConversionRunner.class);
 
 	public static void main(
 			final String[] args )
@@ -64,6 +87,11 @@ public class OSMConversionRunner extends
 				argv,
 				args);
 		final Configuration conf = getConf();
+		if (argv.joinConversion) {
+			return runJoin(
+					argv,
+					conf);
+		}
 
 		// job settings
 
@@ -72,7 +100,195 @@ public class OSMConversionRunner extends
 				argv.jobName + "NodeConversion");
 		job.setJarByClass(
 				OSMConversionRunner.class);
+		setSettings(
+				job,
+				argv);
+		setInput(
+				job,
+				argv,
+				argv.filterRows,
+				false);
+		setOutput(
+				job,
+				argv);
+
+		job.setMapOutputKeyClass(
+				GeoWaveOutputKey.class);
+		job.setMapOutputValueClass(
+				SimpleFeature.class);
+
+		// mappper
+
+		job.setMapperClass(
+				OSMConversionMapper.class);
+
+		// reducer
+		job.setNumReduceTasks(
+				0);
+
+		return job.waitForCompletion(
+				true) ? 0 : -1;
+	}
+
+	/**
+	 * Conversion as three sequential passes with no random reads: node locations are joined onto way
+	 * references, way geometries are assembled and joined onto their relations, and finally every
+	 * entity is converted with everything it references in hand.
+	 */
+	private int runJoin(
+			final OSMMapperCommandArgs argv,
+			final Configuration conf )
+			throws Exception {
+		final Path workDir = new Path(
+				argv.hdfsBasePath,
+				"join");
+		final FileSystem fs = workDir.getFileSystem(
+				conf);
+		if (fs.exists(
+				workDir)) {
+			throw new IOException(
+					"Join work directory already exists: " + workDir);
+		}
+		final Path nodesJoined = new Path(
+				workDir,
+				"nodes");
+		final Path waysJoined = new Path(
+				workDir,
+				"ways");
+
+		// a failed pass leaves its output behind, which would stop the next attempt
+		try {
+			// pass 1 - node locations onto way references
+
+			final Job nodeJob = Job.getInstance(
+					conf,
+					argv.jobName + "NodeJoin");
+			nodeJob.setJarByClass(
+					OSMConversionRunner.class);
+			setInput(
+					nodeJob,
+					argv,
+					false,
+					true);
+			nodeJob.setMapperClass(
+					NodeJoinMapper.class);
+			nodeJob.setReducerClass(
+					NodeJoinReducer.class);
+			setJoinOutput(
+					nodeJob,
+					argv,
+					nodesJoined);
+			MultipleOutputs.addNamedOutput(
+					nodeJob,
+					NodeJoinMapper.ROWS,
+					SequenceFileOutputFormat.class,
+					JoinKey.class,
+					JoinValue.class);
+			if (!nodeJob.waitForCompletion(
+					true)) {
+				return -1;
+			}
+
+			// pass 2 - way geometries onto ways and relations
+
+			final Job wayJob = Job.getInstance(
+					conf,
+					argv.jobName + "WayJoin");
+			wayJob.setJarByClass(
+					OSMConversionRunner.class);
+			wayJob.setInputFormatClass(
+					SequenceFileInputFormat.class);
+			FileInputFormat.setInputPaths(
+					wayJob,
+					nodesJoined);
+			wayJob.setReducerClass(
+					WayJoinReducer.class);
+			setJoinOutput(
+					wayJob,
+					argv,
+					waysJoined);
+			if (!wayJob.waitForCompletion(
+					true)) {
+				return -1;
+			}
+
+			// pass 3 - features
+
+			final Job featureJob = Job.getInstance(
+					conf,
+					argv.jobName + "FeatureJoin");
+			featureJob.setJarByClass(
+					OSMConversionRunner.class);
+			setSettings(
+					featureJob,
+					argv);
+			featureJob.setInputFormatClass(
+					SequenceFileInputFormat.class);
+			FileInputFormat.setInputPaths(
+					featureJob,
+					waysJoined);
+			featureJob.setMapOutputKeyClass(
+					JoinKey.class);
+			featureJob.setMapOutputValueClass(
+					JoinValue.class);
+			featureJob.setReducerClass(
+					FeatureJoinReducer.class);
+			featureJob.setNumReduceTasks(
+					argv.joinReducers);
+			setOutput(
+					featureJob,
+					argv);
+			featureJob.setOutputKeyClass(
+					GeoWaveOutputKey.class);
+			featureJob.setOutputValueClass(
+					SimpleFeature.class);
+			if (!featureJob.waitForCompletion(
+					true)) {
+				return -1;
+			}
+
+			return 0;
+		}
+		finally {
+			fs.delete(
+					workDir,
+					true);
+		}
+	}
+
+	private static void setJoinOutput(
+			final Job job,
+			final OSMMapperCommandArgs argv,
+			final Path output ) {
+		job.setMapOutputKeyClass(
+				JoinKey.class);
+		job.setMapOutputValueClass(
+				JoinValue.class);
+		job.setOutputKeyClass(
+				JoinKey.class);
+		job.setOutputValueClass(
+				JoinValue.class);
+		job.setNumReduceTasks(
+				argv.joinReducers);
+		job.setOutputFormatClass(
+				SequenceFileOutputFormat.class);
+		FileOutputFormat.setOutputPath(
+				job,
+				output);
+		FileOutputFormat.setCompressOutput(
+				job,
+				true);
+		FileOutputFormat.setOutputCompressorClass(
+				job,
+				SnappyCodec.class);
+		SequenceFileOutputFormat.setOutputCompressionType(
+				job,
+				CompressionType.BLOCK);
+	}
 
+	private static void setSettings(
+			final Job job,
+			final OSMMapperCommandArgs argv ) {
 		job.getConfiguration().set(
 				"osm_mapping",
 				argv.getMappingContents());
@@ -85,9 +301,14 @@ public class OSMConversionRunner extends
 					AbstractMapReduceIngest.GLOBAL_VISIBILITY_KEY,
 					argv.visibility);
 		}
+	}
 
-		// input format
-
+	private static void setInput(
+			final Job job,
+			final OSMMapperCommandArgs argv,
+			final boolean filterRows,
+			final boolean wholeRows )
+			throws AccumuloSecurityException {
 		AbstractInputFormat.setConnectorInfo(
 				job,
 				argv.user,
@@ -106,23 +327,73 @@ public class OSMConversionRunner extends
 				new Authorizations(
 						argv.visibility));
 
-		final IteratorSetting is = new IteratorSetting(
-				50,
-				"WholeRow",
-				WholeRowIterator.class);
-		InputFormatBase.addIterator(
-				job,
-				is);
-		job.setInputFormatClass(
-				AccumuloInputFormat.class);
+		if (filterRows) {
+			addRowFilter(
+					job,
+					argv);
+		}
+
+		if (wholeRows) {
+			// the join passes carry the encoded row through to their reducers
+			final IteratorSetting is = new IteratorSetting(
+					50,
+					"WholeRow",
+					WholeRowIterator.class);
+			InputFormatBase.addIterator(
+					job,
+					is);
+			job.setInputFormatClass(
+					AccumuloInputFormat.class);
+		}
+		else {
+			// rows are grouped and decoded by the record reader; the mapper buffers a batch of them
+			job.setInputFormatClass(
+					OSMUnionInputFormat.class);
+			OSMUnionInputFormat.setPoolSize(
+					job,
+					Math.max(
+							1,
+							argv.conversionBatchSize) + 1);
+		}
 		final Range r = new Range();
 		final ArrayList<Pair<Text, Text>> columns = new ArrayList<>();
 		InputFormatBase.setRanges(
 				job,
 				Arrays.asList(
 						r));
+	}
 
-		// output format
+	/**
+	 * Drops rows no mapping can match before they leave the tablet server. Only valid when rows are
+	 * converted on their own; the join passes need the untagged nodes.
+	 */
+	private static void addRowFilter(
+			final Job job,
+			final OSMMapperCommandArgs argv ) {
+		FeatureDefinitionSet.initialize(
+				argv.getMappingContents());
+		final MappingIndex index = FeatureDefinitionSet.getMappingIndex();
+		if (index.getTagValues().isEmpty()) {
+			LOGGER.warn(
+					"Mapping has no tag rules, row filter not applied");
+			return;
+		}
+		final IteratorSetting filter = new IteratorSetting(
+				40,
+				"MappedTags",
+				MappedTagRowFilter.class);
+		MappedTagRowFilter.setTags(
+				filter,
+				index);
+		InputFormatBase.addIterator(
+				job,
+				filter);
+	}
+
+	private static void setOutput(
+			final Job job,
+			final OSMMapperCommandArgs argv )
+			throws Exception {
 		GeoWaveOutputFormat.setDataStoreName(
 				job.getConfiguration(),
 				"accumulo");
@@ -172,21 +443,5 @@ public class OSMConversionRunner extends
 
 		job.setOutputFormatClass(
 				GeoWaveOutputFormat.class);
-		job.setMapOutputKeyClass(
-				GeoWaveOutputKey.class);
-		job.setMapOutputValueClass(
-				SimpleFeature.class);
-
-		// mappper
-
-		job.setMapperClass(
-				OSMConversionMapper.class);
-
-		// reducer
-		job.setNumReduceTasks(
-				0);
-
-		return job.waitForCompletion(
-				true) ? 0 : -1;
 	}
 }
@@ -0,0 +1,109 @@
+package mil.nga.giat.osm.mapreduce.Convert;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.mapreduce.InputFormatBase;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.util.PeekingIterator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import mil.nga.giat.osm.types.StringCache;
+
+/**
+ * Reads the OSM table one row at a time, decoding the consecutive key/values of each row straight
+ * into an OSMUnion. Replaces the WholeRowIterator encode on the tablet server and the decodeRow
+ * TreeMap on the mapper.
+ *
+ * The values handed out are taken round robin from a fixed set of instances and reset before they
+ * are decoded into again, so a mapper may hold on to at most POOL_SIZE - 1 of them.
+ */
+public class OSMUnionInputFormat extends
+		InputFormatBase<Text, SimpleFeatureGenerator.OSMUnion>
+{
+	public static final String POOL_SIZE = "osm.union.pool.size";
+
+	/**
+	 * Number of values a mapper may hold on to at once, plus one for the row being read
+	 */
+	public static void setPoolSize(
+			final Job job,
+			final int size ) {
+		job.getConfiguration().setInt(
+				POOL_SIZE,
+				Math.max(
+						1,
+						size));
+	}
+
+	@Override
+	public RecordReader<Text, SimpleFeatureGenerator.OSMUnion> createRecordReader(
+			final InputSplit split,
+			final TaskAttemptContext context )
+			throws IOException,
+			InterruptedException {
+		log.setLevel(
+				getLogLevel(
+						context));
+		return new RecordReaderBase<Text, SimpleFeatureGenerator.OSMUnion>() {
+			private PeekingIterator<Entry<Key, Value>> entries;
+			private SimpleFeatureGenerator.OSMUnion[] pool;
+			private int next = 0;
+
+			@Override
+			public void initialize(
+					final InputSplit inSplit,
+					final TaskAttemptContext attempt )
+					throws IOException {
+				super.initialize(
+						inSplit,
+						attempt);
+				entries = new PeekingIterator<>(
+						scannerIterator);
+				pool = new SimpleFeatureGenerator.OSMUnion[attempt.getConfiguration().getInt(
+						POOL_SIZE,
+						1)];
+				// one reader thread, so the unions can share a string cache
+				final StringCache strings = new StringCache(
+						StringCache.DEFAULT_SIZE);
+				for (int i = 0; i < pool.length; i++) {
+					pool[i] = new SimpleFeatureGenerator.OSMUnion(
+							strings);
+				}
+				currentK = new Text();
+				currentV = null;
+			}
+
+			@Override
+			public boolean nextKeyValue()
+					throws IOException,
+					InterruptedException {
+				if (!entries.hasNext()) {
+					return false;
+				}
+				final SimpleFeatureGenerator.OSMUnion union = pool[next];
+				next = (next + 1) % pool.length;
+				union.reset();
+
+				currentKey = entries.peek().getKey();
+				currentKey.getRow(
+						currentK);
+				while (entries.hasNext() && (entries.peek().getKey().compareRow(
+						currentK) == 0)) {
+					final Entry<Key, Value> entry = entries.next();
+					union.add(
+							entry.getKey(),
+							entry.getValue());
+					numKeysRead++;
+				}
+				currentV = union;
+				return true;
+			}
+		};
+	}
+}
@@ -0,0 +1,222 @@
+package mil.nga.giat.osm.mapreduce.Convert.OsmProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import mil.nga.giat.geowave.core.geotime.GeometryUtils;
+
+/**
+ * Builds multipolygon rings from member ways that may each be only part of a ring, and polygons from
+ * the rings.
+ *
+ * Ways are stitched together where they share an end node id, found through a primitive open
+ * addressing table of endpoints, so a boundary split over thousands of ways is assembled in linear
+ * time. Holes are matched to shells through an STRtree of the shells' envelopes, and only the
+ * candidates it returns are tested with a prepared containment check.
+ */
+public class MultipolygonBuilder
+{
+	private static final int MIN_RING_SIZE = 4;
+
+	private int unclosed = 0;
+
+	/**
+	 * Assembles rings from the ways; references and coordinates are parallel per way. Ways that can't
+	 * be closed into a ring are left out and counted in getUnclosed.
+	 */
+	public List<LinearRing> buildRings(List<long[]> references, List<Coordinate[]> coordinates){
+		unclosed = 0;
+		List<LinearRing> rings = new ArrayList<>();
+		List<Integer> open = new ArrayList<>();
+		for (int i = 0; i < references.size(); i++){
+			long[] refs = references.get(i);
+			if (refs.length < 2){
+				unclosed++;
+			}
+			else if (refs[0] == refs[refs.length - 1]){
+				addRing(coordinates.get(i), rings);
+			}
+			else {
+				open.add(i);
+			}
+		}
+		if (open.isEmpty()){
+			return rings;
+		}
+
+		//ends of open way w are 2w (first node) and 2w + 1 (last node)
+		Endpoints endpoints = new Endpoints(open.size() * 2);
+		for (int w = 0; w < open.size(); w++){
+			long[] refs = references.get(open.get(w));
+			endpoints.add(refs[0], 2 * w);
+			endpoints.add(refs[refs.length - 1], 2 * w + 1);
+		}
+
+		boolean[] used = new boolean[open.size()];
+		for (int w = 0; w < open.size(); w++){
+			if (used[w]){
+				continue;
+			}
+			used[w] = true;
+			long[] refs = references.get(open.get(w));
+			List<Coordinate> ring = new ArrayList<>(Arrays.asList(coordinates.get(open.get(w))));
+			long first = refs[0];
+			long last = refs[refs.length - 1];
+			int ways = 1;
+			while (last != first){
+				int end = endpoints.unused(last, used);
+				if (end < 0){
+					break;
+				}
+				int next = end / 2;
+				used[next] = true;
+				ways++;
+				long[] nextRefs = references.get(open.get(next));
+				Coordinate[] nextCoords = coordinates.get(open.get(next));
+				//append in walking order, skipping the shared node
+				if (end % 2 == 0){
+					for (int i = 1; i < nextCoords.length; i++){
+						ring.add(nextCoords[i]);
+					}
+					last = nextRefs[nextRefs.length - 1];
+				}
+				else {
+					for (int i = nextCoords.length - 2; i >= 0; i--){
+						ring.add(nextCoords[i]);
+					}
+					last = nextRefs[0];
+				}
+			}
+			if (last != first){
+				unclosed += ways;
+				continue;
+			}
+			addRing(ring.toArray(new Coordinate[ring.size()]), rings);
+		}
+		return rings;
+	}
+
+	/**
+	 * Number of ways the last buildRings call couldn't close into a ring
+	 */
+	public int getUnclosed(){
+		return unclosed;
+	}
+
+	private void addRing(Coordinate[] coordinates, List<LinearRing> rings){
+		if (coordinates.length < MIN_RING_SIZE){
+			unclosed++;
+			return;
+		}
+		rings.add(GeometryUtils.GEOMETRY_FACTORY.createLinearRing(coordinates));
+	}
+
+	/**
+	 * One polygon per outer ring, each holding the inner rings it is the smallest container of, so the
+	 * inner rings of islands inside lakes go to the island rather than the surrounding shell. Inner
+	 * rings outside every outer ring are dropped.
+	 */
+	public static List<Polygon> buildPolygons(List<LinearRing> outer, List<LinearRing> inner){
+		List<Polygon> shells = new ArrayList<>(outer.size());
+		double[] areas = new double[outer.size()];
+		STRtree index = new STRtree();
+		for (int i = 0; i < outer.size(); i++){
+			Polygon shell = GeometryUtils.GEOMETRY_FACTORY.createPolygon(outer.get(i), null);
+			shells.add(shell);
+			areas[i] = shell.getArea();
+			index.insert(shell.getEnvelopeInternal(), i);
+		}
+
+		List<List<LinearRing>> holes = new ArrayList<>(outer.size());
+		PreparedGeometry[] prepared = new PreparedGeometry[outer.size()];
+		for (int i = 0; i < outer.size(); i++){
+			holes.add(new ArrayList<LinearRing>());
+		}
+		for (LinearRing ring : inner){
+			int owner = -1;
+			for (Object candidate : index.query(ring.getEnvelopeInternal())){
+				int i = (Integer) candidate;
+				if (owner >= 0 && areas[i] >= areas[owner]){
+					continue;
+				}
+				if (prepared[i] == null){
+					prepared[i] = PreparedGeometryFactory.prepare(shells.get(i));
+				}
+				if (prepared[i].contains(ring)){
+					owner = i;
+				}
+			}
+			if (owner >= 0){
+				holes.get(owner).add(ring);
+			}
+		}
+
+		List<Polygon> polygons = new ArrayList<>(outer.size());
+		for (int i = 0; i < outer.size(); i++){
+			List<LinearRing> h = holes.get(i);
+			polygons.add(GeometryUtils.GEOMETRY_FACTORY.createPolygon(outer.get(i), h.toArray(new LinearRing[h.size()])));
+		}
+		return polygons;
+	}
+
+	/**
+	 * Node id to way ends, open addressing over primitive arrays. Ends sharing a node are chained
+	 * through next, so junctions where more than two ways meet are kept.
+	 */
+	private static class Endpoints
+	{
+		private final long[] ids;
+		//first end + 1 for each occupied bucket, 0 when empty
+		private final int[] heads;
+		//next end with the same node, -1 at the end of a chain
+		private final int[] next;
+		private final int mask;
+
+		Endpoints(int ends){
+			int buckets = Integer.highestOneBit(Math.max(2, ends) * 2 - 1) << 1;
+			ids = new long[buckets];
+			heads = new int[buckets];
+			next = new int[ends];
+			mask = buckets - 1;
+		}
+
+		void add(long id, int end){
+			int b = find(id);
+			next[end] = heads[b] - 1;
+			ids[b] = id;
+			heads[b] = end + 1;
+		}
+
+		/**
+		 * @return an end at the node whose way isn't used yet, or -1
+		 */
+		int unused(long id, boolean[] used){
+			for (int end = heads[find(id)] - 1; end >= 0; end = next[end]){
+				if (!used[end / 2]){
+					return end;
+				}
+			}
+			return -1;
+		}
+
+		//the bucket holding the id, or the empty bucket it belongs in
+		private int find(long id){
+			long h = id;
+			h ^= h >>> 33;
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+			int b = (int) h & mask;
+			while (heads[b] != 0 && ids[b] != id){
+				b = (b + 1) & mask;
+			}
+			return b;
+		}
+	}
+}
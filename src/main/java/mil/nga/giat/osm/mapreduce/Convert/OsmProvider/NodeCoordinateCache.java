@@ -0,0 +1,156 @@
+package mil.nga.giat.osm.mapreduce.Convert.OsmProvider;
+
+import mil.nga.giat.osm.types.FixedPoint;
+
+/**
+ * Fixed capacity node id to coordinate cache with CLOCK (second chance) eviction.
+ *
+ * Coordinates are kept as 1e-7 fixed-point ints packed into one long, and both ids and values live
+ * in primitive arrays indexed through an open addressing table, so a million entries cost roughly
+ * 33MB and no per entry objects.
+ */
+public class NodeCoordinateCache
+{
+	public static final long MISSING = FixedPoint.NO_LOCATION;
+
+	private final int capacity;
+	private final long[] ids;
+	private final long[] coordinates;
+	private final boolean[] referenced;
+	//slot + 1 for each occupied hash bucket, 0 when empty
+	private final int[] index;
+	private final int mask;
+
+	private int size = 0;
+	private int hand = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public NodeCoordinateCache(int capacity){
+		this.capacity = Math.max(1, capacity);
+		ids = new long[this.capacity];
+		coordinates = new long[this.capacity];
+		referenced = new boolean[this.capacity];
+		int buckets = Integer.highestOneBit(this.capacity * 2 - 1) << 1;
+		index = new int[buckets];
+		mask = buckets - 1;
+	}
+
+	public static long pack(int latitude, int longitude){
+		return FixedPoint.pack(latitude, longitude);
+	}
+
+	public static int latitude(long packed){
+		return FixedPoint.packedLatitude(packed);
+	}
+
+	public static int longitude(long packed){
+		return FixedPoint.packedLongitude(packed);
+	}
+
+	/**
+	 * @return the packed coordinate for the node, or MISSING
+	 */
+	public long get(long id){
+		int bucket = find(id);
+		if (bucket < 0){
+			misses++;
+			return MISSING;
+		}
+		int slot = index[bucket] - 1;
+		referenced[slot] = true;
+		hits++;
+		return coordinates[slot];
+	}
+
+	public void put(long id, long packed){
+		int bucket = find(id);
+		if (bucket >= 0){
+			coordinates[index[bucket] - 1] = packed;
+			return;
+		}
+
+		int slot;
+		if (size < capacity){
+			slot = size++;
+		}
+		else {
+			//sweep the hand past recently used entries, clearing their bit as it goes
+			while (referenced[hand]){
+				referenced[hand] = false;
+				hand = (hand + 1) % capacity;
+			}
+			slot = hand;
+			hand = (hand + 1) % capacity;
+			remove(find(ids[slot]));
+			evictions++;
+		}
+
+		ids[slot] = id;
+		coordinates[slot] = packed;
+		referenced[slot] = false;
+		int b = bucket(id);
+		while (index[b] != 0){
+			b = (b + 1) & mask;
+		}
+		index[b] = slot + 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	private int find(long id){
+		int b = bucket(id);
+		while (index[b] != 0){
+			if (ids[index[b] - 1] == id){
+				return b;
+			}
+			b = (b + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Linear probing delete - shifts later entries of the probe run back so lookups never stop early
+	 */
+	private void remove(int bucket){
+		int hole = bucket;
+		int next = (hole + 1) & mask;
+		while (index[next] != 0){
+			int home = bucket(ids[index[next] - 1]);
+			//move the entry into the hole unless its home bucket lies cyclically in (hole, next]
+			boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+			if (!stays){
+				index[hole] = index[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		index[hole] = 0;
+	}
+
+	private int bucket(long id){
+		//murmur3 finalizer; raw osm ids are too sequential to mask directly
+		id ^= id >>> 33;
+		id *= 0xff51afd7ed558ccdL;
+		id ^= id >>> 33;
+		id *= 0xc4ceb9fe1a85ec53L;
+		id ^= id >>> 33;
+		return (int) id & mask;
+	}
+}
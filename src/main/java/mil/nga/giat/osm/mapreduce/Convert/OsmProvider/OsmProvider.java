@@ -3,14 +3,19 @@ package mil.nga.giat.osm.mapreduce.Convert.OsmProvider;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.BatchScanner;
-import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.client.ZooKeeperInstance;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
@@ -26,23 +31,28 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Joiner;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.operation.linemerge.LineMerger;
 import mil.nga.giat.geowave.core.geotime.GeometryUtils;
 import mil.nga.giat.geowave.core.store.data.field.FieldReader;
 import mil.nga.giat.geowave.core.store.data.field.FieldUtils;
 import mil.nga.giat.geowave.core.store.data.field.FieldWriter;
+import mil.nga.giat.osm.accumulo.osmschema.PackedRow;
 import mil.nga.giat.osm.accumulo.osmschema.Schema;
 import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
 import mil.nga.giat.osm.mapreduce.Ingest.OSMMapperCommandArgs;
 import mil.nga.giat.osm.osmfeature.types.features.FeatureDefinition;
+import mil.nga.giat.osm.osmfeature.types.features.FeatureType;
+import mil.nga.giat.osm.types.FixedPoint;
 import mil.nga.giat.osm.types.TypeUtils;
+import mil.nga.giat.osm.types.generated.MemberType;
 
 public class OsmProvider
 {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OsmProvider.class);
-	private Connector conn = null;
 	private OSMMapperCommandArgs args;
 	private BatchScanner bs = null;
 	private final FieldWriter<?, Long> longWriter = FieldUtils.getDefaultWriterForClass(Long.class);
@@ -50,17 +60,56 @@ public class OsmProvider
 	private final FieldReader<Double> doubleReader = FieldUtils.getDefaultReaderForClass(Double.class);
 	private static final byte EMPTY_BYTES[] = new byte[0];
 
+	//references resolved for the current batch by prefetch
+	private final Map<Long, Coordinate> prefetchedNodes = new HashMap<>();
+	private final Map<Long, long[]> prefetchedWays = new HashMap<>();
+	//survives across batches - neighbouring ways share most of their nodes
+	private final NodeCoordinateCache nodeCache;
+	//route and boundary relations share member ways and sub-relations heavily, so their lines are kept for the task
+	private final Map<Long, LineString> wayLines;
+	private final Map<Long, List<LineString>> relationLines;
+	//relations being assembled, to stop at member cycles
+	private final Set<Long> assembling = new HashSet<>();
+
+	//relation types assembled into lines from all of their member ways
+	private static final Set<String> LINEAR_RELATION_TYPES = new HashSet<>(Arrays.asList("route", "route_master", "superroute", "boundary", "waterway", "multilinestring"));
+
 	public OsmProvider(OSMMapperCommandArgs args)
 			throws AccumuloSecurityException, AccumuloException, TableNotFoundException {
+		this(args, new ZooKeeperInstance(args.instanceName, args.zookeepers)
+				.getConnector(args.user, new PasswordToken(args.pass))
+				.createBatchScanner(args.getQualifiedTableName(), new Authorizations(args.visibility), Math.max(1, args.scanThreads)));
+	}
+
+	/**
+	 * Resolves references with the given scanner, which is closed with the provider
+	 */
+	OsmProvider(OSMMapperCommandArgs args, BatchScanner bs){
 		this.args = args;
-		conn = new ZooKeeperInstance(args.instanceName, args.zookeepers).getConnector(args.user, new PasswordToken(args.pass));
-		bs = conn.createBatchScanner(args.getQualifiedTableName(), new Authorizations(args.visibility), 1);
+		nodeCache = new NodeCoordinateCache(args.nodeCacheSize);
+		wayLines = new LruCache<>(args.relationCacheSize);
+		relationLines = new LruCache<>(args.relationCacheSize);
+		this.bs = bs;
+	}
+
+	/**
+	 * A provider with no accumulo connection, for callers that supply every reference through
+	 * addResolvedWay themselves; anything not supplied is reported missing.
+	 */
+	public OsmProvider(){
+		nodeCache = new NodeCoordinateCache(0);
+		wayLines = new LruCache<>(0);
+		relationLines = new LruCache<>(0);
 	}
 
 	public Geometry processRelation(SimpleFeatureGenerator.OSMUnion osmunion, FeatureDefinition fd){
+		if (osmunion.relationSets.isEmpty()){
+			return null;
+		}
+		String type = osmunion.tags.get("type");
 
-		//multipolygon type
-		if (osmunion.relationSets != null && osmunion.relationSets.size() > 0 && osmunion.tags != null && "multipolygon".equals(osmunion.tags.get("type"))){
+		//multipolygon type; boundaries mapped to polygons are areas too
+		if ("multipolygon".equals(type) || ("boundary".equals(type) && fd.Type == FeatureType.Polygon)){
 
 			Map<String, List<LinearRing>> rings = waysFromAccumulo(osmunion.relationSets, osmunion);
 
@@ -77,17 +126,7 @@ public class OsmProvider
 				return null;
 			}
 
-			List<Polygon> polygons = new ArrayList<Polygon>();
-
-			for (LinearRing lr : outer){
-				List<LinearRing> tempInner = new ArrayList<>();
-				for (LinearRing i : inner){
-					if (lr.contains(i)){
-						tempInner.add(i);
-					}
-				}
-				polygons.add(GeometryUtils.GEOMETRY_FACTORY.createPolygon(lr, tempInner.toArray(new LinearRing[tempInner.size()])));
-			}
+			List<Polygon> polygons = MultipolygonBuilder.buildPolygons(outer, inner);
 
 			if (polygons.size() == 0){
 				LOGGER.error("No polygons built for relation: " + osmunion.Id);
@@ -101,20 +140,216 @@ public class OsmProvider
 			return GeometryUtils.GEOMETRY_FACTORY.createMultiPolygon(polygons.toArray(new Polygon[polygons.size()]));
 
 		}
+		if (LINEAR_RELATION_TYPES.contains(type)){
+			return linesFromMembers(osmunion, fd);
+		}
 		LOGGER.info("Unsupported relation type for relation: " + osmunion.Id);
-		//todo admin boundaries, routes, etc: http://wiki.openstreetmap.org/wiki/Types_of_relation
+		//todo other relation types: http://wiki.openstreetmap.org/wiki/Types_of_relation
 		return null;
 	}
 
+	/**
+	 * The member ways of the relation and, recursively, of its member relations as lines, merged where
+	 * they connect. Node members are ignored.
+	 */
+	private Geometry linesFromMembers(SimpleFeatureGenerator.OSMUnion osmunion, FeatureDefinition fd){
+		if (fd.Type == FeatureType.Polygon){
+			LOGGER.warn("Geometry type Polygon requested for linear relation: " + osmunion.Id);
+			return null;
+		}
+		Collection<SimpleFeatureGenerator.RelationSet> members = new TreeMap<>(osmunion.relationSets).values();
+		//lines of the member relations, held here so cache evictions during assembly don't lose them
+		Map<Long, List<LineString>> assembled = new HashMap<>();
+		Map<Long, List<SimpleFeatureGenerator.RelationSet>> subRelations = memberRelations(osmunion.Id, members, assembled);
+		assembling.clear();
+		assembling.add(osmunion.Id);
+		List<LineString> lines = new ArrayList<>();
+		collectLines(members, subRelations, assembled, lines);
+		if (lines.isEmpty()){
+			LOGGER.warn("No member ways could be built for relation: " + osmunion.Id);
+			return null;
+		}
+
+		LineMerger merger = new LineMerger();
+		merger.add(lines);
+		@SuppressWarnings("unchecked")
+		Collection<LineString> merged = merger.getMergedLineStrings();
+		Geometry geometry = merged.size() == 1 ? merged.iterator().next() : GeometryUtils.GEOMETRY_FACTORY.createMultiLineString(merged.toArray(new LineString[merged.size()]));
+		if (fd.Type == FeatureType.Point){
+			return geometry.getCentroid();
+		}
+		return geometry;
+	}
+
+	/**
+	 * Members of every relation nested below these members whose lines aren't cached, read with one
+	 * scan per level of nesting; the cached lines of the others are copied into assembled
+	 */
+	private Map<Long, List<SimpleFeatureGenerator.RelationSet>> memberRelations(long id, Collection<SimpleFeatureGenerator.RelationSet> members, Map<Long, List<LineString>> assembled){
+		Map<Long, List<SimpleFeatureGenerator.RelationSet>> found = new HashMap<>();
+		Set<Long> seen = new HashSet<>();
+		seen.add(id);
+		List<Long> level = uncachedRelations(members, seen, assembled);
+		while (!level.isEmpty()){
+			Map<Long, List<SimpleFeatureGenerator.RelationSet>> read = relationMembers(level);
+			found.putAll(read);
+			level = new ArrayList<>();
+			for (List<SimpleFeatureGenerator.RelationSet> subMembers : read.values()){
+				level.addAll(uncachedRelations(subMembers, seen, assembled));
+			}
+		}
+		return found;
+	}
+
+	private List<Long> uncachedRelations(Collection<SimpleFeatureGenerator.RelationSet> members, Set<Long> seen, Map<Long, List<LineString>> assembled){
+		List<Long> ids = new ArrayList<>();
+		for (SimpleFeatureGenerator.RelationSet member : members){
+			if (member.MemType != MemberType.RELATION || member.MemId == null || !seen.add(member.MemId)){
+				continue;
+			}
+			List<LineString> lines = relationLines.get(member.MemId);
+			if (lines != null){
+				assembled.put(member.MemId, lines);
+			}
+			else {
+				ids.add(member.MemId);
+			}
+		}
+		return ids;
+	}
+
+	private void collectLines(Collection<SimpleFeatureGenerator.RelationSet> members, Map<Long, List<SimpleFeatureGenerator.RelationSet>> subRelations, Map<Long, List<LineString>> assembled, List<LineString> into){
+		List<Long> wayIds = new ArrayList<>();
+		List<Long> relationIds = new ArrayList<>();
+		for (SimpleFeatureGenerator.RelationSet member : members){
+			if (member.MemId == null || member.MemType == null){
+				continue;
+			}
+			switch (member.MemType){
+				case WAY: {
+					wayIds.add(member.MemId);
+					break;
+				}
+				case RELATION: {
+					relationIds.add(member.MemId);
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+		}
+
+		into.addAll(wayLines(wayIds));
+
+		for (Long id : relationIds){
+			if (assembling.contains(id)){
+				LOGGER.warn("Relation: " + id + " is a member of itself; cycle skipped");
+				continue;
+			}
+			List<LineString> lines = assembled.get(id);
+			if (lines == null){
+				List<SimpleFeatureGenerator.RelationSet> subMembers = subRelations.get(id);
+				if (subMembers == null){
+					LOGGER.warn("Member relation: " + id + " was not present");
+					continue;
+				}
+				lines = new ArrayList<>();
+				assembling.add(id);
+				collectLines(subMembers, subRelations, assembled, lines);
+				assembling.remove(id);
+				assembled.put(id, lines);
+				relationLines.put(id, lines);
+			}
+			into.addAll(lines);
+		}
+	}
+
+	/**
+	 * Line strings for the ways, from the way cache where possible; ways with missing nodes are left out
+	 */
+	private List<LineString> wayLines(List<Long> ids){
+		List<LineString> lines = new ArrayList<>(ids.size());
+		List<Long> missing = new ArrayList<>();
+		for (Long id : ids){
+			LineString line = wayLines.get(id);
+			if (line != null){
+				lines.add(line);
+			}
+			else {
+				missing.add(id);
+			}
+		}
+		if (missing.isEmpty()){
+			return lines;
+		}
+
+		Map<Long, long[]> ways = wayReferences(missing);
+		Map<Long, Coordinate> nodes = nodesFromAccumulo(ways.values());
+		for (Map.Entry<Long, long[]> kvp : ways.entrySet()){
+			long[] refs = kvp.getValue();
+			if (refs.length < 2){
+				continue;
+			}
+			Coordinate[] coords = new Coordinate[refs.length];
+			for (int i = 0; i < refs.length; i++){
+				coords[i] = nodes.get(refs[i]);
+				if (coords[i] == null){
+					coords = null;
+					break;
+				}
+			}
+			if (coords == null){
+				LOGGER.warn("Some of the nodes for member way: " + kvp.getKey() + " were not present; way left out");
+				continue;
+			}
+			LineString line = GeometryUtils.GEOMETRY_FACTORY.createLineString(coords);
+			wayLines.put(kvp.getKey(), line);
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	/**
+	 * Members of the relations, in member order
+	 */
+	private Map<Long, List<SimpleFeatureGenerator.RelationSet>> relationMembers(Collection<Long> ids){
+		Map<Long, List<SimpleFeatureGenerator.RelationSet>> members = new HashMap<>();
+		if (ids.isEmpty() || bs == null){
+			return members;
+		}
+		bs.setRanges(rowRanges(ids));
+		bs.clearColumns();
+		bs.fetchColumnFamily(new Text(Schema.CF.RELATION));
+
+		//with more than one query thread the entries of different rows interleave
+		Map<Text, SimpleFeatureGenerator.OSMUnion> relations = new HashMap<>();
+		for (Map.Entry<Key, Value> row : bs){
+			Text rowId = row.getKey().getRow();
+			SimpleFeatureGenerator.OSMUnion relation = relations.get(rowId);
+			if (relation == null){
+				relation = new SimpleFeatureGenerator.OSMUnion();
+				relations.put(rowId, relation);
+			}
+			relation.add(row.getKey(), row.getValue());
+		}
+		for (SimpleFeatureGenerator.OSMUnion relation : relations.values()){
+			if (relation.hasId()){
+				members.put(relation.Id, new ArrayList<>(new TreeMap<>(relation.relationSets).values()));
+			}
+		}
+		return members;
+	}
+
 	public Geometry processWay(SimpleFeatureGenerator.OSMUnion osmunion, FeatureDefinition fd)	{
 
-		if (osmunion.Nodes == null || osmunion.Nodes.size() == 0) {
+		if (osmunion.Nodes == null || osmunion.Nodes.length == 0) {
 			return null;
 		}
 
 
-		Map<Long, Coordinate> coords =  nodesFromAccumulo(osmunion.Nodes);
-		Coordinate[] orderedCoords = new Coordinate[osmunion.Nodes.size()];
+		Map<Long, Coordinate> coords = hasLocations(osmunion) ? locations(osmunion) : nodesFromAccumulo(osmunion.Nodes);
+		Coordinate[] orderedCoords = new Coordinate[osmunion.Nodes.length];
 
 
 		List<String> missingNodes = new ArrayList<>();
@@ -137,7 +372,7 @@ public class OsmProvider
 			return null;
 		}
 
-		if (osmunion.Nodes.size() > 2 && osmunion.Nodes.get(0) == osmunion.Nodes.get(osmunion.Nodes.size() - 1)){
+		if (osmunion.Nodes.length > 2 && osmunion.Nodes[0] == osmunion.Nodes[osmunion.Nodes.length - 1]){
 			//closed way
 			switch (fd.Type){
 				case Geometry: { //best guess on type = polygon (closed way)
@@ -205,14 +440,14 @@ public class OsmProvider
 		rings.put("outer", new ArrayList<LinearRing>());
 
 
-		List<Long> outerWays = new ArrayList<>();
-		List<Long> innerWays = new ArrayList<>();
+		Set<Long> outerWays = new HashSet<>();
+		Set<Long> innerWays = new HashSet<>();
 
 		for (Map.Entry<Integer, SimpleFeatureGenerator.RelationSet> kvp : relations.entrySet()) {
 			switch (kvp.getValue().MemType){
 				case RELATION: {
-					LOGGER.warn("Super-relations not currently supported");
-					return null;
+					LOGGER.warn("Relation member: " + kvp.getValue().MemId + " of multipolygon relation: " + osmunion.Id + " ignored");
+					break;
 				}
 				case WAY: {
 					if ("outer".equals(kvp.getValue().RoleId)){
@@ -224,166 +459,374 @@ public class OsmProvider
 					break;
 				}
 				case NODE: {
-					LOGGER.warn("Nodes as direct members of relationships not currently supported");
-					return null;
+					//label and admin_centre nodes of boundaries carry no geometry
+					break;
 				}
 			}
 
 		}
 
-		List<Range> ranges = new ArrayList<>(outerWays.size() + innerWays.size());
-		if (ranges.size() == 0){
+		if (outerWays.size() == 0 && innerWays.size() == 0){
 			LOGGER.warn("No multipolygon relations found for relation: " + osmunion.Id);
 			return null;
 		}
 
-		for (Long l : outerWays){
-			byte[] row = Schema.getIdHash(l);
-			ranges.add(new Range(new Text(row)));
-		}
-		for (Long l : innerWays) {
-			byte[] row = Schema.getIdHash(l);
-			ranges.add(new Range(new Text(row)));
-		}
+		List<Long> memberWays = new ArrayList<>(outerWays.size() + innerWays.size());
+		memberWays.addAll(outerWays);
+		memberWays.addAll(innerWays);
+		Map<Long, long[]> vals = wayReferences(memberWays);
+
+		List<long[]> outerRefs = new ArrayList<>();
+		List<Coordinate[]> outerCoords = new ArrayList<>();
+		List<long[]> innerRefs = new ArrayList<>();
+		List<Coordinate[]> innerCoords = new ArrayList<>();
+		Map<Long, Coordinate> nodes = nodesFromAccumulo(vals.values());
+		for (Map.Entry<Long, long[]> kvp : vals.entrySet()){
+			Coordinate[] sortedCoords = new Coordinate[kvp.getValue().length];
+			List<String> missingIds = new ArrayList<>();
+			int i = 0;
+			for (long l : kvp.getValue()){
+				sortedCoords[i] = nodes.get(l);
+				if (sortedCoords[i] == null){
 
-		bs.setRanges(ranges);
-		bs.clearColumns();
-		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.ID));
-		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.REFERENCES));
+					missingIds.add(String.valueOf(l));
+				}
+				i++;
+			}
+			if (missingIds.size() != 0){
+				LOGGER.error("Error building ring relation for relation: " + osmunion.Id + " missing values were: (" + Joiner.on(",").join(missingIds) + ")");
+				return null;
+			}
 
-		Map<Long, List<Long>> vals = new HashMap<>();
+			if (innerWays.contains(kvp.getKey())){
+				innerRefs.add(kvp.getValue());
+				innerCoords.add(sortedCoords);
+			} else if (outerWays.contains(kvp.getKey())){
+				outerRefs.add(kvp.getValue());
+				outerCoords.add(sortedCoords);
+			} else {
+				LOGGER.error("Relation not found in inner or outer for way: " + kvp.getKey());
+				return null;
+			}
+		}
 
-		long id = -1;
-		List<Long> tvals = null;
-		ByteSequence lastkey = null;
+		//member ways are often only pieces of a ring - stitch them by shared end nodes
+		MultipolygonBuilder builder = new MultipolygonBuilder();
+		rings.get("outer").addAll(builder.buildRings(outerRefs, outerCoords));
+		int unclosed = builder.getUnclosed();
+		rings.get("inner").addAll(builder.buildRings(innerRefs, innerCoords));
+		unclosed += builder.getUnclosed();
+		if (unclosed > 0){
+			LOGGER.warn(unclosed + " member ways of relation: " + osmunion.Id + " could not be closed into rings and were left out");
+		}
+		return rings;
+	}
 
-		for (Map.Entry<Key, Value> row: bs){
-			if (lastkey == null){
-				lastkey = row.getKey().getRowData();
-			}
 
-			if (Schema.arraysEqual(row.getKey().getColumnQualifierData(), Schema.CQ.ID)){
-				id = longReader.readField(row.getValue().get());
-			}
-			else if (Schema.arraysEqual(row.getKey().getColumnQualifierData(), Schema.CQ.REFERENCES)){
-				try {
-					tvals = TypeUtils.deserializeLongArray(row.getValue().get(), null).getIds();
-				}
-				catch (IOException e) {
-					LOGGER.error("Error deserializing member array for way: ");
+	/**
+	 * Resolves the node and member way references of a whole batch of entities with one way scan and
+	 * one node scan, so that processWay / processRelation for those entities are answered from memory.
+	 * Results are held until the next call to prefetch or clearPrefetched.
+	 */
+	public void prefetch(List<SimpleFeatureGenerator.OSMUnion> batch){
+		clearPrefetched();
+
+		Set<Long> wayIds = new HashSet<>();
+		for (SimpleFeatureGenerator.OSMUnion osmunion : batch){
+			if (osmunion.relationSets != null){
+				for (SimpleFeatureGenerator.RelationSet member : osmunion.relationSets.values()){
+					if (member.MemType == MemberType.WAY && member.MemId != null){
+						wayIds.add(member.MemId);
+					}
 				}
 			}
+		}
+		scanWays(wayIds, prefetchedWays);
 
-			if (id != -1 && tvals != null){
-				vals.put(id, tvals);
-				tvals = null;
-				id = -1;
-				lastkey = null;
-			} else if (!lastkey.equals(row.getKey().getRowData())){
-				tvals = null;
-				id = -1;
-				lastkey = null;
+		Set<Long> nodeIds = new HashSet<>();
+		for (SimpleFeatureGenerator.OSMUnion osmunion : batch){
+			if (osmunion.Nodes != null && !hasLocations(osmunion)){
+				for (long id : osmunion.Nodes){
+					nodeIds.add(id);
+				}
 			}
+		}
+		for (long[] refs : prefetchedWays.values()){
+			for (long id : refs){
+				nodeIds.add(id);
+			}
+		}
+		scanNodes(fromCache(nodeIds, prefetchedNodes), prefetchedNodes);
+	}
+
+	private static boolean hasLocations(SimpleFeatureGenerator.OSMUnion osmunion){
+		return osmunion.Locations != null && osmunion.Locations.length == osmunion.Nodes.length;
+	}
 
+	private static Map<Long, Coordinate> locations(SimpleFeatureGenerator.OSMUnion osmunion){
+		Map<Long, Coordinate> coords = new HashMap<>();
+		for (int i = 0; i < osmunion.Nodes.length; i++){
+			if (!coords.containsKey(osmunion.Nodes[i])){
+				coords.put(osmunion.Nodes[i], toCoordinate(osmunion.Locations[i]));
+			}
 		}
+		return coords;
+	}
 
-		for (Map.Entry<Long, List<Long>> kvp : vals.entrySet()){
-			Map<Long, Coordinate> ring = nodesFromAccumulo(kvp.getValue());
-			Coordinate[] sortedCoords = new Coordinate[ring.size()];
-			List<String> missingIds = new ArrayList<>();
-			int i = 0;
-			for (long l : kvp.getValue()){
-				sortedCoords[i] = ring.get(l);
-				if (sortedCoords[i] == null){
+	private static Coordinate toCoordinate(long packed){
+		return new Coordinate(
+				FixedPoint.toDegrees(FixedPoint.packedLongitude(packed)),
+				FixedPoint.toDegrees(FixedPoint.packedLatitude(packed)));
+	}
 
-					missingIds.add(String.valueOf(l));
-				}
-				i++;
+	public NodeCoordinateCache getNodeCache() {
+		return nodeCache;
+	}
+
+	/**
+	 * Copies cached coordinates into the map
+	 * @return the ids that weren't cached
+	 */
+	private List<Long> fromCache(Collection<Long> ids, Map<Long, Coordinate> into){
+		List<Long> missing = new ArrayList<>();
+		for (Long id : ids){
+			long packed = nodeCache.get(id);
+			if (packed == NodeCoordinateCache.MISSING){
+				missing.add(id);
 			}
-			if (missingIds.size() != 0){
-				LOGGER.error("Error building ring relation for relation: " + osmunion.Id + " missing values were: (" + Joiner.on(",").join(missingIds) + ")");
-				return null;
+			else {
+				into.put(id, toCoordinate(packed));
 			}
+		}
+		return missing;
+	}
 
+	/**
+	 * Makes a way's references and node locations available until the next clearPrefetched; null
+	 * coordinates are nodes that couldn't be found.
+	 */
+	public void addResolvedWay(long wayId, long[] references, Coordinate[] coordinates){
+		prefetchedWays.put(wayId, references);
+		for (int i = 0; i < references.length; i++){
+			if (coordinates[i] != null && !prefetchedNodes.containsKey(references[i])){
+				prefetchedNodes.put(references[i], coordinates[i]);
+			}
+		}
+	}
 
+	public void clearPrefetched(){
+		prefetchedNodes.clear();
+		prefetchedWays.clear();
+	}
 
-			if (sortedCoords[0] != sortedCoords[sortedCoords.length - 1]){
-				//ring not closed, should be by definition -f ix
-				Coordinate[] closedCords = Arrays.copyOf(sortedCoords, sortedCoords.length + 1);
-				closedCords[sortedCoords.length + 1] = closedCords[0];
-				sortedCoords = closedCords;
+	private Map<Long, long[]> wayReferences(List<Long> ids){
+		Map<Long, long[]> refs = new HashMap<>();
+		List<Long> missing = new ArrayList<>();
+		for (Long id : ids){
+			long[] r = prefetchedWays.get(id);
+			if (r != null){
+				refs.put(id, r);
 			}
-
-			if (sortedCoords.length < 4){
-				LOGGER.error("Not enough coordinates for way: " + kvp.getKey() + " for relation: " + osmunion.Id);
-				return null;
+			else {
+				missing.add(id);
 			}
+		}
+		scanWays(missing, refs);
+		return refs;
+	}
 
-			LinearRing lr = GeometryUtils.GEOMETRY_FACTORY.createLinearRing(sortedCoords);
+	private Map<Long, Coordinate> nodesFromAccumulo(long[] vals){
+		return nodesFromAccumulo(Collections.singletonList(vals));
+	}
 
-			if (innerWays.contains(kvp.getKey())){
-				rings.get("inner").add(lr);
-			} else if (outerWays.contains(kvp.getKey())){
-				rings.get("outer").add(lr);
-			} else {
-				LOGGER.error("Relation not found in inner or outer for way: " + kvp.getKey());
-				return null;
+	/**
+	 * Coordinates of the nodes of all the ways, with one node scan for those neither prefetched nor cached
+	 */
+	private Map<Long, Coordinate> nodesFromAccumulo(Collection<long[]> ways){
+		Map<Long, Coordinate> coords = new HashMap<>();
+		Set<Long> missing = new HashSet<>();
+		for (long[] vals : ways){
+			for (long id : vals){
+				Coordinate c = prefetchedNodes.get(id);
+				if (c != null){
+					coords.put(id, c);
+				}
+				else {
+					missing.add(id);
+				}
 			}
+		}
+		scanNodes(fromCache(missing, coords), coords);
+		return coords;
+	}
 
+	private static List<Range> rowRanges(Collection<Long> ids){
+		List<Range> ranges = new ArrayList<>(ids.size());
+		for (Long id : ids){
+			ranges.add(new Range(new Text(Schema.getIdHash(id))));
 		}
-		return rings;
+		return Range.mergeOverlapping(ranges);
 	}
 
+	private void scanWays(Collection<Long> ids, Map<Long, long[]> into){
+		if (ids.isEmpty() || bs == null){
+			return;
+		}
+		bs.setRanges(rowRanges(ids));
+		bs.clearColumns();
+		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.ID));
+		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.REFERENCES));
+		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.REFERENCES_DELTA));
+		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.PACKED));
+		bs.fetchColumn(new Text(Schema.CF.WAY), new Text(Schema.CQ.LOCATIONS));
 
-	private Map<Long, Coordinate> nodesFromAccumulo(List<Long> vals){
+		//with more than one query thread the entries of different rows interleave
+		Map<Text, WayColumns> ways = new HashMap<>();
+		for (Map.Entry<Key, Value> row : bs){
+			Text rowId = row.getKey().getRow();
+			WayColumns way = ways.get(rowId);
+			if (way == null){
+				way = new WayColumns();
+				ways.put(rowId, way);
+			}
 
-		List<Range> ranges = new ArrayList<>(vals.size());
-		for (Long l : vals){
-			byte[] row = Schema.getIdHash(l);
-			ranges.add(new Range(new Text(row)));
-			//ranges.add(new Range(l.toString()));
+			ByteSequence cq = row.getKey().getColumnQualifierData();
+			if (Schema.arraysEqual(cq, Schema.CQ.ID)){
+				way.id = longReader.readField(row.getValue().get());
+			}
+			else if (Schema.arraysEqual(cq, Schema.CQ.PACKED)){
+				way.id = PackedRow.decodeCore(row.getValue().get()).id;
+			}
+			else if (Schema.arraysEqual(cq, Schema.CQ.REFERENCES_DELTA)){
+				try {
+					way.refs = TypeUtils.deserializeDeltaLongArray(row.getValue().get());
+				}
+				catch (IOException e) {
+					LOGGER.error("Error deserializing delta encoded references for way", e);
+				}
+			}
+			else if (Schema.arraysEqual(cq, Schema.CQ.LOCATIONS)){
+				try {
+					way.locations = TypeUtils.deserializeLocations(row.getValue().get());
+				}
+				catch (IOException e) {
+					LOGGER.error("Error deserializing node locations for way", e);
+				}
+			}
+			else if (Schema.arraysEqual(cq, Schema.CQ.REFERENCES)){
+				try {
+					way.refs = TypeUtils.deserializeReferences(row.getValue().get());
+				}
+				catch (IOException e) {
+					LOGGER.error("Error deserializing member array for way", e);
+				}
+			}
+		}
+		for (WayColumns way : ways.values()){
+			addWay(way, into);
 		}
-		ranges = Range.mergeOverlapping(ranges);
+	}
 
-		bs.setRanges(ranges);
+	/**
+	 * Staged node locations go through the node cache, where the node lookups that follow find them
+	 */
+	private void addWay(WayColumns way, Map<Long, long[]> into){
+		if (way.id == -1 || way.refs == null){
+			return;
+		}
+		into.put(way.id, way.refs);
+		if (way.locations != null && way.locations.length == way.refs.length){
+			for (int i = 0; i < way.refs.length; i++){
+				nodeCache.put(way.refs[i], way.locations[i]);
+			}
+		}
+	}
+
+	private void scanNodes(Collection<Long> ids, Map<Long, Coordinate> into){
+		if (ids.isEmpty() || bs == null){
+			return;
+		}
+		bs.setRanges(rowRanges(ids));
 		bs.clearColumns();
-		//bs.fetchColumnFamily(new Text(Schema.CF.NODE));
 		bs.fetchColumn(new Text(Schema.CF.NODE), new Text(Schema.CQ.LONGITUDE));
 		bs.fetchColumn(new Text(Schema.CF.NODE), new Text(Schema.CQ.LATITUDE));
 		bs.fetchColumn(new Text(Schema.CF.NODE), new Text(Schema.CQ.ID));
+		bs.fetchColumn(new Text(Schema.CF.NODE), new Text(Schema.CQ.PACKED));
 
-		Map<Long, Coordinate> coords = new HashMap<>();
-
-		long id = -1;
-		Coordinate crd = new Coordinate(-1, -1);
-		ByteSequence lastkey = null;
-
+		//with more than one query thread the entries of different rows interleave
+		Map<Text, NodeColumns> nodes = new HashMap<>();
 		for (Map.Entry<Key, Value> row : bs){
-			if (lastkey == null){
-				lastkey = row.getKey().getRowData();
+			Text rowId = row.getKey().getRow();
+			NodeColumns node = nodes.get(rowId);
+			if (node == null){
+				node = new NodeColumns();
+				nodes.put(rowId, node);
 			}
 
-			if (Schema.arraysEqual(row.getKey().getColumnQualifierData(), Schema.CQ.LONGITUDE)){
-				crd.x = doubleReader.readField(row.getValue().get());
-			} else if (Schema.arraysEqual(row.getKey().getColumnQualifierData(), Schema.CQ.LATITUDE)) {
-				crd.y = doubleReader.readField(row.getValue().get());
-			} else if (Schema.arraysEqual(row.getKey().getColumnQualifierData(), Schema.CQ.ID)){
-				id = longReader.readField(row.getValue().get());
+			ByteSequence cq = row.getKey().getColumnQualifierData();
+			if (Schema.arraysEqual(cq, Schema.CQ.LONGITUDE)){
+				node.x = FixedPoint.readCoordinate(row.getValue().get(), doubleReader);
+			} else if (Schema.arraysEqual(cq, Schema.CQ.LATITUDE)) {
+				node.y = FixedPoint.readCoordinate(row.getValue().get(), doubleReader);
+			} else if (Schema.arraysEqual(cq, Schema.CQ.ID)){
+				node.id = longReader.readField(row.getValue().get());
+			} else if (Schema.arraysEqual(cq, Schema.CQ.PACKED)){
+				PackedRow.Core core = PackedRow.decodeCore(row.getValue().get());
+				node.id = core.id;
+				if (core.hasCoordinates){
+					node.x = FixedPoint.toDegrees(core.longitude);
+					node.y = FixedPoint.toDegrees(core.latitude);
+				}
 			}
-
-			if (id != -1 && crd.x != -1 && crd.y != -1){
-				coords.put(id, crd);
-				id = -1;
-				crd = new Coordinate(-1, -1);
-				lastkey = null;
-			} else if (!lastkey.equals(row.getKey().getRowData())){
-				id = -1;
-				crd = new Coordinate(-1, -1);
-				lastkey = null;
+		}
+		for (NodeColumns node : nodes.values()){
+			if (node.id != -1 && !Double.isNaN(node.x) && !Double.isNaN(node.y)){
+				addNode(node.id, node.x, node.y, into);
 			}
+		}
+	}
+
+	private void addNode(long id, double x, double y, Map<Long, Coordinate> into){
+		into.put(id, new Coordinate(x, y));
+		nodeCache.put(id, NodeCoordinateCache.pack(FixedPoint.toFixed(y), FixedPoint.toFixed(x)));
+	}
+
+	/**
+	 * Way columns of one row, collected until the scan ends
+	 */
+	private static class WayColumns
+	{
+		private long id = -1;
+		private long[] refs = null;
+		private long[] locations = null;
+	}
 
+	/**
+	 * Node columns of one row, collected until the scan ends
+	 */
+	private static class NodeColumns
+	{
+		private long id = -1;
+		private double x = Double.NaN;
+		private double y = Double.NaN;
+	}
+
+	/**
+	 * Access ordered map dropping its least recently used entry beyond capacity
+	 */
+	private static class LruCache<V> extends LinkedHashMap<Long, V>
+	{
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		LruCache(int capacity){
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, V> eldest){
+			return size() > capacity;
 		}
-		return coords;
 	}
 }
-
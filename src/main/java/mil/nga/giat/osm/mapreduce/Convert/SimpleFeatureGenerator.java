@@ -2,33 +2,37 @@ package mil.nga.giat.osm.mapreduce.Convert;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.primitives.Longs;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 
 import mil.nga.giat.geowave.core.geotime.GeometryUtils;
-import mil.nga.giat.geowave.core.store.data.field.FieldReader;
-import mil.nga.giat.geowave.core.store.data.field.FieldUtils;
 import mil.nga.giat.osm.accumulo.osmschema.ColumnFamily;
 import mil.nga.giat.osm.accumulo.osmschema.ColumnQualifier;
+import mil.nga.giat.osm.accumulo.osmschema.PackedRow;
 import mil.nga.giat.osm.accumulo.osmschema.Schema;
 import mil.nga.giat.osm.mapreduce.Convert.OsmProvider.OsmProvider;
-import mil.nga.giat.osm.osmfeature.types.attributes.AttributeDefinition;
 import mil.nga.giat.osm.osmfeature.types.features.FeatureDefinition;
 import mil.nga.giat.osm.osmfeature.types.features.FeatureDefinitionSet;
+import mil.nga.giat.osm.osmfeature.types.features.FeaturePlan;
+import mil.nga.giat.osm.osmfeature.types.features.MappingIndex;
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.StringCache;
+import mil.nga.giat.osm.types.TagList;
 import mil.nga.giat.osm.types.TypeUtils;
 import mil.nga.giat.osm.types.generated.MemberType;
 
@@ -38,118 +42,166 @@ public class SimpleFeatureGenerator
 	private static final Logger log = LoggerFactory.getLogger(
 			SimpleFeatureGenerator.class);
 
+	// matching scratch space, reused between entities
+	private final List<MappingIndex.Rule> rules = new ArrayList<>();
+	private final TreeMap<Integer, Match> matches = new TreeMap<>();
+	// one builder per feature definition, by ordinal
+	private SimpleFeatureBuilder[] builders = new SimpleFeatureBuilder[0];
+
+	/**
+	 * The mapping rules an entity's tags matched for one feature definition. When several tags match,
+	 * the one whose key comes last in the definition's mapping keys supplies the value, and the last
+	 * sub mapping match supplies the key.
+	 */
+	private static class Match
+	{
+		private final int ordinal;
+		private String key = null;
+		private String value = null;
+		private int valueRank = -1;
+		private int keyRank = -1;
+
+		private Match(
+				final int ordinal ) {
+			this.ordinal = ordinal;
+		}
+
+		private void add(
+				final MappingIndex.Rule rule,
+				final String tagKey,
+				final String tagValue ) {
+			if (rule.rank >= valueRank) {
+				valueRank = rule.rank;
+				value = tagValue;
+			}
+			if (rule.subMapping && (rule.rank >= keyRank)) {
+				keyRank = rule.rank;
+				key = tagKey;
+			}
+		}
+	}
+
 	public List<SimpleFeature> mapOSMtoSimpleFeature(
 			final Map<Key, Value> items,
 			final OsmProvider osmProvider ) {
 
+		return mapOSMtoSimpleFeature(
+				new OSMUnion(
+						items),
+				osmProvider);
+	}
+
+	public List<SimpleFeature> mapOSMtoSimpleFeature(
+			final OSMUnion osmunion,
+			final OsmProvider osmProvider ) {
+
 		final List<SimpleFeature> features = new ArrayList<>();
-		final OSMUnion osmunion = new OSMUnion(
-				items);
-
-		for (final FeatureDefinition fd : FeatureDefinitionSet.Features) {
-
-			String mappingKey = null;
-			String mappingVal = null;
-
-			boolean matched = false;
-			for (final String mapper : fd.MappingKeys) {
-				if (osmunion.tags != null) { // later handle relations where
-												// tags on on ways
-					for (final Map.Entry<String, String> tag : osmunion.tags.entrySet()) {
-						if (tag.getKey().equals(
-								mapper)) {
-							if ((fd.Mappings != null) && (fd.Mappings.size() > 0)) {
-								if (fd.isMappedValue(
-										tag.getValue())) {
-									matched = true;
-									mappingVal = tag.getValue();
-								}
-							}
-							if ((fd.SubMappings != null) && (fd.SubMappings.size() > 0)) {
-								final String subval = fd.getSubMappingClass(
-										tag.getKey(),
-										tag.getValue());
-								if (subval != null) {
-									mappingKey = subval;
-									mappingVal = tag.getValue();
-									matched = true;
-								}
-							}
-						}
-					}
+		if (osmunion.tags.isEmpty()) { // later handle relations where tags on
+										// on ways
+			return features;
+		}
+
+		final MappingIndex index = FeatureDefinitionSet.getMappingIndex();
+		matches.clear();
+		for (int i = 0; i < osmunion.tags.size(); i++) {
+			final String tagKey = osmunion.tags.getKey(
+					i);
+			final String tagValue = osmunion.tags.getValue(
+					i);
+			rules.clear();
+			index.match(
+					tagKey,
+					tagValue,
+					rules);
+			for (final MappingIndex.Rule rule : rules) {
+				Match match = matches.get(
+						rule.ordinal);
+				if (match == null) {
+					match = new Match(
+							rule.ordinal);
+					matches.put(
+							rule.ordinal,
+							match);
 				}
+				match.add(
+						rule,
+						tagKey,
+						tagValue);
 			}
-			if (!matched) {
+		}
+
+		for (final Match match : matches.values()) {
+			final FeaturePlan plan = FeatureDefinitionSet.getFeaturePlan(
+					match.ordinal);
+			if (plan == null) {
 				continue;
 			}
 
 			// feature matches this osm entry, let's being
-			final SimpleFeatureType sft = FeatureDefinitionSet.featureTypes.get(
-					fd.Name);
-			final SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(
-					sft);
-
-			for (final AttributeDefinition ad : fd.Attributes) {
-				if (ad.Type.equals(
-						"id")) {
-					sfb.set(
-							FeatureDefinitionSet.normalizeOsmNames(
-									ad.Name),
-							ad.convert(
-									osmunion.Id));
-				}
-				else if (ad.Type.equals(
-						"geometry")
-						|| ad.Type.equals(
-								"validated_geometry")) {
-					final Geometry geom = getGeometry(
-							osmunion,
-							osmProvider,
-							fd);
-					if (geom == null) {
-						log.error(
-								"Unable to generate geometry for {} of type {}",
-								osmunion.Id,
-								osmunion.OsmType.toString());
-						return null;
+			final SimpleFeatureBuilder sfb = getBuilder(
+					match.ordinal,
+					plan);
+			for (final FeaturePlan.Step step : plan.steps) {
+				switch (step.source) {
+					case ID: {
+						sfb.set(
+								step.slot,
+								step.convert(
+										osmunion.Id));
+						break;
 					}
-					sfb.set(
-							FeatureDefinitionSet.normalizeOsmNames(
-									ad.Name),
-							geom);
-				}
-				else if (ad.Type.equals(
-						"mapping_value")) {
-					sfb.set(
-							FeatureDefinitionSet.normalizeOsmNames(
-									ad.Name),
-							ad.convert(
-									mappingVal));
-				}
-				else if (ad.Type.equals(
-						"mapping_key")) {
-					sfb.set(
-							FeatureDefinitionSet.normalizeOsmNames(
-									ad.Name),
-							ad.convert(
-									mappingKey));
-				}
-				else if ((ad.Key != null) && !ad.Key.equals(
-						"null")) {
-					if (osmunion.tags.containsKey(
-							ad.Key)) {
-						try {
-							sfb.set(
-									FeatureDefinitionSet.normalizeOsmNames(
-											ad.Name),
-									ad.convert(
-											osmunion.tags.get(
-													ad.Key)));
+					case GEOMETRY: {
+						final Geometry geom = getGeometry(
+								osmunion,
+								osmProvider,
+								plan.definition);
+						if (geom == null) {
+							log.error(
+									"Unable to generate geometry for {} of type {}",
+									osmunion.Id,
+									osmunion.OsmType.toString());
+							return null;
 						}
-						catch (final Exception e) {
-							System.out.println(
-									e.toString());
+						sfb.set(
+								step.slot,
+								geom);
+						break;
+					}
+					case MAPPING_VALUE: {
+						sfb.set(
+								step.slot,
+								step.convert(
+										match.value));
+						break;
+					}
+					case MAPPING_KEY: {
+						sfb.set(
+								step.slot,
+								step.convert(
+										match.key));
+						break;
+					}
+					case TAG: {
+						final String tagValue = osmunion.tags.get(
+								step.tagKey);
+						if (tagValue != null) {
+							try {
+								sfb.set(
+										step.slot,
+										step.convert(
+												tagValue));
+							}
+							catch (final Exception e) {
+								log.warn(
+										"Unable to convert tag {}={} of {} {}",
+										step.tagKey,
+										tagValue,
+										osmunion.OsmType.toString(),
+										osmunion.Id,
+										e);
+							}
 						}
+						break;
 					}
 				}
 			}
@@ -161,12 +213,32 @@ public class SimpleFeatureGenerator
 		return features;
 	}
 
+	private SimpleFeatureBuilder getBuilder(
+			final int ordinal,
+			final FeaturePlan plan ) {
+		if (ordinal >= builders.length) {
+			builders = Arrays.copyOf(
+					builders,
+					ordinal + 1);
+		}
+		if (builders[ordinal] == null) {
+			builders[ordinal] = new SimpleFeatureBuilder(
+					plan.type);
+		}
+		// an earlier feature may have been abandoned part way through
+		builders[ordinal].reset();
+		return builders[ordinal];
+	}
+
 	private static Geometry getGeometry(
 			final OSMUnion osm,
 			final OsmProvider provider,
 			final FeatureDefinition fd ) {
 		switch (osm.OsmType) {
 			case NODE: {
+				if (!osm.hasCoordinates()) {
+					return null;
+				}
 				return GeometryUtils.GEOMETRY_FACTORY.createPoint(
 						new Coordinate(
 								osm.Longitude,
@@ -199,228 +271,433 @@ public class SimpleFeatureGenerator
 		private final static Logger log = LoggerFactory.getLogger(
 				OSMUnion.class);
 
-		protected final FieldReader<Long> longReader = FieldUtils.getDefaultReaderForClass(
-				Long.class);
-		protected final FieldReader<Integer> intReader = FieldUtils.getDefaultReaderForClass(
-				Integer.class);
-		protected final FieldReader<String> stringReader = FieldUtils.getDefaultReaderForClass(
-				String.class);
-		protected final FieldReader<Double> doubleReader = FieldUtils.getDefaultReaderForClass(
-				Double.class);
-		protected final FieldReader<Boolean> booleanReader = FieldUtils.getDefaultReaderForClass(
-				Boolean.class);
-		protected final FieldReader<Calendar> calendarReader = FieldUtils.getDefaultReaderForClass(
-				Calendar.class);
+		private static final byte SCHEMA_PREFIX = '-';
+		private static final int HAS_ID = 1;
+		private static final int HAS_LATITUDE = 2;
+		private static final int HAS_LONGITUDE = 4;
+		private static final byte[] MEMBER_ID = ColumnQualifier.REFERENCE_MEMID_PREFIX.getBytes(
+				Schema.CHARSET);
+		private static final byte[] MEMBER_ROLE = ColumnQualifier.REFERENCE_ROLEID_PREFIX.getBytes(
+				Schema.CHARSET);
+		private static final byte[] MEMBER_TYPE = ColumnQualifier.REFERENCE_TYPE_PREFIX.getBytes(
+				Schema.CHARSET);
 
 		// Common
-		public Long Id = null;
-		public Long Version = null;
-		public Long Timestamp = null;
-		public Long Changeset = null;
-		public Long UserId = null;
+		public long Id;
+		// zero when not set
+		public long Version;
+		public long Timestamp;
+		public long Changeset;
+		public long UserId;
 		public String UserName = null;
-		public Boolean Visible = true; // per spec - default to true
+		public boolean Visible = true; // per spec - default to true
 
 		// nodes
-		public Double Lattitude = null;
-		public Double Longitude = null;
+		public double Lattitude;
+		public double Longitude;
 
 		// ways
-		public List<Long> Nodes = null;
+		public long[] Nodes = null;
+		// packed fixed-point locations of Nodes, when resolved at staging time
+		public long[] Locations = null;
 
-		// relations
-		public Map<Integer, RelationSet> relationSets = null;
+		// relations, by member index
+		public final Map<Integer, RelationSet> relationSets = new HashMap<>();
 
-		public Map<String, String> tags = null;
+		public final TagList tags = new TagList();
 
 		public OSMType OsmType = OSMType.UNSET;
 
-		public OSMUnion() {}
+		private int present = 0;
+		// decodes repeated strings without allocating; may be shared between unions read by one thread
+		private final StringCache strings;
+		private final PackedRow.Core core = new PackedRow.Core();
+		// relation sets released by reset, handed out again before allocating new ones
+		private final List<RelationSet> spareRelationSets = new ArrayList<>();
+
+		public OSMUnion() {
+			this(
+					null);
+		}
+
+		public OSMUnion(
+				final StringCache strings ) {
+			this.strings = strings;
+		}
 
 		public OSMUnion(
 				final Map<Key, Value> osm ) {
+			this(
+					null);
 			for (final Map.Entry<Key, Value> item : osm.entrySet()) {
-				if (OsmType.equals(
-						OSMType.UNSET)) {
-					final ByteSequence CF = item.getKey().getColumnFamilyData();
-					if (Schema.arraysEqual(
-							CF,
-							ColumnFamily.NODE)) {
-						OsmType = OSMType.NODE;
-					}
-					else if (Schema.arraysEqual(
-							CF,
-							ColumnFamily.WAY)) {
-						OsmType = OSMType.WAY;
-					}
-					else if (Schema.arraysEqual(
-							CF,
-							ColumnFamily.RELATION)) {
-						OsmType = OSMType.RELATION;
-					}
-				}
+				add(
+						item.getKey(),
+						item.getValue());
+			}
+		}
+
+		public boolean hasId() {
+			return (present & HAS_ID) != 0;
+		}
+
+		public boolean hasCoordinates() {
+			return (present & (HAS_LATITUDE | HAS_LONGITUDE)) == (HAS_LATITUDE | HAS_LONGITUDE);
+		}
 
-				final ByteSequence CQ = item.getKey().getColumnQualifierData();
+		/**
+		 * Clears every field so the instance can be decoded into again
+		 */
+		public void reset() {
+			present = 0;
+			Id = 0;
+			Version = 0;
+			Timestamp = 0;
+			Changeset = 0;
+			UserId = 0;
+			UserName = null;
+			Visible = true;
+			Lattitude = 0;
+			Longitude = 0;
+			Nodes = null;
+			Locations = null;
+			for (final RelationSet set : relationSets.values()) {
+				set.RoleId = null;
+				set.MemId = null;
+				set.MemType = null;
+				spareRelationSets.add(
+						set);
+			}
+			relationSets.clear();
+			tags.clear();
+			OsmType = OSMType.UNSET;
+		}
+
+		/**
+		 * Decodes one key/value of the row into the union
+		 */
+		public void add(
+				final Key key,
+				final Value value ) {
+			if (OsmType == OSMType.UNSET) {
+				final ByteSequence CF = key.getColumnFamilyData();
 				if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.ID)) {
-					Id = longReader.readField(
-							item.getValue().get());
-				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.VERSION)) {
-					Version = longReader.readField(
-							item.getValue().get());
+						CF,
+						ColumnFamily.NODE)) {
+					OsmType = OSMType.NODE;
 				}
 				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.TIMESTAMP)) {
-					Timestamp = longReader.readField(
-							item.getValue().get());
+						CF,
+						ColumnFamily.WAY)) {
+					OsmType = OSMType.WAY;
 				}
 				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.CHANGESET)) {
-					Changeset = longReader.readField(
-							item.getValue().get());
+						CF,
+						ColumnFamily.RELATION)) {
+					OsmType = OSMType.RELATION;
 				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.USER_ID)) {
-					UserId = longReader.readField(
-							item.getValue().get());
-				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.USER_TEXT)) {
-					UserName = stringReader.readField(
-							item.getValue().get());
-				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.OSM_VISIBILITY)) {
-					Visible = booleanReader.readField(
-							item.getValue().get());
-				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.LATITUDE)) {
-					Lattitude = doubleReader.readField(
-							item.getValue().get());
-				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.LONGITUDE)) {
-					Longitude = doubleReader.readField(
-							item.getValue().get());
+			}
+
+			final ByteSequence CQ = key.getColumnQualifierData();
+			final byte[] data = value.get();
+			if ((CQ.length() > 1) && (CQ.byteAt(
+					0) == SCHEMA_PREFIX) && addField(
+							CQ,
+							data)) {
+				return;
+			}
+			// these should all be tags
+			tags.put(
+					string(
+							CQ.getBackingArray(),
+							CQ.offset(),
+							CQ.length()),
+					string(
+							data,
+							0,
+							data.length));
+		}
+
+		/**
+		 * Decodes a schema column, dispatching on the byte after the prefix so each qualifier is only
+		 * compared against the few that share it. Returns false for unknown qualifiers.
+		 */
+		private boolean addField(
+				final ByteSequence CQ,
+				final byte[] data ) {
+			switch (CQ.byteAt(
+					1)) {
+				case 'i': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.ID)) {
+						setId(
+								Longs.fromByteArray(
+										data));
+						return true;
+					}
+					return false;
 				}
-				else if (Schema.arraysEqual(
-						CQ,
-						ColumnQualifier.REFERENCES)) {
-					try {
-						Nodes = TypeUtils.deserializeLongArray(
-								item.getValue().get(),
-								null).getIds();
+				case 'p': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.PACKED)) {
+						PackedRow.decodeCore(
+								data,
+								core,
+								strings);
+						setId(
+								core.id);
+						Version = core.version;
+						Timestamp = core.timestamp;
+						Changeset = core.changeset;
+						UserId = core.userId;
+						UserName = core.userName;
+						Visible = core.visible;
+						if (core.hasCoordinates) {
+							Lattitude = FixedPoint.toDegrees(
+									core.latitude);
+							Longitude = FixedPoint.toDegrees(
+									core.longitude);
+							present |= HAS_LATITUDE | HAS_LONGITUDE;
+						}
+						return true;
 					}
-					catch (final IOException e) {
-						log.error(
-								"Error deserializing Avro encoded Relation member set",
-								e);
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.PACKED_TAGS)) {
+						PackedRow.decodeTags(
+								data,
+								tags,
+								strings);
+						return true;
 					}
+					return false;
 				}
-				else if (Schema.startsWith(
-						CQ,
-						ColumnQualifier.REFERENCE_MEMID_PREFIX.getBytes(
-								Schema.CHARSET))) {
-					final String s = new String(
-							CQ.toArray());
-					final Integer id = Integer.valueOf(
-							s.split(
-									"_")[1]);
-					if (relationSets == null) {
-						relationSets = new HashMap<>();
+				case 'l': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.LATITUDE)) {
+						Lattitude = FixedPoint.readCoordinate(
+								data);
+						present |= HAS_LATITUDE;
+						return true;
+					}
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.LONGITUDE)) {
+						Longitude = FixedPoint.readCoordinate(
+								data);
+						present |= HAS_LONGITUDE;
+						return true;
 					}
-					if (!relationSets.containsKey(
-							id)) {
-						relationSets.put(
-								id,
-								new RelationSet());
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.LOCATIONS)) {
+						try {
+							Locations = TypeUtils.deserializeLocations(
+									data);
+						}
+						catch (final IOException e) {
+							log.error(
+									"Error deserializing way node locations",
+									e);
+						}
+						return true;
 					}
-					relationSets.get(
-							id).MemId = longReader.readField(
-									item.getValue().get());
+					return false;
 				}
-				else if (Schema.startsWith(
-						CQ,
-						ColumnQualifier.REFERENCE_ROLEID_PREFIX.getBytes(
-								Schema.CHARSET))) {
-					final String s = new String(
-							CQ.toArray());
-					final Integer id = Integer.valueOf(
-							s.split(
-									"_")[1]);
-					if (relationSets == null) {
-						relationSets = new HashMap<>();
+				case 'v': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.VERSION)) {
+						Version = Longs.fromByteArray(
+								data);
+						return true;
 					}
-					if (!relationSets.containsKey(
-							id)) {
-						relationSets.put(
-								id,
-								new RelationSet());
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.OSM_VISIBILITY)) {
+						Visible = (data.length > 0) && (data[0] > 0);
+						return true;
 					}
-					relationSets.get(
-							id).RoleId = stringReader.readField(
-									item.getValue().get());
+					return false;
 				}
-				else if (Schema.startsWith(
-						CQ,
-						ColumnQualifier.REFERENCE_TYPE_PREFIX.getBytes(
-								Schema.CHARSET))) {
-					final String s = new String(
-							CQ.toArray());
-					final Integer id = Integer.valueOf(
-							s.split(
-									"_")[1]);
-					if (relationSets == null) {
-						relationSets = new HashMap<>();
+				case 't': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.TIMESTAMP)) {
+						Timestamp = Longs.fromByteArray(
+								data);
+						return true;
 					}
-					if (!relationSets.containsKey(
-							id)) {
-						relationSets.put(
-								id,
-								new RelationSet());
+					return false;
+				}
+				case 'c': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.CHANGESET)) {
+						Changeset = Longs.fromByteArray(
+								data);
+						return true;
 					}
-					switch (stringReader.readField(
-							item.getValue().get())) {
-						case "NODE": {
-							relationSets.get(
-									id).MemType = MemberType.NODE;
-							break;
-						}
-						case "WAY": {
-							relationSets.get(
-									id).MemType = MemberType.WAY;
-							break;
-						}
-						case "RELATION": {
-							relationSets.get(
-									id).MemType = MemberType.RELATION;
-							break;
-						}
+					return false;
+				}
+				case 'u': {
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.USER_ID)) {
+						UserId = Longs.fromByteArray(
+								data);
+						return true;
+					}
+					if (Schema.arraysEqual(
+							CQ,
+							ColumnQualifier.USER_TEXT)) {
+						UserName = string(
+								data,
+								0,
+								data.length);
+						return true;
 					}
+					return false;
+				}
+				case 'r': {
+					return addReference(
+							CQ,
+							data);
 				}
-				else {
-					// these should all be tags
-					if (tags == null) {
-						tags = new HashMap<>();
+			}
+			return false;
+		}
+
+		private boolean addReference(
+				final ByteSequence CQ,
+				final byte[] data ) {
+			if (Schema.arraysEqual(
+					CQ,
+					ColumnQualifier.REFERENCES_DELTA)) {
+				try {
+					Nodes = TypeUtils.deserializeDeltaLongArray(
+							data);
+				}
+				catch (final IOException e) {
+					log.error(
+							"Error deserializing delta encoded way references",
+							e);
+				}
+				return true;
+			}
+			if (Schema.arraysEqual(
+					CQ,
+					ColumnQualifier.REFERENCES)) {
+				try {
+					Nodes = TypeUtils.deserializeReferences(data);
+				}
+				catch (final IOException e) {
+					log.error(
+							"Error deserializing Avro encoded Relation member set",
+							e);
+				}
+				return true;
+			}
+			if (Schema.startsWith(
+					CQ,
+					MEMBER_ID)) {
+				relationSet(
+						memberIndex(
+								CQ,
+								MEMBER_ID.length)).MemId = Longs.fromByteArray(
+										data);
+				return true;
+			}
+			if (Schema.startsWith(
+					CQ,
+					MEMBER_ROLE)) {
+				relationSet(
+						memberIndex(
+								CQ,
+								MEMBER_ROLE.length)).RoleId = string(
+										data,
+										0,
+										data.length);
+				return true;
+			}
+			if (Schema.startsWith(
+					CQ,
+					MEMBER_TYPE)) {
+				final RelationSet set = relationSet(
+						memberIndex(
+								CQ,
+								MEMBER_TYPE.length));
+				// stored as the MemberType name
+				switch ((data.length > 0) ? data[0] : 0) {
+					case 'N': {
+						set.MemType = MemberType.NODE;
+						break;
+					}
+					case 'W': {
+						set.MemType = MemberType.WAY;
+						break;
+					}
+					case 'R': {
+						set.MemType = MemberType.RELATION;
+						break;
 					}
-					tags.put(
-							item.getKey().getColumnQualifier().toString(),
-							new String(
-									item.getValue().get()));
 				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Parses the member index following prefix + REFERENCE_SEPARATOR straight from the qualifier
+		 */
+		private static int memberIndex(
+				final ByteSequence CQ,
+				final int prefixLength ) {
+			int index = 0;
+			for (int i = prefixLength + 1; i < CQ.length(); i++) {
+				index = (index * 10) + (CQ.byteAt(
+						i) - '0');
+			}
+			return index;
+		}
+
+		private RelationSet relationSet(
+				final int index ) {
+			RelationSet set = relationSets.get(
+					index);
+			if (set == null) {
+				set = spareRelationSets.isEmpty() ? new RelationSet() : spareRelationSets.remove(
+						spareRelationSets.size() - 1);
+				relationSets.put(
+						index,
+						set);
+			}
+			return set;
+		}
+
+		private void setId(
+				final long id ) {
+			Id = id;
+			present |= HAS_ID;
+		}
+
+		private String string(
+				final byte[] data,
+				final int offset,
+				final int length ) {
+			if (strings == null) {
+				return new String(
+						data,
+						offset,
+						length,
+						Schema.CHARSET);
 			}
+			return strings.get(
+					data,
+					offset,
+					length);
 		}
 	}
 
@@ -0,0 +1,48 @@
+package mil.nga.giat.osm.mapreduce.Ingest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * Expands the mutations for one row into key/value pairs in Accumulo sort order, as required by
+ * AccumuloFileOutputFormat. Rows arrive in sorted order from the shuffle; within a row the columns
+ * are sorted here.
+ */
+public class OSMBulkLoadReducer extends Reducer<Text, Mutation, Key, Value> {
+
+    public static final String TIMESTAMP_KEY = "osmBulkLoadTimestamp";
+
+    private final Map<Key, Value> row = new TreeMap<>();
+    private long timestamp;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        //every cell of a load shares one timestamp, the same way a single live ingest run would
+        timestamp = context.getConfiguration().getLong(TIMESTAMP_KEY, System.currentTimeMillis());
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<Mutation> values, Context context) throws IOException, InterruptedException {
+        row.clear();
+        byte[] rowId = key.copyBytes();
+        //hadoop reuses the value instance, so the updates have to be copied out before advancing
+        for (Mutation m : values) {
+            for (ColumnUpdate cu : m.getUpdates()) {
+                Key k = new Key(rowId, cu.getColumnFamily(), cu.getColumnQualifier(), cu.getColumnVisibility(),
+                        cu.hasTimestamp() ? cu.getTimestamp() : timestamp, cu.isDeleted(), true);
+                row.put(k, new Value(cu.getValue(), true));
+            }
+        }
+        for (Map.Entry<Key, Value> kvp : row.entrySet()) {
+            context.write(kvp.getKey(), kvp.getValue());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package mil.nga.giat.osm.mapreduce.Ingest;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.avro.Schema;
+import org.apache.avro.mapred.AvroKey;
+import org.apache.hadoop.io.NullWritable;
+
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Ingests nodes, ways, and relations in a single job. The input schema is the union of the three
+ * record types, so each staged file resolves to its own branch and the datum's class picks the row layout.
+ */
+public class OSMEntityMapper extends OSMMapperBase<Object> {
+
+    public static final Schema UNION_SCHEMA = Schema.createUnion(Arrays.asList(
+            Node.getClassSchema(), Way.getClassSchema(), Relation.getClassSchema()));
+
+    @Override
+    public void map(AvroKey<Object> key, NullWritable value, Context context) throws IOException, InterruptedException {
+        Object datum = key.datum();
+        if (datum instanceof Node) {
+            write(context, _mutationBuilder.getMutation((Node) datum));
+        }
+        else if (datum instanceof Way) {
+            write(context, _mutationBuilder.getMutation((Way) datum));
+        }
+        else if (datum instanceof Relation) {
+            write(context, _mutationBuilder.getMutation((Relation) datum));
+        }
+        else {
+            throw new IOException("Unexpected OSM record type: " + (datum == null ? "null" : datum.getClass().getName()));
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package mil.nga.giat.osm.mapreduce.Ingest;
 
 import java.io.IOException;
-import java.util.Calendar;
 
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.security.ColumnVisibility;
@@ -9,85 +8,32 @@ import org.apache.avro.mapred.AvroKey;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import mil.nga.giat.geowave.core.store.data.field.FieldUtils;
-import mil.nga.giat.geowave.core.store.data.field.FieldWriter;
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
 import mil.nga.giat.osm.accumulo.osmschema.Schema;
-import mil.nga.giat.osm.types.TypeUtils;
-import mil.nga.giat.osm.types.generated.LongArray;
 
 
 public class OSMMapperBase<T> extends Mapper<AvroKey<T>, NullWritable, Text, Mutation> {
 
-    private static final Logger log = LoggerFactory.getLogger(OSMMapperBase.class);
-
-
-    protected final FieldWriter<?, Long> longWriter = FieldUtils.getDefaultWriterForClass(Long.class);
-    protected final FieldWriter<?, Integer> intWriter = FieldUtils.getDefaultWriterForClass(Integer.class);
-    protected final FieldWriter<?, String> stringWriter = FieldUtils.getDefaultWriterForClass(String.class);
-    protected final FieldWriter<?, Double> doubleWriter = FieldUtils.getDefaultWriterForClass(Double.class);
-    protected final FieldWriter<?, Boolean> booleanWriter = FieldUtils.getDefaultWriterForClass(Boolean.class);
-    protected final FieldWriter<?, Calendar> calendarWriter = FieldUtils.getDefaultWriterForClass(Calendar.class);
-
     protected ColumnVisibility _visibility = new ColumnVisibility("public".getBytes(Schema.CHARSET));
 
+    protected OsmMutationBuilder _mutationBuilder = new OsmMutationBuilder(_visibility);
+
     protected Text _tableName = new Text("OSM");
 
+    //bulk load jobs key mutations by row so the shuffle sorts them for the rfile writers
+    protected boolean _bulkLoad = false;
+
     protected byte[] getIdHash(long id) {
        return Schema.getIdHash(id);
     }
 
-    protected void put(Mutation m, byte[] cf, byte[] cq, Long val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, longWriter.writeField(val));
-		}
-    }
-
-    protected void put(Mutation m, byte[] cf, byte[] cq, Integer val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, intWriter.writeField(val));
-		}
-    }
-
-    protected void put(Mutation m, byte[] cf, byte[] cq, Double val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, doubleWriter.writeField(val));
-		}
-    }
-
-    protected void put(Mutation m, byte[] cf, byte[] cq, String val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, stringWriter.writeField(val));
-		}
-    }
-
-	protected void put(Mutation m, byte[] cf, byte[] cq, CharSequence val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, stringWriter.writeField(val.toString()));
-		}
-	}
-
-    protected void put(Mutation m, byte[] cf, byte[] cq, Boolean val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, booleanWriter.writeField(val));
-		}
-    }
-
-    protected void put(Mutation m, byte[] cf, byte[] cq, Calendar val) {
-		if (val != null) {
-			m.put(cf, cq, _visibility, calendarWriter.writeField(val));
-		}
-    }
-
-    protected void put(Mutation m, byte[] cf, byte[] cq, LongArray val) {
-        if (val != null){
-            try {
-                m.put(cf, cq, _visibility, TypeUtils.serializeLongArray(val));
-            } catch (IOException e) {
-                log.error("Unable to serialize LongArray instance", e);
-            }
+    protected void write(Context context, Mutation m) throws IOException, InterruptedException {
+        if (_bulkLoad){
+            context.write(new Text(m.getRow()), m);
+        }
+        else {
+            context.write(_tableName, m);
         }
     }
 
@@ -103,6 +49,11 @@ public class OSMMapperBase<T> extends Mapper<AvroKey<T>, NullWritable, Text, Mut
 		}
 
         _visibility = new ColumnVisibility(visibility.getBytes(Schema.CHARSET));
+        _mutationBuilder = new OsmMutationBuilder(
+                _visibility,
+                context.getConfiguration().getInt("osmSchemaVersion", Schema.VERSION_COLUMNS),
+                context.getConfiguration().getBoolean("osmFixedPointCoordinates", false));
+        _bulkLoad = context.getConfiguration().getBoolean("osmBulkLoad", false);
     }
 
 
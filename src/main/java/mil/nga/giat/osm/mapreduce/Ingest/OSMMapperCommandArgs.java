@@ -9,6 +9,7 @@ import java.util.regex.Pattern;
 import com.beust.jcommander.Parameter;
 
 import mil.nga.giat.geowave.datastore.accumulo.util.AccumuloUtils;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
 
 public class OSMMapperCommandArgs {
 
@@ -54,9 +55,51 @@ public class OSMMapperCommandArgs {
     @Parameter(names = {"-jn", "--jobName"}, required = false, description = "Name of mapreduce job")
 	public String jobName = "Ingest (" + System.getProperty("user.name") + ")";
 
-    @Parameter(names = {"-t", "--type"}, required = true, description = "Mapper type - one of node, way, or relation")
+    @Parameter(names = {"-t", "--type"}, required = true, description = "Mapper type - one of node, way, relation, or all")
     public String mapperType;
 
+	@Parameter(names = {"--bulkLoad"}, required = false, description = "write sorted rfiles and bulk import them instead of sending live mutations")
+	public boolean bulkLoad;
+
+	@Parameter(names = {"--bulkWorkDir"}, required = false, description = "hdfs directory for generated rfiles; defaults to <hdfsBasePath>/bulk/<type>")
+	public String bulkWorkDir = null;
+
+	@Parameter(names = {"--schemaVersion"}, required = false, description = "row layout to write: 1 = one key per attribute/tag, 2 = packed attributes and tags")
+	public int schemaVersion = Schema.VERSION_COLUMNS;
+
+	@Parameter(names = {"--fixedPointCoordinates"}, required = false, description = "store node coordinates as 1e-7 fixed-point ints instead of doubles")
+	public boolean fixedPointCoordinates;
+
+	@Parameter(names = {"--tablets"}, required = false, description = "number of tablets to pre-split a new OSM table into; overrides --expectedEntities and --tabletSizeMB")
+	public int tablets = 0;
+
+	@Parameter(names = {"--expectedEntities"}, required = false, description = "expected total of nodes, ways, and relations; sizes the pre-split of a new OSM table")
+	public long expectedEntities = 0;
+
+	@Parameter(names = {"--tabletSizeMB"}, required = false, description = "target tablet size used to pre-split a new OSM table")
+	public long tabletSizeMB = 1024;
+
+	@Parameter(names = {"--scanThreads"}, required = false, description = "query threads for the batch scanner used to resolve way and relation geometries during conversion")
+	public int scanThreads = 8;
+
+	@Parameter(names = {"--conversionBatchSize"}, required = false, description = "number of rows whose geometry references are resolved together during conversion")
+	public int conversionBatchSize = 500;
+
+	@Parameter(names = {"--nodeCacheSize"}, required = false, description = "number of node coordinates each conversion mapper keeps cached between lookups")
+	public int nodeCacheSize = 1000000;
+
+	@Parameter(names = {"--relationCacheSize"}, required = false, description = "number of member way and relation geometries each conversion mapper keeps for assembling route and boundary relations")
+	public int relationCacheSize = 100000;
+
+	@Parameter(names = {"--joinConversion"}, required = false, description = "convert with sequential join passes over the table instead of per-feature node and way lookups")
+	public boolean joinConversion;
+
+	@Parameter(names = {"--joinReducers"}, required = false, description = "reduce tasks for each join conversion pass")
+	public int joinReducers = 64;
+
+	@Parameter(names = {"--filterRows"}, required = false, description = "drop rows no mapping can match on the tablet servers; the osm jar must be on the tablet server classpath")
+	public boolean filterRows;
+
 	@Parameter(names = {"-m", "--mappingFile"}, required = false, description = "Mapping file, imposm3 form")
 	public String mappingFile = null;
 
@@ -78,6 +121,13 @@ public class OSMMapperCommandArgs {
 		return hdfsBasePath + "/relations";
 	}
 
+	public String getBulkWorkDir(){
+		if (bulkWorkDir != null){
+			return bulkWorkDir;
+		}
+		return hdfsBasePath + "/bulk/" + mapperType.toLowerCase();
+	}
+
 	public void processMappingFile()
 			throws IOException {
 		if (mappingFile != null){
@@ -101,7 +151,8 @@ public class OSMMapperCommandArgs {
 		StringBuilder sb = new StringBuilder();
 		sb.append(zookeepers).append(separator).append(instanceName).append(separator).append(user).append(separator).append(pass).append(separator)
 				.append(osmNamespace).append(separator).append(visibility).append(separator).append(hdfsBasePath).append(separator).append(jobName)
-				.append(separator).append(mapperType);
+				.append(separator).append(mapperType).append(separator).append(scanThreads).append(separator).append(conversionBatchSize)
+				.append(separator).append(nodeCacheSize).append(separator).append(relationCacheSize);
 		return sb.toString();
 	}
 
@@ -116,6 +167,17 @@ public class OSMMapperCommandArgs {
 		hdfsBasePath = settings[6];
 		jobName = settings[7];
 		mapperType = settings[8];
+		//settings added later are optional so older serialized strings still load
+		if (settings.length > 10){
+			scanThreads = Integer.parseInt(settings[9]);
+			conversionBatchSize = Integer.parseInt(settings[10]);
+		}
+		if (settings.length > 11){
+			nodeCacheSize = Integer.parseInt(settings[11]);
+		}
+		if (settings.length > 12){
+			relationCacheSize = Integer.parseInt(settings[12]);
+		}
 	}
 
 
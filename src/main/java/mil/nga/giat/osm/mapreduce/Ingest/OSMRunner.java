@@ -1,17 +1,34 @@
 package mil.nga.giat.osm.mapreduce.Ingest;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.ClientConfiguration;
+import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.admin.TableOperations;
+import org.apache.accumulo.core.client.mapreduce.AccumuloFileOutputFormat;
 import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
+import org.apache.accumulo.core.client.mapreduce.lib.partition.RangePartitioner;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.mapreduce.AvroJob;
 import org.apache.avro.mapreduce.AvroKeyInputFormat;
 import org.apache.commons.cli.MissingArgumentException;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
@@ -48,13 +65,62 @@ public class OSMRunner
         this.avroSchema = avroSchema;
     }
 
-    private void enableLocalityGroups(OSMMapperCommandArgs argv) throws AccumuloSecurityException, AccumuloException, TableNotFoundException {
+    private void enableLocalityGroups(OSMMapperCommandArgs argv) throws AccumuloSecurityException, AccumuloException, TableNotFoundException, IOException {
         BasicAccumuloOperations bao = new BasicAccumuloOperations(argv.zookeepers,argv.instanceName,argv.user,argv.pass,argv.osmNamespace);
         bao.createTable(argv.osmTableName);
 
         bao.addLocalityGroup(argv.osmTableName, Schema.CF.NODE);
         bao.addLocalityGroup(argv.osmTableName, Schema.CF.WAY);
         bao.addLocalityGroup(argv.osmTableName, Schema.CF.RELATION);
+
+        presplit(bao.getConnector().tableOperations(), argv);
+        if (stagedWayLocations(argv)) {
+            Schema.markWayLocations(bao.getConnector().tableOperations(), argv.getQualifiedTableName());
+        }
+    }
+
+    /**
+     * @return true if the ways being ingested were staged with --wayLocations
+     */
+    private boolean stagedWayLocations(OSMMapperCommandArgs argv) throws IOException {
+        if (!"WAY".equals(argv.mapperType) && !"ALL".equals(argv.mapperType)) {
+            return false;
+        }
+        FileSystem fs = FileSystem.get(getConf());
+        Path ways = new Path(argv.getWaysBasePath());
+        //OsmPbfStageRunner writes a directory of part files, and never embeds locations
+        if (!fs.isFile(ways)) {
+            return false;
+        }
+        DataFileStream<Object> stream = new DataFileStream<>(fs.open(ways), new GenericDatumReader<Object>());
+        try {
+            return Boolean.parseBoolean(stream.getMetaString(Schema.WAY_LOCATIONS_META));
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Pre-splits a new table, see Schema.presplit. Without a size from the arguments the staged files size it.
+     */
+    private void presplit(TableOperations tableOps, OSMMapperCommandArgs argv) throws AccumuloSecurityException, AccumuloException, TableNotFoundException, IOException {
+        long staged = 0;
+        if (argv.tablets <= 0 && argv.expectedEntities <= 0) {
+            //the table holds all three types, so size it from everything that was staged
+            FileSystem fs = FileSystem.get(getConf());
+            for (String input : new String[] {argv.getNodesBasePath(), argv.getWaysBasePath(), argv.getRelationsBasePath()}) {
+                Path path = new Path(input);
+                if (fs.exists(path)) {
+                    staged += fs.getContentSummary(path).getLength();
+                }
+            }
+        }
+        String table = argv.getQualifiedTableName();
+        long tablets = Schema.getTabletCount(argv.tablets, argv.expectedEntities, argv.tabletSizeMB, staged);
+        if (Schema.presplit(tableOps, table, tablets)) {
+            log.info("Pre-split " + table + " into " + tablets + " tablets");
+        }
     }
 
     @Override
@@ -65,6 +131,9 @@ public class OSMRunner
         Configuration conf = this.getConf();
         conf.set("tableName", argv.getQualifiedTableName());
         conf.set("osmVisibility", argv.visibility);
+        conf.setBoolean("osmBulkLoad", argv.bulkLoad);
+        conf.setInt("osmSchemaVersion", argv.schemaVersion);
+        conf.setBoolean("osmFixedPointCoordinates", argv.fixedPointCoordinates);
 
         //job settings
         Job job = Job.getInstance(conf, argv.jobName);
@@ -89,9 +158,16 @@ public class OSMRunner
                 job.setMapperClass(OSMRelationMapper.class);
                 break;
             }
+            case "ALL": {
+                //one job over all three staged files instead of three sequential jobs
+                configureSchema(OSMEntityMapper.UNION_SCHEMA);
+                inputAvroFile = argv.getNodesBasePath() + "," + argv.getWaysBasePath() + "," + argv.getRelationsBasePath();
+                job.setMapperClass(OSMEntityMapper.class);
+                break;
+            }
         }
         if (avroSchema == null || inputAvroFile == null){
-            throw new MissingArgumentException("argument for mapper type must be one of: NODE, WAY, or RELATION");
+            throw new MissingArgumentException("argument for mapper type must be one of: NODE, WAY, RELATION, or ALL");
         }
 
 
@@ -106,6 +182,10 @@ public class OSMRunner
 
         //mappper
 
+        if (argv.bulkLoad) {
+            return runBulkLoad(job, argv);
+        }
+
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Mutation.class);
         job.setOutputFormatClass(AccumuloOutputFormat.class);
@@ -120,4 +200,65 @@ public class OSMRunner
         return job.waitForCompletion(true) ? 0 : -1;
     }
 
+    /**
+     * Shuffles the mutations by row, writes sorted rfiles, and bulk imports them - nothing goes through the tablet server write ahead logs.
+     * If the table is pre-split there is one reducer per tablet, so each rfile lands in exactly one tablet.
+     */
+    private int runBulkLoad(Job job, OSMMapperCommandArgs argv) throws Exception {
+        Connector conn = new BasicAccumuloOperations(argv.zookeepers,argv.instanceName,argv.user,argv.pass,argv.osmNamespace).getConnector();
+        Configuration conf = job.getConfiguration();
+        FileSystem fs = FileSystem.get(conf);
+
+        Path workDir = new Path(argv.getBulkWorkDir());
+        Path filesDir = new Path(workDir, "files");
+        Path failuresDir = new Path(workDir, "failures");
+        if (fs.exists(workDir)) {
+            throw new IOException("Bulk load work directory already exists: " + workDir);
+        }
+
+        conf.setLong(OSMBulkLoadReducer.TIMESTAMP_KEY, System.currentTimeMillis());
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(Mutation.class);
+        job.setReducerClass(OSMBulkLoadReducer.class);
+        job.setOutputKeyClass(Key.class);
+        job.setOutputValueClass(Value.class);
+        job.setOutputFormatClass(AccumuloFileOutputFormat.class);
+        AccumuloFileOutputFormat.setOutputPath(job, filesDir);
+        AccumuloFileOutputFormat.setCompressionType(job, "gz");
+
+        Collection<Text> splits = conn.tableOperations().listSplits(argv.getQualifiedTableName());
+        if (splits.isEmpty()) {
+            job.setNumReduceTasks(1);
+        }
+        else {
+            Path splitFile = new Path(workDir, "splits.txt");
+            PrintStream out = new PrintStream(new BufferedOutputStream(fs.create(splitFile)), false, Schema.CHARSET.name());
+            try {
+                for (Text split : splits) {
+                    out.println(Base64.encodeBase64String(split.copyBytes()));
+                }
+            }
+            finally {
+                out.close();
+            }
+            job.setPartitionerClass(RangePartitioner.class);
+            RangePartitioner.setSplitFile(job, splitFile.toString());
+            job.setNumReduceTasks(splits.size() + 1);
+        }
+
+        if (!job.waitForCompletion(true)) {
+            return -1;
+        }
+
+        fs.mkdirs(failuresDir);
+        conn.tableOperations().importDirectory(argv.getQualifiedTableName(), filesDir.toString(), failuresDir.toString(), false);
+
+        FileStatus[] failures = fs.listStatus(failuresDir);
+        if (failures != null && failures.length > 0) {
+            log.error(failures.length + " rfiles failed to import into " + argv.getQualifiedTableName() + ", see " + failuresDir);
+            return -1;
+        }
+        return 0;
+    }
+
 }
@@ -0,0 +1,108 @@
+package mil.nga.giat.osm.mapreduce.Stage;
+
+import java.io.IOException;
+
+import org.apache.avro.mapred.AvroKey;
+import org.apache.avro.mapreduce.AvroMultipleOutputs;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.osm.parser.OsmAvroBinaryParser;
+import mil.nga.giat.osm.parser.OsmEntitySink;
+import mil.nga.giat.osm.parser.PbfBlob;
+import mil.nga.giat.osm.parser.PbfBlobDecoder;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Decodes one PBF blob per record and writes its entities to the nodes/ways/relations staging outputs
+ */
+public class OsmPbfStageMapper extends Mapper<LongWritable, PbfBlob, AvroKey<Object>, NullWritable> implements OsmEntitySink
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(OsmPbfStageMapper.class);
+
+	public static final String NODES = "nodes";
+	public static final String WAYS = "ways";
+	public static final String RELATIONS = "relations";
+
+	public enum StageCounters {
+		BLOBS,
+		NODES,
+		WAYS,
+		RELATIONS
+	}
+
+	private final OsmAvroBinaryParser parser = new OsmAvroBinaryParser();
+	private final PbfBlobDecoder decoder = new PbfBlobDecoder();
+	private final AvroKey<Object> outKey = new AvroKey<>();
+	private AvroMultipleOutputs outputs = null;
+	private Context context = null;
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		super.setup(context);
+		this.context = context;
+		outputs = new AvroMultipleOutputs(context);
+		parser.setSink(this);
+	}
+
+	@Override
+	protected void map(LongWritable key, PbfBlob value, Context context) throws IOException, InterruptedException {
+		switch (value.getType()){
+			case PbfBlob.DATA_BLOCK: {
+				parser.parse(Osmformat.PrimitiveBlock.parseFrom(decoder.decode(value)));
+				break;
+			}
+			case PbfBlob.HEADER_BLOCK: {
+				//nothing in the header is needed for staging
+				break;
+			}
+			default: {
+				LOGGER.warn("Skipped block at offset " + key.get() + " of type: " + value.getType());
+			}
+		}
+		context.getCounter(StageCounters.BLOBS).increment(1);
+	}
+
+	@Override
+	public void write(Node node) throws IOException {
+		write(NODES, node);
+		context.getCounter(StageCounters.NODES).increment(1);
+	}
+
+	@Override
+	public void write(Way way) throws IOException {
+		write(WAYS, way);
+		context.getCounter(StageCounters.WAYS).increment(1);
+	}
+
+	@Override
+	public void write(Relation relation) throws IOException {
+		write(RELATIONS, relation);
+		context.getCounter(StageCounters.RELATIONS).increment(1);
+	}
+
+	private void write(String namedOutput, Object record) throws IOException {
+		outKey.datum(record);
+		try {
+			//base path keeps the layout of the local stager: <hdfsBasePath>/nodes, /ways, /relations
+			outputs.write(namedOutput, outKey, NullWritable.get(), namedOutput + "/part");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing " + namedOutput, e);
+		}
+	}
+
+	@Override
+	protected void cleanup(Context context) throws IOException, InterruptedException {
+		decoder.close();
+		outputs.close();
+		super.cleanup(context);
+	}
+}
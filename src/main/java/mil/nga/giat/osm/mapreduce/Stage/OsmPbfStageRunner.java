@@ -0,0 +1,81 @@
+package mil.nga.giat.osm.mapreduce.Stage;
+
+import java.io.IOException;
+
+import org.apache.avro.mapred.AvroKey;
+import org.apache.avro.mapreduce.AvroJob;
+import org.apache.avro.mapreduce.AvroKeyOutputFormat;
+import org.apache.avro.mapreduce.AvroMultipleOutputs;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.beust.jcommander.JCommander;
+
+import mil.nga.giat.osm.OSMCommandArgs;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Stages PBF files that are already on HDFS with a map only job; --inputDirectory is read from HDFS
+ * and the nodes/ways/relations avro files land under --hdfsBasePath, where OSMRunner expects them.
+ */
+public class OsmPbfStageRunner
+		extends Configured implements Tool
+{
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new OsmPbfStageRunner(), args);
+		System.exit(res);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		OSMCommandArgs argv = new OSMCommandArgs();
+		new JCommander(argv, args);
+		Configuration conf = getConf();
+		if (argv.nameNode != null){
+			conf.set("fs.default.name", "hdfs://" + argv.nameNode);
+		}
+
+		Path output = new Path(argv.hdfsBasePath);
+		FileSystem fs = output.getFileSystem(conf);
+		if (fs.exists(output)){
+			throw new IOException("Staging directory already exists: " + output);
+		}
+
+		Job job = Job.getInstance(conf, "Stage PBF (" + System.getProperty("user.name") + ")");
+		job.setJarByClass(OsmPbfStageRunner.class);
+
+		//input format
+		job.setInputFormatClass(PbfInputFormat.class);
+		FileInputFormat.setInputPaths(job, new Path(argv.ingestDirectory));
+		FileInputFormat.setInputDirRecursive(job, true);
+
+		//mapper
+		job.setMapperClass(OsmPbfStageMapper.class);
+		job.setNumReduceTasks(0);
+
+		//output - everything goes through the named outputs, so don't create empty default part files
+		LazyOutputFormat.setOutputFormatClass(job, AvroKeyOutputFormat.class);
+		FileOutputFormat.setOutputPath(job, output);
+		FileOutputFormat.setCompressOutput(job, true);
+		job.getConfiguration().set(AvroJob.CONF_OUTPUT_CODEC, "snappy");
+		job.setOutputKeyClass(AvroKey.class);
+		job.setOutputValueClass(NullWritable.class);
+		AvroMultipleOutputs.addNamedOutput(job, OsmPbfStageMapper.NODES, AvroKeyOutputFormat.class, Node.getClassSchema());
+		AvroMultipleOutputs.addNamedOutput(job, OsmPbfStageMapper.WAYS, AvroKeyOutputFormat.class, Way.getClassSchema());
+		AvroMultipleOutputs.addNamedOutput(job, OsmPbfStageMapper.RELATIONS, AvroKeyOutputFormat.class, Relation.getClassSchema());
+		AvroMultipleOutputs.setCountersEnabled(job, true);
+
+		return job.waitForCompletion(true) ? 0 : -1;
+	}
+}
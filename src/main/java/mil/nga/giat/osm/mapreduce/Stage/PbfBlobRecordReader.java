@@ -0,0 +1,193 @@
+package mil.nga.giat.osm.mapreduce.Stage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import mil.nga.giat.osm.parser.PbfBlob;
+import mil.nga.giat.osm.parser.PbfBlobSource;
+
+/**
+ * Reads the blobs whose length prefix starts inside a file split.
+ *
+ * PBF has no sync markers, so a split that does not start at 0 scans forward for the serialized
+ * BlobHeader of a data or header block ("\n\7OSMData" / "\n\tOSMHeader" preceded by a length
+ * under 64k), and only accepts a candidate if the blob it describes is followed by another valid
+ * header or the end of the file. Blobs starting before the split end are read to completion even
+ * if they extend past it; the following split skips them while it scans.
+ */
+public class PbfBlobRecordReader extends RecordReader<LongWritable, PbfBlob>
+{
+	private static final byte[] DATA_SIGNATURE = signature(PbfBlob.DATA_BLOCK);
+	private static final byte[] HEADER_SIGNATURE = signature(PbfBlob.HEADER_BLOCK);
+	private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+	private FSDataInputStream input = null;
+	private long start;
+	private long end;
+	private long fileLength;
+	private long position;
+	private long index = 0;
+
+	private final LongWritable key = new LongWritable();
+	private PbfBlob value = null;
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+		FileSplit split = (FileSplit) genericSplit;
+		Path path = split.getPath();
+		FileSystem fs = path.getFileSystem(context.getConfiguration());
+		fileLength = fs.getFileStatus(path).getLen();
+		start = split.getStart();
+		end = Math.min(fileLength, start + split.getLength());
+		input = fs.open(path);
+		position = start == 0 ? 0 : findBlobBoundary(start);
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		if (position >= end){
+			value = null;
+			return false;
+		}
+		input.seek(position);
+		int headerSize = input.readInt();
+		if (headerSize < 0 || headerSize > PbfBlobSource.MAX_HEADER_SIZE){
+			throw new IOException("Invalid PBF blob header size: " + headerSize + " at offset " + position);
+		}
+		byte[] header = new byte[headerSize];
+		input.readFully(header);
+		Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+		if (blobHeader.getDatasize() < 0 || blobHeader.getDatasize() > PbfBlobSource.MAX_BLOB_SIZE){
+			throw new IOException("Invalid PBF blob size: " + blobHeader.getDatasize() + " at offset " + position);
+		}
+		byte[] blob = new byte[blobHeader.getDatasize()];
+		input.readFully(blob);
+
+		key.set(position);
+		value = new PbfBlob(index++, blobHeader.getType(), ByteBuffer.wrap(blob));
+		position += 4 + headerSize + blob.length;
+		return true;
+	}
+
+	/**
+	 * @return the offset of the first blob starting in [from, end), or end if there is none
+	 */
+	private long findBlobBoundary(long from) throws IOException {
+		int signatureLength = 6 + PbfBlob.HEADER_BLOCK.length();
+		byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		long bufferStart = from;
+		while (bufferStart < end){
+			input.seek(bufferStart);
+			int read = IOUtils.read(input, buffer);
+			for (int i = 0; i + signatureLength <= read && bufferStart + i < end; i++){
+				if (isCandidate(buffer, i) && isBoundary(bufferStart + i)){
+					return bufferStart + i;
+				}
+			}
+			if (read < buffer.length){
+				break;
+			}
+			//overlap the windows so a signature straddling them is still seen
+			bufferStart += read - signatureLength;
+		}
+		return end;
+	}
+
+	private static boolean isCandidate(byte[] buffer, int offset){
+		//headers are at most 64k, so the two high bytes of the length prefix are always zero
+		if (buffer[offset] != 0 || buffer[offset + 1] != 0){
+			return false;
+		}
+		return matches(buffer, offset + 4, DATA_SIGNATURE) || matches(buffer, offset + 4, HEADER_SIGNATURE);
+	}
+
+	private static boolean matches(byte[] buffer, int offset, byte[] signature){
+		for (int i = 0; i < signature.length; i++){
+			if (buffer[offset + i] != signature[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isBoundary(long offset) throws IOException {
+		long next = blobEnd(offset);
+		if (next < 0 || next > fileLength){
+			return false;
+		}
+		return next == fileLength || blobEnd(next) >= 0;
+	}
+
+	/**
+	 * @return offset just past the blob whose length prefix is at offset, or -1 if no valid blob header is there
+	 */
+	private long blobEnd(long offset) throws IOException {
+		try {
+			input.seek(offset);
+			int headerSize = input.readInt();
+			if (headerSize <= 0 || headerSize > PbfBlobSource.MAX_HEADER_SIZE){
+				return -1;
+			}
+			byte[] header = new byte[headerSize];
+			input.readFully(header);
+			Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+			if (!PbfBlob.DATA_BLOCK.equals(blobHeader.getType()) && !PbfBlob.HEADER_BLOCK.equals(blobHeader.getType())){
+				return -1;
+			}
+			if (blobHeader.getDatasize() < 0 || blobHeader.getDatasize() > PbfBlobSource.MAX_BLOB_SIZE){
+				return -1;
+			}
+			return offset + 4 + headerSize + blobHeader.getDatasize();
+		}
+		catch (EOFException | InvalidProtocolBufferException e) {
+			return -1;
+		}
+	}
+
+	private static byte[] signature(String type){
+		byte[] name = type.getBytes(StandardCharsets.UTF_8);
+		byte[] signature = new byte[name.length + 2];
+		signature[0] = 0x0A; //field 1 (type), length delimited
+		signature[1] = (byte) name.length;
+		System.arraycopy(name, 0, signature, 2, name.length);
+		return signature;
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public PbfBlob getCurrentValue() {
+		return value;
+	}
+
+	@Override
+	public float getProgress() {
+		if (end == start){
+			return 1.0f;
+		}
+		return Math.min(1.0f, (position - start) / (float) (end - start));
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOUtils.closeQuietly(input);
+	}
+}
@@ -0,0 +1,47 @@
+package mil.nga.giat.osm.mapreduce.Stage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import mil.nga.giat.osm.parser.PbfBlob;
+
+/**
+ * Splits PBF files on HDFS by byte range; each split yields the raw blobs that start inside it,
+ * keyed by their offset in the file.
+ */
+public class PbfInputFormat extends FileInputFormat<LongWritable, PbfBlob>
+{
+	@Override
+	public RecordReader<LongWritable, PbfBlob> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new PbfBlobRecordReader();
+	}
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path filename) {
+		return true;
+	}
+
+	/**
+	 * Restricts directory inputs to .pbf files; markers, READMEs and other files beside them are skipped
+	 */
+	@Override
+	protected List<FileStatus> listStatus(JobContext job) throws IOException {
+		List<FileStatus> pbfs = new ArrayList<>();
+		for (FileStatus status : super.listStatus(job)){
+			if (!status.isDirectory() && status.getPath().getName().endsWith(".pbf")){
+				pbfs.add(status);
+			}
+		}
+		return pbfs;
+	}
+}
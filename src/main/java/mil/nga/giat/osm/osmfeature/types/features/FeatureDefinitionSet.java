@@ -31,9 +31,12 @@ public class FeatureDefinitionSet {
 	public final static List<FeatureDefinition> Features = new ArrayList<>();
 	public final static Map<String, FeatureDataAdapter> featureAdapters = new HashMap<>();
 	public final static Map<String, SimpleFeatureType> featureTypes = new HashMap<>();
+	//parallel to Features
+	public final static List<FeaturePlan> featurePlans = new ArrayList<>();
 	private final static Object MUTEX = new Object();
 	private static boolean initialized = false;
 	private static final Logger LOGGER = LoggerFactory.getLogger(FeatureDefinitionSet.class);
+	private static volatile MappingIndex mappingIndex = null;
 
 	public static void initialize(String configFile){
 		synchronized (MUTEX) {
@@ -53,12 +56,30 @@ public class FeatureDefinitionSet {
 				for (FeatureDefinition fd : Features){
 					parseFeatureDefinition(fd);
 				}
+				mappingIndex = new MappingIndex(Features);
 
 				initialized = true;
 			}
 		}
 	}
 
+	/**
+	 * The tag index of the mapping rules in Features - built by initialize, or on first use when
+	 * Features was filled some other way
+	 */
+	public static MappingIndex getMappingIndex(){
+		MappingIndex index = mappingIndex;
+		if (index == null){
+			synchronized (MUTEX) {
+				if (mappingIndex == null){
+					mappingIndex = new MappingIndex(Features);
+				}
+				index = mappingIndex;
+			}
+		}
+		return index;
+	}
+
 	private static void parseFeatureDefinition(FeatureDefinition fd){
 		final SimpleFeatureTypeBuilder sftb = new SimpleFeatureTypeBuilder();
 		sftb.setName(fd.Name);
@@ -93,9 +114,18 @@ public class FeatureDefinitionSet {
 		}
 		SimpleFeatureType sft = sftb.buildFeatureType();
 		featureTypes.put(fd.Name, sft);
+		featurePlans.add(new FeaturePlan(fd, sft));
 		featureAdapters.put(fd.Name, new FeatureDataAdapter(sft));
 	}
 
+	/**
+	 * @param ordinal position of the definition in Features
+	 * @return the compiled plan, or null when the definition set wasn't initialized
+	 */
+	public static FeaturePlan getFeaturePlan(int ordinal){
+		return ordinal < featurePlans.size() ? featurePlans.get(ordinal) : null;
+	}
+
 	public static String normalizeOsmNames(String name){
 		if (name == null)
 			return null;
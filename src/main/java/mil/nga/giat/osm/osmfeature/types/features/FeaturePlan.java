@@ -0,0 +1,86 @@
+package mil.nga.giat.osm.osmfeature.types.features;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import mil.nga.giat.osm.osmfeature.types.attributes.AttributeDefinition;
+import mil.nga.giat.osm.osmfeature.types.attributes.AttributeType;
+import mil.nga.giat.osm.osmfeature.types.attributes.AttributeTypes;
+
+/**
+ * A FeatureDefinition resolved against its SimpleFeatureType - one step per attribute that can be
+ * populated, with the attribute's index in the type, its converter, and where its value comes from.
+ */
+public class FeaturePlan {
+
+	public static enum Source {
+		ID,
+		GEOMETRY,
+		MAPPING_VALUE,
+		MAPPING_KEY,
+		TAG
+	}
+
+	public static class Step {
+		public final Source source;
+		public final int slot;
+		public final AttributeType<?> converter;
+		//tag to read for Source.TAG
+		public final String tagKey;
+
+		private Step(Source source, int slot, AttributeType<?> converter, String tagKey){
+			this.source = source;
+			this.slot = slot;
+			this.converter = converter;
+			this.tagKey = tagKey;
+		}
+
+		public Object convert(Object value){
+			return converter.convert(value);
+		}
+	}
+
+	public final FeatureDefinition definition;
+	public final SimpleFeatureType type;
+	public final List<Step> steps;
+
+	public FeaturePlan(FeatureDefinition definition, SimpleFeatureType type){
+		this.definition = definition;
+		this.type = type;
+		List<Step> compiled = new ArrayList<>(definition.Attributes.size());
+		for (AttributeDefinition ad : definition.Attributes){
+			Source source = getSource(ad);
+			if (source == null){
+				continue;
+			}
+			//attributes of unknown types have no slot in the feature type
+			int slot = type.indexOf(FeatureDefinitionSet.normalizeOsmNames(ad.Name));
+			if (slot < 0){
+				continue;
+			}
+			compiled.add(new Step(source, slot, AttributeTypes.getAttributeType(ad.Type), ad.Key));
+		}
+		steps = Collections.unmodifiableList(compiled);
+	}
+
+	private static Source getSource(AttributeDefinition ad){
+		switch (ad.Type){
+			case "id":
+				return Source.ID;
+			case "geometry":
+			case "validated_geometry":
+				return Source.GEOMETRY;
+			case "mapping_value":
+				return Source.MAPPING_VALUE;
+			case "mapping_key":
+				return Source.MAPPING_KEY;
+		}
+		if (ad.Key != null && !ad.Key.equals("null")){
+			return Source.TAG;
+		}
+		return null;
+	}
+}
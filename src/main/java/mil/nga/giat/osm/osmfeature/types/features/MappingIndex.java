@@ -0,0 +1,107 @@
+package mil.nga.giat.osm.osmfeature.types.features;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The mapping and sub mapping rules of every feature definition, inverted into tag key -> tag value
+ * -> rules, so an entity is matched with a hash probe per tag instead of a scan of every definition.
+ */
+public class MappingIndex {
+	public static final String WILDCARD_VALUE = "__any__";
+
+	public static class Rule {
+		public final FeatureDefinition definition;
+		//position of the definition in the definition list
+		public final int ordinal;
+		//last position of the key in the definition's MappingKeys; the highest ranked match supplies the mapping value
+		public final int rank;
+		//true for rules from "mappings", which also supply the mapping key
+		public final boolean subMapping;
+
+		public Rule(FeatureDefinition definition, int ordinal, int rank, boolean subMapping){
+			this.definition = definition;
+			this.ordinal = ordinal;
+			this.rank = rank;
+			this.subMapping = subMapping;
+		}
+	}
+
+	private static class KeyRules {
+		final Map<String, List<Rule>> values = new HashMap<>();
+		final List<Rule> anyValue = new ArrayList<>();
+	}
+
+	private final Map<String, KeyRules> keys = new HashMap<>();
+
+	public MappingIndex(List<FeatureDefinition> definitions){
+		for (int i = 0; i < definitions.size(); i++){
+			FeatureDefinition fd = definitions.get(i);
+			for (Map.Entry<String, List<String>> mapping : fd.Mappings.entrySet()){
+				add(fd, i, mapping.getKey(), mapping.getValue(), false);
+			}
+			for (List<Map<String, List<String>>> subMappings : fd.SubMappings.values()){
+				for (Map<String, List<String>> subMapping : subMappings){
+					for (Map.Entry<String, List<String>> mapping : subMapping.entrySet()){
+						add(fd, i, mapping.getKey(), mapping.getValue(), true);
+					}
+				}
+			}
+		}
+	}
+
+	private void add(FeatureDefinition fd, int ordinal, String key, List<String> values, boolean subMapping){
+		Rule rule = new Rule(fd, ordinal, fd.MappingKeys.lastIndexOf(key), subMapping);
+		KeyRules keyRules = keys.get(key);
+		if (keyRules == null){
+			keyRules = new KeyRules();
+			keys.put(key, keyRules);
+		}
+		for (String value : values){
+			if (WILDCARD_VALUE.equals(value)){
+				keyRules.anyValue.add(rule);
+				continue;
+			}
+			List<Rule> rules = keyRules.values.get(value);
+			if (rules == null){
+				rules = new ArrayList<>();
+				keyRules.values.put(value, rules);
+			}
+			rules.add(rule);
+		}
+	}
+
+	/**
+	 * Adds the rules matching the tag to the list
+	 */
+	public void match(String key, String value, List<Rule> into){
+		KeyRules keyRules = keys.get(key);
+		if (keyRules == null){
+			return;
+		}
+		List<Rule> rules = keyRules.values.get(value);
+		if (rules != null){
+			into.addAll(rules);
+		}
+		into.addAll(keyRules.anyValue);
+	}
+
+	/**
+	 * Every tag key any rule matches on, with its values; WILDCARD_VALUE stands for any value
+	 */
+	public Map<String, Set<String>> getTagValues(){
+		Map<String, Set<String>> tagValues = new HashMap<>();
+		for (Map.Entry<String, KeyRules> kvp : keys.entrySet()){
+			Set<String> values = new HashSet<>(kvp.getValue().values.keySet());
+			if (!kvp.getValue().anyValue.isEmpty()){
+				values.add(WILDCARD_VALUE);
+			}
+			tagValues.put(kvp.getKey(), values);
+		}
+		return tagValues;
+	}
+}
@@ -0,0 +1,49 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a ByteBuffer view in place, so protobuf can parse mapped file regions without an intermediate array
+ */
+class ByteBufferInputStream extends InputStream
+{
+	private final ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer){
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()){
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0){
+			return 0;
+		}
+		if (!buffer.hasRemaining()){
+			return -1;
+		}
+		int count = Math.min(len, buffer.remaining());
+		buffer.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) {
+		int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + count);
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
@@ -0,0 +1,40 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+
+import org.apache.avro.file.DataFileWriter;
+
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Appends parsed entities to the nodes/ways/relations Avro staging files
+ */
+public class DataFileEntitySink implements OsmEntitySink
+{
+	private final DataFileWriter nodeWriter;
+	private final DataFileWriter wayWriter;
+	private final DataFileWriter relationWriter;
+
+	public DataFileEntitySink(DataFileWriter nodeWriter, DataFileWriter wayWriter, DataFileWriter relationWriter){
+		this.nodeWriter = nodeWriter;
+		this.wayWriter = wayWriter;
+		this.relationWriter = relationWriter;
+	}
+
+	@Override
+	public void write(Node node) throws IOException {
+		nodeWriter.append(node);
+	}
+
+	@Override
+	public void write(Way way) throws IOException {
+		wayWriter.append(way);
+	}
+
+	@Override
+	public void write(Relation relation) throws IOException {
+		relationWriter.append(relation);
+	}
+}
@@ -0,0 +1,72 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Remembers the location of every node it passes on, and fills in the locations of each way's nodes
+ * before passing the way on. Relies on the nodes-before-ways ordering of PBF files; a way that
+ * references a node that hasn't been seen is passed on without locations.
+ */
+public class LocationEmbeddingSink
+		implements OsmEntitySink
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocationEmbeddingSink.class);
+
+	private final OsmEntitySink sink;
+	private final NodeLocationStore index;
+	private long embedded = 0;
+	private long incomplete = 0;
+
+	public LocationEmbeddingSink(OsmEntitySink sink, NodeLocationStore index){
+		this.sink = sink;
+		this.index = index;
+	}
+
+	@Override
+	public void write(Node node) throws IOException {
+		index.put(node.getCommon().getId(), FixedPoint.pack(FixedPoint.toFixed(node.getLatitude()), FixedPoint.toFixed(node.getLongitude())));
+		sink.write(node);
+	}
+
+	@Override
+	public void write(Way way) throws IOException {
+		if (way.getNodes() != null){
+			List<Long> locations = new ArrayList<>(way.getNodes().size());
+			for (Long id : way.getNodes()){
+				long location = index.get(id);
+				if (location == FixedPoint.NO_LOCATION){
+					locations = null;
+					break;
+				}
+				locations.add(location);
+			}
+			way.setLocations(locations);
+			if (locations != null){
+				embedded++;
+			}
+			else {
+				incomplete++;
+			}
+		}
+		sink.write(way);
+	}
+
+	@Override
+	public void write(Relation relation) throws IOException {
+		sink.write(relation);
+	}
+
+	public void logTotals(){
+		LOGGER.info("Embedded node locations in " + embedded + " ways; " + incomplete + " ways referenced unknown nodes");
+	}
+}
@@ -0,0 +1,82 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.giat.osm.types.FixedPoint;
+
+/**
+ * Dense store - one long per node id in a memory mapped scratch file, mapped a 1GB segment at a time
+ * as ids reach it. The file is sparse, so only pages holding written ids take disk space, and it is
+ * deleted on close.
+ */
+public class MappedNodeLocationStore
+		implements NodeLocationStore
+{
+	private static final int SEGMENT_SHIFT = 27; //2^27 longs = 1GB per mapping
+	private static final int SEGMENT_ENTRIES = 1 << SEGMENT_SHIFT;
+
+	private final File path;
+	private RandomAccessFile file;
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+	//the file is indexed by id, so negative (not yet uploaded) ids are kept aside
+	private final Map<Long, Long> negativeIds = new HashMap<>();
+
+	public MappedNodeLocationStore(File path) throws IOException {
+		this.path = path;
+		file = new RandomAccessFile(path, "rw");
+	}
+
+	@Override
+	public void put(long id, long location) throws IOException {
+		if (id < 0){
+			negativeIds.put(id, location);
+			return;
+		}
+		int segment = (int) (id >>> SEGMENT_SHIFT);
+		while (segments.size() <= segment){
+			segments.add(null);
+		}
+		MappedByteBuffer buffer = segments.get(segment);
+		if (buffer == null){
+			//mapping past the end grows the file; the filesystem only allocates the pages written to
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_ENTRIES * 8, SEGMENT_ENTRIES * 8L);
+			segments.set(segment, buffer);
+		}
+		//stored flipped so the zeroes of untouched pages read back as NO_LOCATION
+		buffer.putLong((int) (id & (SEGMENT_ENTRIES - 1)) * 8, location ^ FixedPoint.NO_LOCATION);
+	}
+
+	@Override
+	public long get(long id){
+		if (id < 0){
+			Long location = negativeIds.get(id);
+			return location == null ? FixedPoint.NO_LOCATION : location;
+		}
+		int segment = (int) (id >>> SEGMENT_SHIFT);
+		if (segment >= segments.size() || segments.get(segment) == null){
+			return FixedPoint.NO_LOCATION;
+		}
+		return segments.get(segment).getLong((int) (id & (SEGMENT_ENTRIES - 1)) * 8) ^ FixedPoint.NO_LOCATION;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segments.clear();
+		negativeIds.clear();
+		if (file != null){
+			file.close();
+			file = null;
+			if (!path.delete()){
+				path.deleteOnExit();
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.IOUtils;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+
+/**
+ * Frames PBF blobs from a memory mapped file.
+ *
+ * Blobs are handed out as read only views of the mapping rather than copied arrays. A single
+ * mapping is limited to 2GB, so the file is mapped in windows; a window is moved forward whenever
+ * the next blob would cross its end. Views handed out earlier keep their window mapped until they
+ * are garbage collected, so blobs still being decoded stay valid after the reader moves on.
+ */
+public class MappedPbfBlobReader implements PbfBlobSource
+{
+	public static final long DEFAULT_WINDOW_SIZE = 1024L * 1024L * 1024L;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final long windowSize;
+
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	private long position = 0;
+	private long index = 0;
+
+	public MappedPbfBlobReader(File pbfFile) throws IOException {
+		this(pbfFile, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedPbfBlobReader(File pbfFile, long windowSize) throws IOException {
+		//a window must always be able to hold the largest legal header + blob
+		if (windowSize < 4 + MAX_HEADER_SIZE + MAX_BLOB_SIZE || windowSize > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Window size must be between " + (4 + MAX_HEADER_SIZE + MAX_BLOB_SIZE) + " and " + Integer.MAX_VALUE + " bytes");
+		}
+		this.file = new RandomAccessFile(pbfFile, "r");
+		this.channel = file.getChannel();
+		this.fileSize = channel.size();
+		this.windowSize = windowSize;
+	}
+
+	@Override
+	public PbfBlob next() throws IOException {
+		if (position >= fileSize){
+			return null;
+		}
+		int headerSize = view(position, 4).getInt();
+		if (headerSize < 0 || headerSize > MAX_HEADER_SIZE){
+			throw new IOException("Invalid PBF blob header size: " + headerSize + " at offset " + position);
+		}
+		position += 4;
+
+		Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(new ByteBufferInputStream(view(position, headerSize)));
+		position += headerSize;
+
+		int blobSize = blobHeader.getDatasize();
+		if (blobSize < 0 || blobSize > MAX_BLOB_SIZE){
+			throw new IOException("Invalid PBF blob size: " + blobSize + " at offset " + position);
+		}
+		ByteBuffer blob = view(position, blobSize).asReadOnlyBuffer();
+		position += blobSize;
+
+		return new PbfBlob(index++, blobHeader.getType(), blob);
+	}
+
+	/**
+	 * @return a view of [offset, offset + length) in the file, remapping the window if needed
+	 */
+	private ByteBuffer view(long offset, int length) throws IOException {
+		if (offset + length > fileSize){
+			throw new IOException("Truncated PBF file; expected " + length + " bytes at offset " + offset);
+		}
+		if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()){
+			windowStart = offset;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, fileSize - windowStart));
+		}
+		ByteBuffer view = window.duplicate();
+		view.position((int) (offset - windowStart));
+		view.limit((int) (offset - windowStart) + length);
+		return view.slice();
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		IOUtils.closeQuietly(channel);
+		IOUtils.closeQuietly(file);
+	}
+}
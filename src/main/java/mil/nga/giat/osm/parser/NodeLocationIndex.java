@@ -0,0 +1,61 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node location store used while staging that starts out as a SortedNodeLocationStore, which is all
+ * an extract needs, and moves to a MappedNodeLocationStore once more than heapEntries locations have
+ * been added or ids stop arriving in ascending order.
+ */
+public class NodeLocationIndex
+		implements NodeLocationStore
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(NodeLocationIndex.class);
+
+	private final File spillFile;
+	private SortedNodeLocationStore sorted;
+	private MappedNodeLocationStore mapped = null;
+
+	public NodeLocationIndex(int heapEntries, File spillFile){
+		this.spillFile = spillFile;
+		sorted = new SortedNodeLocationStore(heapEntries);
+	}
+
+	@Override
+	public void put(long id, long location) throws IOException {
+		if (mapped == null){
+			if (sorted.accepts(id)){
+				sorted.put(id, location);
+				return;
+			}
+			spill();
+		}
+		mapped.put(id, location);
+	}
+
+	@Override
+	public long get(long id){
+		return mapped == null ? sorted.get(id) : mapped.get(id);
+	}
+
+	private void spill() throws IOException {
+		LOGGER.info("Moving " + sorted.size() + " node locations to memory mapped index " + spillFile);
+		mapped = new MappedNodeLocationStore(spillFile);
+		for (int i = 0; i < sorted.size(); i++){
+			mapped.put(sorted.idAt(i), sorted.locationAt(i));
+		}
+		sorted.close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		sorted.close();
+		if (mapped != null){
+			mapped.close();
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Node id to location map holding packed fixed-point locations (see FixedPoint.pack) in primitive
+ * storage, for resolving way geometry without keeping node objects around.
+ *
+ * MappedNodeLocationStore is indexed directly by id and suits planet sized id ranges;
+ * SortedNodeLocationStore holds only the nodes it is given and suits extracts.
+ */
+public interface NodeLocationStore
+		extends Closeable
+{
+	public void put(long id, long location) throws IOException;
+
+	/**
+	 * @return the packed location, or FixedPoint.NO_LOCATION
+	 */
+	public long get(long id);
+}
@@ -0,0 +1,242 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.osmbinary.BinaryParser;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Converts decoded PBF primitive blocks into Avro node/way/relation records.
+ * Instances keep the string table of the block being parsed, so each decoding thread needs its own.
+ */
+public class OsmAvroBinaryParser extends BinaryParser
+{
+	private static Logger LOGGER = LoggerFactory.getLogger(OsmAvroBinaryParser.class);
+
+	private OsmEntitySink sink = null;
+
+	public void setSink(OsmEntitySink sink){
+		this.sink = sink;
+	}
+
+	@Override
+	protected void parseRelations(List<Osmformat.Relation> rels) {
+		for (Osmformat.Relation r : rels){
+			Relation r2 = new Relation();
+			Primitive p = getPrimitive(r.getInfo());
+			p.setId(r.getId());
+			p.setTags(getTags(r.getKeysList(), r.getValsList()));
+			r2.setCommon(p);
+
+			List<RelationMember> members = new ArrayList<>(r.getRolesSidCount());
+
+			long lastMemId = 0;
+			for (int i = 0; i < r.getRolesSidCount(); i++){
+				RelationMember rm = new RelationMember();
+				lastMemId += r.getMemids(i);
+				rm.setMember(lastMemId);
+				rm.setRole(getStringById(r.getRolesSid(i)));
+				switch (r.getTypes(i).toString()){
+					case "NODE": {
+						rm.setMemberType(MemberType.NODE);
+						break;
+					}
+					case "WAY": {
+						rm.setMemberType(MemberType.WAY);
+						break;
+					}
+					case "RELATION" : {
+						rm.setMemberType(MemberType.RELATION);
+						break;
+					}
+				}
+				members.add(rm);
+			}
+			r2.setMembers(members);
+			write(r2);
+		}
+	}
+
+	@Override
+	protected void parseDense(Osmformat.DenseNodes nodes) {
+		long lastId=0;
+		long lastLat=0;
+		long lastLon=0;
+		long lastTimestamp=0;
+		long lastChangeset=0;
+		int lastUid=0;
+		int lastSid=0;
+
+		int tagLocation =0;
+
+
+		for (int i=0 ; i< nodes.getIdCount() ; i++) {
+
+			Node n = new Node();
+			Primitive p = new Primitive();
+
+			lastId += nodes.getId(i);
+			lastLat += nodes.getLat(i);
+			lastLon += nodes.getLon(i);
+
+			p.setId(lastId);
+			n.setLatitude(parseLat(lastLat));
+			n.setLongitude(parseLon(lastLon));
+
+			//Weird spec - keys and values are mashed sequentially, and end of data for a particular node is denoted by a value of 0
+			if (nodes.getKeysValsCount() > 0) {
+				Map<CharSequence, CharSequence> tags = new HashMap<>();
+				while (nodes.getKeysVals(tagLocation) > 0){
+					String k = getStringById(nodes.getKeysVals(tagLocation));
+					tagLocation++;
+					String v = getStringById(nodes.getKeysVals(tagLocation));
+					tagLocation++;
+					tags.put(k,v);
+				}
+				//skip the 0 delimiter so the next node starts at its own keys
+				tagLocation++;
+				p.setTags(tags);
+			}
+
+			if (nodes.hasDenseinfo()){
+				Osmformat.DenseInfo di = nodes.getDenseinfo();
+				lastTimestamp += di.getTimestamp(i);
+				lastChangeset += di.getChangeset(i);
+				lastUid += di.getUid(i);
+				lastSid += di.getUserSid(i);
+
+				p.setVersion((long) di.getVersion(i));
+				p.setTimestamp(lastTimestamp);
+				p.setChangesetId(lastChangeset);
+				p.setUserId((long)lastUid);
+				p.setUserName(getStringById(lastSid));
+				if (di.getVisibleCount() > 0){
+					p.setVisible(di.getVisible(i));
+				}
+
+
+			}
+
+			n.setCommon(p);
+
+			write(n);
+
+		}
+	}
+
+	@Override
+	protected void parseNodes(List<Osmformat.Node> nodes) {
+		for (Osmformat.Node n : nodes) {
+			Node n2 = new Node();
+			Primitive p = getPrimitive(n.getInfo());
+			p.setId(n.getId());
+			p.setTags(getTags(n.getKeysList(), n.getValsList()));
+			n2.setCommon(p);
+			n2.setLatitude(parseLat(n.getLat()));
+			n2.setLongitude(parseLon(n.getLon()));
+			write(n2);
+		}
+	}
+
+	@Override
+	protected void parseWays(List<Osmformat.Way> ways) {
+		for (Osmformat.Way w : ways) {
+			Way w2 = new Way();
+			Primitive p = getPrimitive(w.getInfo());
+			p.setId(w.getId());
+			p.setTags(getTags(w.getKeysList(), w.getValsList()));
+			w2.setCommon(p);
+
+			long lastRef = 0;
+			List<Long> nodes = new ArrayList<>(w.getRefsCount());
+			for (Long ref : w.getRefsList()) {
+				lastRef+= ref;
+				nodes.add(lastRef);
+			}
+			w2.setNodes(nodes);
+
+			write(w2);
+		}
+	}
+
+	@Override
+	protected void parse(Osmformat.HeaderBlock header) {
+
+	}
+
+	public void complete() {
+		LOGGER.debug("Complete!");
+	}
+
+	/**
+	 * Sink failures end the parse, so a failed staging write can't leave truncated output behind a
+	 * successful run; BinaryParser's callbacks can't throw checked exceptions
+	 */
+	private void write(Node node) {
+		try {
+			sink.write(node);
+		}
+		catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write node: " + node.getCommon().getId(), e);
+		}
+	}
+
+	private void write(Way way) {
+		try {
+			sink.write(way);
+		}
+		catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write way: " + way.getCommon().getId(), e);
+		}
+	}
+
+	private void write(Relation relation) {
+		try {
+			sink.write(relation);
+		}
+		catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write relation: " + relation.getCommon().getId(), e);
+		}
+	}
+
+
+
+	private Map<CharSequence, CharSequence> getTags(List<Integer> k, List<Integer> v){
+		Map<CharSequence, CharSequence> tags = new HashMap<CharSequence, CharSequence>(k.size());
+		for (int i = 0; i < k.size(); i++){
+			tags.put(getStringById(k.get(i)), getStringById(v.get(i)));
+		}
+		return tags;
+	}
+
+
+	private Primitive getPrimitive(Osmformat.Info info){
+		Primitive p = new Primitive();
+		p.setVersion((long)info.getVersion());
+		p.setTimestamp(info.getTimestamp());
+		p.setUserId((long) info.getUid());
+		try {
+			p.setUserName(getStringById(info.getUid()));
+		} catch (Exception ex) {
+			LOGGER.warn("Error, input file doesn't contain a valid string table for user id: " + info.getUid());
+			p.setUserName(String.valueOf(info.getUid()));
+		}
+			p.setChangesetId(info.getChangeset());
+			p.setVisible(info.getVisible());
+		return p;
+	}
+}
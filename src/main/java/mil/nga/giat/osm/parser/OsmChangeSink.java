@@ -0,0 +1,20 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Receives the entities of osmChange files; created and modified entities arrive through the
+ * OsmEntitySink writes, deleted ones (id and version only) through delete
+ */
+public interface OsmChangeSink extends OsmEntitySink
+{
+	public void delete(Node node) throws IOException;
+
+	public void delete(Way way) throws IOException;
+
+	public void delete(Relation relation) throws IOException;
+}
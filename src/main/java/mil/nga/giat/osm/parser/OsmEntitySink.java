@@ -0,0 +1,19 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Receives the Avro node/way/relation records produced by the OSM parsers
+ */
+public interface OsmEntitySink
+{
+	public void write(Node node) throws IOException;
+
+	public void write(Way way) throws IOException;
+
+	public void write(Relation relation) throws IOException;
+}
@@ -1,7 +1,7 @@
 package mil.nga.giat.osm.parser;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileVisitResult;
@@ -10,10 +10,16 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
@@ -22,18 +28,18 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.openstreetmap.osmosis.osmbinary.BinaryParser;
-import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.osmbinary.file.BlockInputStream;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import mil.nga.giat.geowave.datastore.accumulo.BasicAccumuloOperations;
 import mil.nga.giat.osm.OSMCommandArgs;
-import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.accumulo.AccumuloChangeSink;
+import mil.nga.giat.osm.accumulo.AccumuloEntitySink;
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
 import mil.nga.giat.osm.types.generated.Node;
-import mil.nga.giat.osm.types.generated.Primitive;
 import mil.nga.giat.osm.types.generated.Relation;
-import mil.nga.giat.osm.types.generated.RelationMember;
 import mil.nga.giat.osm.types.generated.Way;
 
 public class OsmPbfParser
@@ -42,6 +48,14 @@ public class OsmPbfParser
 	private static Logger LOGGER = org.slf4j.LoggerFactory.getLogger(OsmPbfParser.class);
 
 	public void stageData(OSMCommandArgs args) throws IOException {
+		if (args.applyChanges){
+			applyChanges(args);
+			return;
+		}
+		if (args.directIngest){
+			ingestData(args);
+			return;
+		}
 		final OSMCommandArgs arg = args;
 		final Configuration conf = new Configuration();
 		conf.set("fs.default.name", "hdfs://" + args.nameNode);
@@ -71,7 +85,6 @@ public class OsmPbfParser
 		FSDataOutputStream wayOut = null;
 		FSDataOutputStream relationOut = null;
 
-		final OsmAvroBinaryParser parser =  new OsmAvroBinaryParser();
 		try {
 
 			nodeOut = fs.create(nodesPath);
@@ -79,26 +92,15 @@ public class OsmPbfParser
 			relationOut = fs.create(relationsPath);
 
 			nodeWriter.create(Node.getClassSchema(), nodeOut);
+			if (arg.wayLocations){
+				//OSMRunner marks the table from this when ingesting the ways
+				wayWriter.setMeta(Schema.WAY_LOCATIONS_META, Boolean.TRUE.toString());
+			}
 			wayWriter.create(Way.getClassSchema(), wayOut);
 			relationWriter.create(Relation.getClassSchema(), relationOut);
 
 
-			parser.setupWriter(nodeWriter, wayWriter, relationWriter);
-
-				Files.walkFileTree(
-					Paths.get(args.ingestDirectory), new SimpleFileVisitor<java.nio.file.Path>()
-					{
-						@Override public FileVisitResult visitFile( java.nio.file.Path file, BasicFileAttributes attrs )
-								throws IOException {
-							if (file.getFileName().toString().endsWith(arg.extension)) {
-								loadFileToHdfs(file, parser);
-							}
-							return FileVisitResult.CONTINUE;
-						}
-					});
-		}
-		catch (IOException ex){
-			//
+			loadFiles(new DataFileEntitySink(nodeWriter, wayWriter, relationWriter), arg);
 		}
 		finally {
 			IOUtils.closeQuietly(nodeWriter);
@@ -111,225 +113,190 @@ public class OsmPbfParser
 		}
 	}
 
-	private static void loadFileToHdfs( java.nio.file.Path file, OsmAvroBinaryParser parser){
-
-		InputStream is = null;
-			try {
-				is = new FileInputStream(file.toFile());
-				new BlockInputStream(is, parser).process();
-			}
-			catch (FileNotFoundException e) {
-				LOGGER.error("Unable to load file: " + file.toString());
+	/**
+	 * Parses every input file straight into the OSM table with a BatchWriter, skipping the avro staging files
+	 */
+	public void ingestData(OSMCommandArgs args) throws IOException {
+		Connector connector;
+		try {
+			BasicAccumuloOperations bao = new BasicAccumuloOperations(args.zookeepers, args.instanceName, args.user, args.pass, args.osmNamespace);
+			bao.createTable(args.osmTableName);
+			bao.addLocalityGroup(args.osmTableName, Schema.CF.NODE);
+			bao.addLocalityGroup(args.osmTableName, Schema.CF.WAY);
+			bao.addLocalityGroup(args.osmTableName, Schema.CF.RELATION);
+			connector = bao.getConnector();
+			//input files are far denser than the table, so only --tablets or --expectedEntities size the split
+			long tablets = Schema.getTabletCount(args.tablets, args.expectedEntities, args.tabletSizeMB, 0);
+			if (Schema.presplit(connector.tableOperations(), args.getQualifiedTableName(), tablets)){
+				LOGGER.info("Pre-split " + args.getQualifiedTableName() + " into " + tablets + " tablets");
 			}
-			catch (IOException e) {
-				LOGGER.error("Unable to process file: " + file.toString());
+			if (args.wayLocations){
+				Schema.markWayLocations(connector.tableOperations(), args.getQualifiedTableName());
 			}
-			finally {
-				IOUtils.closeQuietly(is);
-			}
-
-	}
-
-
-	private static class OsmAvroBinaryParser extends BinaryParser
-	{
-		private static Logger LOGGER = LoggerFactory.getLogger(OsmAvroBinaryParser.class);
-
-		private DataFileWriter nodeWriter = null;
-		private DataFileWriter wayWriter = null;
-		private DataFileWriter relationWriter = null;
-
+		}
+		catch (AccumuloException | AccumuloSecurityException | TableNotFoundException e) {
+			throw new IOException("Unable to prepare table: " + args.getQualifiedTableName(), e);
+		}
 
-		public void setupWriter(DataFileWriter nodeWriter, DataFileWriter wayWriter, DataFileWriter relationWriter){
-			this.nodeWriter = nodeWriter;
-			this.wayWriter = wayWriter;
-			this.relationWriter = relationWriter;
+		BatchWriterConfig config = new BatchWriterConfig();
+		config.setMaxWriteThreads(args.writerThreads);
+		config.setMaxMemory(args.writerMemoryMB * 1024L * 1024L);
+		AccumuloEntitySink sink;
+		try {
+			sink = new AccumuloEntitySink(
+					connector.createBatchWriter(args.getQualifiedTableName(), config),
+					new OsmMutationBuilder(new ColumnVisibility(args.visibility.getBytes(Schema.CHARSET)), args.schemaVersion, args.fixedPointCoordinates));
+		}
+		catch (TableNotFoundException e) {
+			throw new IOException("Unable to open table: " + args.getQualifiedTableName(), e);
 		}
 
-		@Override
-		protected void parseRelations(List<Osmformat.Relation> rels) {
-			for (Osmformat.Relation r : rels){
-				Relation r2 = new Relation();
-				Primitive p = getPrimitive(r.getInfo());
-				p.setId(r.getId());
-				p.setTags(getTags(r.getKeysList(), r.getValsList()));
-				r2.setCommon(p);
+		try {
+			loadFiles(sink, args);
+		}
+		finally {
+			sink.close();
+		}
+	}
 
-				List<RelationMember> members = new ArrayList<>(r.getRolesSidCount());
+	/**
+	 * Applies the osmChange files in the input directory to the rows already in the OSM table, in file
+	 * name order so sequentially numbered replication diffs go in sequence
+	 */
+	public void applyChanges(OSMCommandArgs args) throws IOException {
+		Connector connector;
+		try {
+			connector = new BasicAccumuloOperations(args.zookeepers, args.instanceName, args.user, args.pass, args.osmNamespace).getConnector();
+		}
+		catch (AccumuloException | AccumuloSecurityException e) {
+			throw new IOException("Unable to connect to accumulo for table: " + args.getQualifiedTableName(), e);
+		}
 
-				for (int i = 0; i < r.getRolesSidCount(); i++){
-					RelationMember rm = new RelationMember();
-					rm.setMember(r.getMemids(i));
-					rm.setRole(getStringById(r.getRolesSid(i)));
-					switch (r.getTypes(i).toString()){
-						case "NODE": {
-							rm.setMemberType(MemberType.NODE);
-							break;
-						}
-						case "WAY": {
-							rm.setMemberType(MemberType.WAY);
-							break;
-						}
-						case "RELATION" : {
-							rm.setMemberType(MemberType.RELATION);
-							break;
-						}
-					}
+		BatchWriterConfig config = new BatchWriterConfig();
+		config.setMaxWriteThreads(args.writerThreads);
+		config.setMaxMemory(args.writerMemoryMB * 1024L * 1024L);
+		AccumuloChangeSink sink;
+		try {
+			sink = new AccumuloChangeSink(
+					connector.createBatchWriter(args.getQualifiedTableName(), config),
+					connector.createBatchScanner(args.getQualifiedTableName(), new Authorizations(args.visibility), args.writerThreads),
+					new OsmMutationBuilder(new ColumnVisibility(args.visibility.getBytes(Schema.CHARSET)), args.schemaVersion, args.fixedPointCoordinates),
+					args.changeBatchSize,
+					Schema.hasWayLocations(connector.tableOperations(), args.getQualifiedTableName()));
+		}
+		catch (AccumuloException e) {
+			throw new IOException("Unable to read the properties of table: " + args.getQualifiedTableName(), e);
+		}
+		catch (TableNotFoundException e) {
+			throw new IOException("Unable to open table: " + args.getQualifiedTableName(), e);
+		}
 
-				}
-				r2.setMembers(members);
+		try {
+			for (java.nio.file.Path file : changeFiles(args)){
+				LOGGER.info("Applying changes from: " + file.toString());
 				try {
-					relationWriter.append(r2);
+					OsmXmlChangeSink.read(file.toFile(), sink, args.parserThreads);
 				}
-				catch (IOException e) {
-					LOGGER.error("Unable to write relation", e);
+				catch (OsmosisRuntimeException e) {
+					throw new IOException("Unable to process file: " + file.toString(), e);
 				}
 			}
 		}
-		@Override
-		protected void parseDense(Osmformat.DenseNodes nodes) {
-			long lastId=0;
-			long lastLat=0;
-			long lastLon=0;
-			long lastTimestamp=0;
-			long lastChangeset=0;
-			int lastUid=0;
-			int lastSid=0;
-
-			int tagLocation =0;
-
-
-			for (int i=0 ; i< nodes.getIdCount() ; i++) {
-
-				Node n = new Node();
-				Primitive p = new Primitive();
-
-				lastId += nodes.getId(i);
-				lastLat += nodes.getLat(i);
-				lastLon += nodes.getLon(i);
-
-				p.setId(lastId);
-				n.setLatitude(parseLat(lastLat));
-				n.setLongitude(parseLon(lastLon));
+		finally {
+			sink.close();
+		}
+	}
 
-				//Weird spec - keys and values are mashed sequentially, and end of data for a particular node is denoted by a value of 0
-				if (nodes.getKeysValsCount() > 0) {
-					Map<CharSequence, CharSequence> tags = new HashMap<>(nodes.getKeysValsCount());
-					while (nodes.getKeysVals(tagLocation) > 0){
-						String k = getStringById(nodes.getKeysVals(tagLocation));
-						tagLocation++;
-						String v = getStringById(nodes.getKeysVals(tagLocation));
-						tagLocation++;
-						tags.put(k,v);
+	private static List<java.nio.file.Path> changeFiles(OSMCommandArgs args) throws IOException {
+		final List<java.nio.file.Path> files = new ArrayList<>();
+		Files.walkFileTree(
+			Paths.get(args.ingestDirectory), new SimpleFileVisitor<java.nio.file.Path>()
+			{
+				@Override public FileVisitResult visitFile( java.nio.file.Path file, BasicFileAttributes attrs ) {
+					if (OsmXmlChangeSink.isChangeFile(file.getFileName().toString())) {
+						files.add(file);
 					}
-					p.setTags(tags);
+					return FileVisitResult.CONTINUE;
 				}
+			});
+		Collections.sort(files);
+		return files;
+	}
 
-				if (nodes.hasDenseinfo()){
-					Osmformat.DenseInfo di = nodes.getDenseinfo();
-					lastTimestamp += di.getTimestamp(i);
-					lastChangeset += di.getChangeset(i);
-					lastUid += di.getUid(i);
-					lastSid += di.getUserSid(i);
+	private static void loadFiles(final OsmEntitySink sink, final OSMCommandArgs args) throws IOException {
+		if (args.wayLocations){
+			NodeLocationIndex index = new NodeLocationIndex(args.locationIndexHeapEntries, new File(args.locationIndexFile));
+			try {
+				LocationEmbeddingSink locationSink = new LocationEmbeddingSink(sink, index);
+				walkFiles(locationSink, args);
+				locationSink.logTotals();
+			}
+			finally {
+				index.close();
+			}
+		}
+		else {
+			walkFiles(sink, args);
+		}
+	}
 
-					p.setTimestamp(lastTimestamp);
-					p.setChangesetId(lastChangeset);
-					p.setUserId((long)lastUid);
-					p.setUserName(getStringById(lastSid));
-					if (di.getVisibleCount() > 0){
-						p.setVisible(di.getVisible(i));
+	private static void walkFiles(final OsmEntitySink sink, final OSMCommandArgs args) throws IOException {
+		Files.walkFileTree(
+			Paths.get(args.ingestDirectory), new SimpleFileVisitor<java.nio.file.Path>()
+			{
+				@Override public FileVisitResult visitFile( java.nio.file.Path file, BasicFileAttributes attrs )
+						throws IOException {
+					String name = file.getFileName().toString();
+					if (name.endsWith(args.extension)) {
+						loadFile(file, sink, args);
 					}
-
-
-				}
-
-				n.setCommon(p);
-
-				try {
-					nodeWriter.append(n);
-				}
-				catch (IOException e) {
-					LOGGER.error("Unable to write dense node", e);
+					else if (OsmXmlEntitySink.isXmlFile(name)) {
+						loadXmlFile(file, sink, args);
+					}
+					return FileVisitResult.CONTINUE;
 				}
+			});
+	}
 
-			}
+	/**
+	 * OSM XML is streamed entity by entity on the calling thread; --parserThreads decompress .osm.bz2 files
+	 */
+	private static void loadXmlFile( java.nio.file.Path file, OsmEntitySink sink, OSMCommandArgs args) throws IOException {
+		try {
+			OsmXmlEntitySink.read(file.toFile(), sink, args.parserThreads);
 		}
-		@Override
-		protected void parseNodes(List<Osmformat.Node> nodes) {
-			for (Osmformat.Node n : nodes) {
-				Node n2 = new Node();
-				Primitive p = getPrimitive(n.getInfo());
-				p.setId(n.getId());
-				p.setTags(getTags(n.getKeysList(), n.getValsList()));
-				n2.setCommon(p);
-				n2.setLatitude(parseLat(n.getLat()));
-				n2.setLongitude(parseLon(n.getLon()));
-				try {
-					nodeWriter.append(n2);
-				}
-				catch (IOException e) {
-					LOGGER.error("Unable to write node", e);
-				}
-			}
+		catch (OsmosisRuntimeException e) {
+			throw new IOException("Unable to process file: " + file.toString(), e);
 		}
-		@Override
-		protected void parseWays(List<Osmformat.Way> ways) {
-			for (Osmformat.Way w : ways) {
-				Way w2 = new Way();
-				Primitive p = getPrimitive(w.getInfo());
-				p.setId(w.getId());
-				p.setTags(getTags(w.getKeysList(), w.getValsList()));
-				w2.setCommon(p);
+	}
 
-				long lastRef = 0;
-				List<Long> nodes = new ArrayList<>(w.getRefsCount());
-				for (Long ref : w.getRefsList()) {
-					lastRef+= ref;
-					nodes.add(lastRef);
-				}
-				w2.setNodes(nodes);
+	private static void loadFile( java.nio.file.Path file, OsmEntitySink sink, OSMCommandArgs args) throws IOException {
 
-				try {
-					wayWriter.append(w2);
+		InputStream is = null;
+		PbfBlobSource blobs = null;
+			try {
+				if (args.mappedInput) {
+					blobs = new MappedPbfBlobReader(file.toFile());
+					new ParallelPbfProcessor(args.parserThreads, sink).process(blobs);
 				}
-				catch (IOException e) {
-					LOGGER.error("Unable to write way", e);
+				else if (args.parserThreads > 1) {
+					is = new FileInputStream(file.toFile());
+					new ParallelPbfProcessor(args.parserThreads, sink).process(is);
+				}
+				else {
+					is = new FileInputStream(file.toFile());
+					OsmAvroBinaryParser parser = new OsmAvroBinaryParser();
+					parser.setSink(sink);
+					new BlockInputStream(is, parser).process();
 				}
 			}
-		}
-		@Override
-		protected void parse(Osmformat.HeaderBlock header) {
-
-		}
-		public void complete() {
-			System.out.println("Complete!");
-		}
-
-
-
-		private Map<CharSequence, CharSequence> getTags(List<Integer> k, List<Integer> v){
-			Map<CharSequence, CharSequence> tags = new HashMap<CharSequence, CharSequence>(k.size());
-			for (int i = 0; i < k.size(); i++){
-				tags.put(getStringById(k.get(i)), getStringById(v.get(i)));
+			catch (OsmosisRuntimeException e) {
+				throw new IOException("Unable to process file: " + file.toString(), e);
 			}
-			return tags;
-		}
-
-
-		private Primitive getPrimitive(Osmformat.Info info){
-			Primitive p = new Primitive();
-			p.setVersion((long)info.getVersion());
-			p.setTimestamp(info.getTimestamp());
-			p.setUserId((long) info.getUid());
-			try {
-				p.setUserName(getStringById(info.getUid()));
-			} catch (Exception ex) {
-				LOGGER.warn("Error, input file doesn't contain a valid string table for user id: " + info.getUid());
-				p.setUserName(String.valueOf(info.getUid()));
+			finally {
+				IOUtils.closeQuietly(is);
+				IOUtils.closeQuietly(blobs);
 			}
-				p.setChangesetId(info.getChangeset());
-				p.setVisible(info.getVisible());
-			return p;
-		}
+
 	}
 }
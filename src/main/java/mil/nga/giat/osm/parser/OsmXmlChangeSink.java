@@ -0,0 +1,102 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.xml.v0_6.impl.OsmChangeHandler;
+
+/**
+ * Converts the create/modify/delete blocks of an osmChange document into Avro records for an
+ * OsmChangeSink, streaming like OsmXmlEntitySink
+ */
+public class OsmXmlChangeSink implements ChangeSink
+{
+	private static final String[] EXTENSIONS = {".osc", ".osc.gz", ".osc.bz2"};
+
+	private final OsmChangeSink sink;
+
+	public OsmXmlChangeSink(OsmChangeSink sink){
+		this.sink = sink;
+	}
+
+	/**
+	 * @return true for the osmChange file names read, optionally gzip or bzip2 compressed
+	 */
+	public static boolean isChangeFile(String name){
+		for (String extension : EXTENSIONS){
+			if (name.endsWith(extension)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void read(File file, OsmChangeSink sink, int threads) throws IOException {
+		OsmXmlChangeSink xmlSink = new OsmXmlChangeSink(sink);
+		try {
+			xmlSink.initialize(Collections.<String, Object> emptyMap());
+			OsmXmlEntitySink.parse(file, new OsmChangeHandler(xmlSink, true), threads);
+			xmlSink.complete();
+		}
+		finally {
+			xmlSink.release();
+		}
+	}
+
+	@Override
+	public void process(ChangeContainer change){
+		Entity entity = change.getEntityContainer().getEntity();
+		boolean delete = change.getAction() == ChangeAction.Delete;
+		try {
+			switch (entity.getType()){
+				case Node: {
+					if (delete){
+						sink.delete(OsmXmlEntitySink.toNode((org.openstreetmap.osmosis.core.domain.v0_6.Node) entity));
+					}
+					else {
+						sink.write(OsmXmlEntitySink.toNode((org.openstreetmap.osmosis.core.domain.v0_6.Node) entity));
+					}
+					break;
+				}
+				case Way: {
+					if (delete){
+						sink.delete(OsmXmlEntitySink.toWay((org.openstreetmap.osmosis.core.domain.v0_6.Way) entity));
+					}
+					else {
+						sink.write(OsmXmlEntitySink.toWay((org.openstreetmap.osmosis.core.domain.v0_6.Way) entity));
+					}
+					break;
+				}
+				case Relation: {
+					if (delete){
+						sink.delete(OsmXmlEntitySink.toRelation((org.openstreetmap.osmosis.core.domain.v0_6.Relation) entity));
+					}
+					else {
+						sink.write(OsmXmlEntitySink.toRelation((org.openstreetmap.osmosis.core.domain.v0_6.Relation) entity));
+					}
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to apply " + change.getAction() + " of " + entity.getType() + ": " + entity.getId(), e);
+		}
+	}
+
+	@Override
+	public void initialize(Map<String, Object> metaData) { /* unused */ }
+	@Override
+	public void complete() { /* unused */ }
+	@Override
+	public void release() { /* unused */ }
+}
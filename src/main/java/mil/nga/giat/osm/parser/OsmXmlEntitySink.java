@@ -0,0 +1,230 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.impl.OsmHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Converts the entities of an OSM XML document into the same Avro node/way/relation records
+ * OsmAvroBinaryParser produces, handing each to the OsmEntitySink as the reader reaches it. Nothing
+ * is kept between entities, unlike OsmXmlLoader, so memory use doesn't grow with the file.
+ */
+public class OsmXmlEntitySink implements Sink
+{
+	private static final String[] EXTENSIONS = {".osm", ".osm.gz", ".osm.bz2"};
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OsmEntitySink sink;
+
+	public OsmXmlEntitySink(OsmEntitySink sink){
+		this.sink = sink;
+	}
+
+	/**
+	 * @return true for the OSM XML file names read, optionally gzip or bzip2 compressed
+	 */
+	public static boolean isXmlFile(String name){
+		for (String extension : EXTENSIONS){
+			if (name.endsWith(extension)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static CompressionMethod getCompression(String name){
+		if (name.endsWith(".gz")){
+			return CompressionMethod.GZip;
+		}
+		if (name.endsWith(".bz2")){
+			return CompressionMethod.BZip2;
+		}
+		return CompressionMethod.None;
+	}
+
+	/**
+	 * Streams the file through the sink on the calling thread. bzip2 files are decompressed by
+	 * ParallelBzip2InputStream with the given number of threads, ahead of the parser.
+	 */
+	public static void read(File file, OsmEntitySink sink, int threads) throws IOException {
+		OsmXmlEntitySink xmlSink = new OsmXmlEntitySink(sink);
+		try {
+			xmlSink.initialize(Collections.<String, Object> emptyMap());
+			parse(file, new OsmHandler(xmlSink, true), threads);
+			xmlSink.complete();
+		}
+		finally {
+			xmlSink.release();
+		}
+	}
+
+	/**
+	 * SAX parses the file, decompressing it as its extension says
+	 */
+	static void parse(File file, DefaultHandler handler, int threads) throws IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			switch (getCompression(file.getName())){
+				case GZip: {
+					is = new GZIPInputStream(is, BUFFER_SIZE);
+					break;
+				}
+				case BZip2: {
+					is = new ParallelBzip2InputStream(is, threads);
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+			SAXParserFactory.newInstance().newSAXParser().parse(is, handler);
+		}
+		catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Unable to parse OSM XML file: " + file, e);
+		}
+		finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	@Override
+	public void process(EntityContainer entityContainer){
+		Entity entity = entityContainer.getEntity();
+		try {
+			switch (entity.getType()){
+				case Node: {
+					sink.write(toNode((org.openstreetmap.osmosis.core.domain.v0_6.Node) entity));
+					break;
+				}
+				case Way: {
+					sink.write(toWay((org.openstreetmap.osmosis.core.domain.v0_6.Way) entity));
+					break;
+				}
+				case Relation: {
+					sink.write(toRelation((org.openstreetmap.osmosis.core.domain.v0_6.Relation) entity));
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new OsmosisRuntimeException("Unable to write " + entity.getType() + ": " + entity.getId(), e);
+		}
+	}
+
+	static Node toNode(org.openstreetmap.osmosis.core.domain.v0_6.Node n){
+		Node n2 = new Node();
+		n2.setCommon(getPrimitive(n));
+		n2.setLatitude(n.getLatitude());
+		n2.setLongitude(n.getLongitude());
+		return n2;
+	}
+
+	static Way toWay(org.openstreetmap.osmosis.core.domain.v0_6.Way w){
+		Way w2 = new Way();
+		w2.setCommon(getPrimitive(w));
+		List<Long> nodes = new ArrayList<>(w.getWayNodes().size());
+		for (WayNode wn : w.getWayNodes()){
+			nodes.add(wn.getNodeId());
+		}
+		w2.setNodes(nodes);
+		return w2;
+	}
+
+	static Relation toRelation(org.openstreetmap.osmosis.core.domain.v0_6.Relation r){
+		Relation r2 = new Relation();
+		r2.setCommon(getPrimitive(r));
+		List<RelationMember> members = new ArrayList<>(r.getMembers().size());
+		for (org.openstreetmap.osmosis.core.domain.v0_6.RelationMember m : r.getMembers()){
+			RelationMember rm = new RelationMember();
+			rm.setMember(m.getMemberId());
+			rm.setRole(m.getMemberRole());
+			switch (m.getMemberType()){
+				case Node: {
+					rm.setMemberType(MemberType.NODE);
+					break;
+				}
+				case Way: {
+					rm.setMemberType(MemberType.WAY);
+					break;
+				}
+				case Relation: {
+					rm.setMemberType(MemberType.RELATION);
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+			members.add(rm);
+		}
+		r2.setMembers(members);
+		return r2;
+	}
+
+	//timestamps in seconds, matching the default PBF date granularity
+	private static Primitive getPrimitive(Entity e){
+		Primitive p = new Primitive();
+		p.setId(e.getId());
+		p.setVersion((long) e.getVersion());
+		p.setTimestamp(e.getTimestamp() == null ? 0L : e.getTimestamp().getTime() / 1000L);
+		p.setChangesetId(e.getChangesetId());
+		p.setVisible(true);
+		OsmUser user = e.getUser();
+		if (user != null && user != OsmUser.NONE){
+			p.setUserId((long) user.getId());
+			p.setUserName(user.getName());
+		}
+		p.setTags(getTags(e.getTags()));
+		return p;
+	}
+
+	private static Map<CharSequence, CharSequence> getTags(Collection<Tag> tags){
+		Map<CharSequence, CharSequence> map = new HashMap<CharSequence, CharSequence>(tags.size());
+		for (Tag tag : tags){
+			map.put(tag.getKey(), tag.getValue());
+		}
+		return map;
+	}
+
+	@Override
+	public void initialize(Map<String, Object> metaData) { /* unused */ }
+	@Override
+	public void complete() { /* unused */ }
+	@Override
+	public void release() { /* unused */ }
+}
@@ -20,6 +20,9 @@ import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 import org.openstreetmap.osmosis.xml.common.CompressionMethod;
 import org.openstreetmap.osmosis.xml.v0_6.XmlReader;
 
+/**
+ * Loads a whole OSM XML document into memory; ingest streams XML through OsmXmlEntitySink instead
+ */
 public class OsmXmlLoader implements Sink
 {
 
@@ -111,12 +114,7 @@ public class OsmXmlLoader implements Sink
 		OsmXmlLoader sink = new OsmXmlLoader();
 
 		// compression (if any)
-		CompressionMethod compression = CompressionMethod.None;
-		if (osmxml.getName().endsWith(".gz")) {
-			compression = CompressionMethod.GZip;
-		} else if (osmxml.getName().endsWith(".bz2")) {
-			compression = CompressionMethod.BZip2;
-		}
+		CompressionMethod compression = OsmXmlEntitySink.getCompression(osmxml.getName());
 
 		// read source file (into sink)
 		XmlReader reader = new XmlReader(osmxml, false, compression);
@@ -0,0 +1,408 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Decompresses a bzip2 stream with a pool of worker threads.
+ *
+ * bzip2 compresses each block independently, and every block starts with a 48 bit magic number at
+ * an arbitrary bit offset. A reader thread scans the compressed bits for the block and end of
+ * stream magics and cuts the input into blocks; each block is wrapped into a single block bzip2
+ * stream of its own (header, block, end of stream magic and the block's CRC as the stream CRC) and
+ * decompressed by a worker. The caller reads the decompressed blocks in file order, so the output
+ * is identical to a sequential decompression, concatenated streams (pbzip2 output) included.
+ *
+ * The magic can also occur by chance inside compressed data. The block before such a false boundary
+ * fails its CRC check, and is then retried merged with the segments that follow it.
+ */
+public class ParallelBzip2InputStream extends InputStream
+{
+	private static final long BLOCK_MAGIC = 0x314159265359L;
+	private static final long END_MAGIC = 0x177245385090L;
+	private static final long MAGIC_MASK = (1L << 48) - 1;
+	//largest block size, so any block fits the synthetic stream
+	private static final byte[] HEADER = {'B', 'Z', 'h', '9'};
+
+	//number of decompressed (or decompressing) blocks allowed to queue up per worker before the reader blocks
+	private static final int BLOCKS_PER_WORKER = 4;
+	//segments a failing block is merged with before it is reported as corrupt
+	private static final int MAX_MERGES = 4;
+	private static final int READ_SIZE = 64 * 1024;
+
+	private static final Segment END_OF_STREAM = new Segment(null, null);
+
+	private final InputStream in;
+	private final ExecutorService workers;
+	private final BlockingQueue<Segment> pending;
+	//anything that stopped the reader thread, rethrown to the caller after the blocks before it
+	private final AtomicReference<Throwable> readError = new AtomicReference<>();
+	private final Thread framer;
+
+	private byte[] current = new byte[0];
+	private int position = 0;
+	private boolean finished = false;
+
+	public ParallelBzip2InputStream(InputStream in, int threads) throws IOException {
+		this.in = in;
+		if (in.read() != 'B' || in.read() != 'Z' || in.read() != 'h'){
+			throw new IOException("Input is not a bzip2 stream");
+		}
+		int level = in.read();
+		if (level < '1' || level > '9'){
+			throw new IOException("Input is not a bzip2 stream");
+		}
+		threads = Math.max(1, threads);
+		workers = Executors.newFixedThreadPool(threads);
+		pending = new ArrayBlockingQueue<>(threads * BLOCKS_PER_WORKER);
+		framer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				//interrupted by close, with nobody left to take the end of stream
+				boolean closed = false;
+				try {
+					frame();
+				}
+				catch (InterruptedException e) {
+					closed = true;
+				}
+				catch (Throwable t) {
+					readError.set(t);
+				}
+				finally {
+					if (!closed){
+						try {
+							pending.put(END_OF_STREAM);
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}
+			}
+		}, "bzip2-block-reader");
+		framer.setDaemon(true);
+		framer.start();
+	}
+
+	/**
+	 * Cuts the compressed bits into segments at each magic number. Blocks are queued for decompression;
+	 * the segments starting at an end of stream magic (stream CRC, padding and the next stream's
+	 * header) are only kept in case the magic turns out to be false.
+	 */
+	private void frame() throws IOException, InterruptedException {
+		byte[] chunk = new byte[READ_SIZE];
+		byte[] buffer = new byte[READ_SIZE * 16];
+		int length = 0;
+		//bit offset of buffer[0], and of the start of the open segment (-1 before the first magic)
+		long base = 0;
+		long start = -1;
+		boolean block = false;
+		long read = 0;
+		long window = 0;
+
+		int n;
+		while ((n = in.read(chunk)) != -1){
+			for (int i = 0; i < n; i++){
+				if (length == buffer.length){
+					//keep the open segment, or enough bytes for a magic that is still being read
+					int keep = start >= 0 ? (int) ((start - base) >>> 3) : Math.max(0, length - 8);
+					System.arraycopy(buffer, keep, buffer, 0, length - keep);
+					length -= keep;
+					base += keep * 8L;
+					if (length == buffer.length){
+						byte[] grown = new byte[buffer.length * 2];
+						System.arraycopy(buffer, 0, grown, 0, length);
+						buffer = grown;
+					}
+				}
+				buffer[length++] = chunk[i];
+				window = (window << 8) | (chunk[i] & 0xff);
+				read++;
+
+				//k is the number of bits of this byte after the end of a candidate magic
+				for (int k = 7; k >= 0; k--){
+					long magic = (window >>> k) & MAGIC_MASK;
+					if (magic != BLOCK_MAGIC && magic != END_MAGIC){
+						continue;
+					}
+					long at = read * 8 - k - 48;
+					if (at < 0){
+						continue;
+					}
+					if (start >= 0){
+						emit(BitBuffer.copy(buffer, start - base, at - base), block);
+					}
+					start = at;
+					block = magic == BLOCK_MAGIC;
+				}
+			}
+		}
+		if (start >= 0){
+			emit(BitBuffer.copy(buffer, start - base, read * 8 - base), block);
+		}
+	}
+
+	void emit(final BitBuffer bits, boolean block) throws InterruptedException {
+		Future<byte[]> data = null;
+		if (block){
+			data = workers.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return decompress(bits);
+				}
+			});
+		}
+		pending.put(new Segment(bits, data));
+	}
+
+	/**
+	 * @param block the bits of one block, from its magic number on
+	 */
+	static byte[] decompress(BitBuffer block) throws IOException {
+		BitBuffer stream = new BitBuffer(block.bytes() + 16);
+		for (byte b : HEADER){
+			stream.append(b & 0xff, 8);
+		}
+		stream.append(block);
+		stream.append((int) (END_MAGIC >>> 24), 24);
+		stream.append((int) (END_MAGIC & 0xffffff), 24);
+		//combined CRC of a one block stream is the block CRC, which follows the block magic
+		stream.append(block.getInt(48), 32);
+
+		InputStream is = new BZip2CompressorInputStream(new ByteArrayInputStream(stream.data, 0, stream.bytes()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(block.bytes() * 4);
+		try {
+			IOUtils.copy(is, out);
+		}
+		finally {
+			is.close();
+		}
+		return out.toByteArray();
+	}
+
+	private boolean nextBlock() throws IOException {
+		while (!finished){
+			Segment segment = take();
+			if (segment == END_OF_STREAM){
+				finished = true;
+				Throwable error = readError.get();
+				if (error instanceof IOException){
+					throw (IOException) error;
+				}
+				if (error != null){
+					throw new IOException("Unable to read bzip2 blocks", error);
+				}
+				break;
+			}
+			if (segment.data == null){
+				continue;
+			}
+			try {
+				current = segment.data.get();
+			}
+			catch (ExecutionException e) {
+				current = merge(segment, e.getCause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while decompressing bzip2 blocks", e);
+			}
+			position = 0;
+			if (current.length > 0){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retries a block that failed to decompress joined with the segments after it, in case it was cut
+	 * at magic bits occurring inside the compressed data
+	 */
+	private byte[] merge(Segment segment, Throwable error) throws IOException {
+		BitBuffer merged = segment.bits;
+		for (int i = 0; i < MAX_MERGES; i++){
+			Segment next = take();
+			if (next == END_OF_STREAM){
+				finished = true;
+				break;
+			}
+			if (next.data != null){
+				next.data.cancel(true);
+			}
+			merged = merged.concat(next.bits);
+			try {
+				return decompress(merged);
+			}
+			catch (IOException | RuntimeException e) {
+				error = e;
+			}
+		}
+		throw new IOException("Unable to decompress bzip2 block", error);
+	}
+
+	private Segment take() throws IOException {
+		try {
+			return pending.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decompressing bzip2 blocks", e);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == current.length && !nextBlock()){
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0){
+			return 0;
+		}
+		if (position == current.length && !nextBlock()){
+			return -1;
+		}
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return current.length - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		finished = true;
+		framer.interrupt();
+		workers.shutdownNow();
+		in.close();
+	}
+
+	private static class Segment
+	{
+		private final BitBuffer bits;
+		//null for the segments following an end of stream magic
+		private final Future<byte[]> data;
+
+		private Segment(BitBuffer bits, Future<byte[]> data){
+			this.bits = bits;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Bits written most significant first
+	 */
+	static class BitBuffer
+	{
+		private byte[] data;
+		private long bits = 0;
+
+		BitBuffer(int capacity){
+			data = new byte[Math.max(1, capacity)];
+		}
+
+		/**
+		 * @return the bits from, inclusive, to to, exclusive, of the array
+		 */
+		static BitBuffer copy(byte[] src, long from, long to){
+			BitBuffer copy = new BitBuffer((int) ((to - from) >>> 3) + 1);
+			copy.append(src, from, to);
+			return copy;
+		}
+
+		int bytes(){
+			return (int) ((bits + 7) >>> 3);
+		}
+
+		long length(){
+			return bits;
+		}
+
+		/**
+		 * @return the bits from, inclusive, to to, exclusive
+		 */
+		BitBuffer slice(long from, long to){
+			return copy(data, from, to);
+		}
+
+		int getInt(long at){
+			int value = 0;
+			for (int i = 0; i < 32; i++){
+				value = (value << 1) | bit(data, at + i);
+			}
+			return value;
+		}
+
+		BitBuffer concat(BitBuffer other){
+			BitBuffer joined = new BitBuffer(bytes() + other.bytes());
+			joined.append(this);
+			joined.append(other);
+			return joined;
+		}
+
+		void append(BitBuffer other){
+			append(other.data, 0, other.bits);
+		}
+
+		void append(byte[] src, long from, long to){
+			long at = from;
+			while (at < to && (at & 7) != 0){
+				append(bit(src, at++), 1);
+			}
+			while (to - at >= 8){
+				append(src[(int) (at >>> 3)] & 0xff, 8);
+				at += 8;
+			}
+			while (at < to){
+				append(bit(src, at++), 1);
+			}
+		}
+
+		/**
+		 * Appends the low count bits of the value
+		 */
+		void append(int value, int count){
+			while (count > 0){
+				int index = (int) (bits >>> 3);
+				if (index == data.length){
+					byte[] grown = new byte[data.length * 2];
+					System.arraycopy(data, 0, grown, 0, data.length);
+					data = grown;
+				}
+				int free = 8 - (int) (bits & 7);
+				int take = Math.min(free, count);
+				int chunk = (value >>> (count - take)) & ((1 << take) - 1);
+				data[index] |= chunk << (free - take);
+				bits += take;
+				count -= take;
+			}
+		}
+
+		private static int bit(byte[] src, long at){
+			return (src[(int) (at >>> 3)] >>> (7 - (int) (at & 7))) & 1;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+
+/**
+ * Decodes a PBF stream with a pool of worker threads.
+ *
+ * A single reader thread only frames the raw blobs, the workers inflate and decode them into Avro
+ * records, and the calling thread hands the decoded blocks to the sink in file order - so the
+ * output is identical to the single threaded osmosis BlockInputStream path.
+ */
+public class ParallelPbfProcessor
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelPbfProcessor.class);
+
+	//number of decoded (or decoding) blocks allowed to queue up per worker before the reader blocks
+	private static final int BLOCKS_PER_WORKER = 4;
+
+	private static final Future<BufferedEntitySink> END_OF_STREAM = new FutureTask<>(new Callable<BufferedEntitySink>() {
+		@Override
+		public BufferedEntitySink call() {
+			return null;
+		}
+	});
+
+	private final int threads;
+	private final OsmEntitySink sink;
+
+	public ParallelPbfProcessor(int threads, OsmEntitySink sink){
+		this.threads = Math.max(1, threads);
+		this.sink = sink;
+	}
+
+	public void process(InputStream is) throws IOException {
+		process(new PbfBlobReader(is));
+	}
+
+	public void process(final PbfBlobSource reader) throws IOException {
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		final BlockingQueue<Future<BufferedEntitySink>> pending = new ArrayBlockingQueue<>(threads * BLOCKS_PER_WORKER);
+		final AtomicReference<IOException> readError = new AtomicReference<>();
+		final List<PbfBlobDecoder> decoders = Collections.synchronizedList(new ArrayList<PbfBlobDecoder>());
+		final ThreadLocal<Worker> workerState = new ThreadLocal<Worker>() {
+			@Override
+			protected Worker initialValue() {
+				Worker worker = new Worker();
+				decoders.add(worker.decoder);
+				return worker;
+			}
+		};
+
+		Thread framer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					PbfBlob blob;
+					while ((blob = reader.next()) != null){
+						pending.put(workers.submit(new DecodeTask(blob, workerState)));
+					}
+				}
+				catch (IOException e) {
+					readError.set(e);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				try {
+					pending.put(END_OF_STREAM);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "pbf-blob-reader");
+		framer.setDaemon(true);
+		framer.start();
+
+		long blocks = 0;
+		try {
+			Future<BufferedEntitySink> next;
+			while ((next = pending.take()) != END_OF_STREAM){
+				next.get().replay(sink);
+				blocks++;
+			}
+			if (readError.get() != null){
+				throw readError.get();
+			}
+			LOGGER.info("Decoded " + blocks + " PBF blocks with " + threads + " threads");
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Unable to decode PBF block", e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding PBF blocks", e);
+		}
+		finally {
+			framer.interrupt();
+			workers.shutdownNow();
+			try {
+				workers.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (decoders) {
+				for (PbfBlobDecoder decoder : decoders){
+					decoder.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Per thread decoding state; neither the parser's string table nor the decoder's scratch space can be shared
+	 */
+	private static class Worker
+	{
+		private final OsmAvroBinaryParser parser = new OsmAvroBinaryParser();
+		private final PbfBlobDecoder decoder = new PbfBlobDecoder();
+	}
+
+	private static class DecodeTask implements Callable<BufferedEntitySink>
+	{
+		private final PbfBlob blob;
+		private final ThreadLocal<Worker> workerState;
+
+		public DecodeTask(PbfBlob blob, ThreadLocal<Worker> workerState){
+			this.blob = blob;
+			this.workerState = workerState;
+		}
+
+		@Override
+		public BufferedEntitySink call() throws Exception {
+			BufferedEntitySink buffer = new BufferedEntitySink();
+			Worker worker = workerState.get();
+			switch (blob.getType()){
+				case PbfBlob.DATA_BLOCK: {
+					worker.parser.setSink(buffer);
+					worker.parser.parse(Osmformat.PrimitiveBlock.parseFrom(worker.decoder.decode(blob)));
+					break;
+				}
+				case PbfBlob.HEADER_BLOCK: {
+					worker.parser.parse(Osmformat.HeaderBlock.parseFrom(worker.decoder.decode(blob)));
+					break;
+				}
+				default: {
+					LOGGER.warn("Skipped block " + blob.getIndex() + " of type: " + blob.getType());
+				}
+			}
+			return buffer;
+		}
+	}
+
+	/**
+	 * Holds the records of one decoded block until it is that block's turn to be written
+	 */
+	private static class BufferedEntitySink implements OsmEntitySink
+	{
+		private final List<Node> nodes = new ArrayList<>();
+		private final List<Way> ways = new ArrayList<>();
+		private final List<Relation> relations = new ArrayList<>();
+
+		@Override
+		public void write(Node node) {
+			nodes.add(node);
+		}
+
+		@Override
+		public void write(Way way) {
+			ways.add(way);
+		}
+
+		@Override
+		public void write(Relation relation) {
+			relations.add(relation);
+		}
+
+		public void replay(OsmEntitySink target) throws IOException {
+			for (Node n : nodes){
+				target.write(n);
+			}
+			for (Way w : ways){
+				target.write(w);
+			}
+			for (Relation r : relations){
+				target.write(r);
+			}
+		}
+	}
+}
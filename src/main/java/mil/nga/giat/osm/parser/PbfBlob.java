@@ -0,0 +1,41 @@
+package mil.nga.giat.osm.parser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A framed but still encoded PBF blob: the serialized Fileformat.Blob message and the block type
+ * from its BlobHeader.
+ */
+public class PbfBlob
+{
+	public static final String HEADER_BLOCK = "OSMHeader";
+	public static final String DATA_BLOCK = "OSMData";
+
+	private final long index;
+	private final String type;
+	private final ByteBuffer data;
+
+	public PbfBlob(long index, String type, ByteBuffer data){
+		this.index = index;
+		this.type = type;
+		this.data = data;
+	}
+
+	/**
+	 * @return sequence number of this blob within the source that framed it, starting at 0
+	 */
+	public long getIndex() {
+		return index;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return a view of the serialized Fileformat.Blob message; may be backed by a memory mapped file
+	 */
+	public ByteBuffer getData() {
+		return data.duplicate();
+	}
+}
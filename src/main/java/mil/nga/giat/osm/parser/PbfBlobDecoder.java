@@ -0,0 +1,169 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * Unwraps the payload of a Fileformat.Blob message.
+ *
+ * The Blob message is walked directly on the blob's ByteBuffer instead of being parsed into a
+ * protobuf object, which would copy the compressed payload into a ByteString first. Compressed
+ * and inflated bytes go into scratch arrays that are reused across blobs, so an instance must not
+ * be shared between threads, and each decoded block must be parsed before the next decode call.
+ */
+public class PbfBlobDecoder
+{
+	//Fileformat.Blob field numbers
+	private static final int RAW = 1;
+	private static final int RAW_SIZE = 2;
+	private static final int ZLIB_DATA = 3;
+
+	private static final int WIRETYPE_VARINT = 0;
+	private static final int WIRETYPE_FIXED64 = 1;
+	private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+	private static final int WIRETYPE_FIXED32 = 5;
+
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed = new byte[0];
+	private byte[] raw = new byte[0];
+
+	/**
+	 * @return a stream over the uncompressed block, ready to be handed to Osmformat.*.parseFrom
+	 */
+	public CodedInputStream decode(PbfBlob blob) throws IOException {
+		ByteBuffer buffer = blob.getData();
+		ByteBuffer rawData = null;
+		ByteBuffer zlibData = null;
+		int rawSize = -1;
+
+		while (buffer.hasRemaining()){
+			int tag = (int) readVarint(buffer);
+			int field = tag >>> 3;
+			switch (tag & 0x7){
+				case WIRETYPE_VARINT: {
+					long value = readVarint(buffer);
+					if (field == RAW_SIZE){
+						rawSize = (int) value;
+					}
+					break;
+				}
+				case WIRETYPE_LENGTH_DELIMITED: {
+					int length = (int) readVarint(buffer);
+					if (length < 0 || length > buffer.remaining()){
+						throw new IOException("Truncated field " + field + " in PBF blob " + blob.getIndex());
+					}
+					ByteBuffer value = buffer.slice();
+					value.limit(length);
+					buffer.position(buffer.position() + length);
+					if (field == RAW){
+						rawData = value;
+					}
+					else if (field == ZLIB_DATA){
+						zlibData = value;
+					}
+					break;
+				}
+				case WIRETYPE_FIXED64: {
+					skip(buffer, 8, field, blob);
+					break;
+				}
+				case WIRETYPE_FIXED32: {
+					skip(buffer, 4, field, blob);
+					break;
+				}
+				default: {
+					throw new IOException("Unexpected wire type " + (tag & 0x7) + " in PBF blob " + blob.getIndex());
+				}
+			}
+		}
+
+		if (rawData != null){
+			if (rawData.hasArray()){
+				return CodedInputStream.newInstance(rawData.array(), rawData.arrayOffset() + rawData.position(), rawData.remaining());
+			}
+			int length = rawData.remaining();
+			raw = ensureCapacity(raw, length);
+			rawData.get(raw, 0, length);
+			return CodedInputStream.newInstance(raw, 0, length);
+		}
+
+		if (zlibData != null){
+			if (rawSize < 0 || rawSize > PbfBlobSource.MAX_BLOB_SIZE){
+				throw new IOException("Invalid raw size " + rawSize + " for PBF blob " + blob.getIndex());
+			}
+			int length = zlibData.remaining();
+			byte[] input;
+			int offset;
+			if (zlibData.hasArray()){
+				input = zlibData.array();
+				offset = zlibData.arrayOffset() + zlibData.position();
+			}
+			else {
+				//Inflater only accepts arrays, so mapped data is copied once into reused scratch space
+				compressed = ensureCapacity(compressed, length);
+				zlibData.get(compressed, 0, length);
+				input = compressed;
+				offset = 0;
+			}
+			raw = ensureCapacity(raw, rawSize);
+			inflater.reset();
+			inflater.setInput(input, offset, length);
+			try {
+				int inflated = 0;
+				while (inflated < rawSize && !inflater.finished()){
+					int count = inflater.inflate(raw, inflated, rawSize - inflated);
+					if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+						break;
+					}
+					inflated += count;
+				}
+				if (inflated != rawSize){
+					throw new IOException("PBF blob " + blob.getIndex() + " inflated to " + inflated + " bytes, expected " + rawSize);
+				}
+			}
+			catch (DataFormatException e) {
+				throw new IOException("Unable to inflate PBF blob " + blob.getIndex(), e);
+			}
+			return CodedInputStream.newInstance(raw, 0, rawSize);
+		}
+
+		throw new IOException("Unsupported compression for PBF blob " + blob.getIndex() + "; only raw and zlib are supported");
+	}
+
+	public void close(){
+		inflater.end();
+	}
+
+	private static byte[] ensureCapacity(byte[] array, int size){
+		if (array.length >= size){
+			return array;
+		}
+		return new byte[Math.max(size, array.length + (array.length >> 1))];
+	}
+
+	private static void skip(ByteBuffer buffer, int length, int field, PbfBlob blob) throws IOException {
+		if (buffer.remaining() < length){
+			throw new IOException("Truncated field " + field + " in PBF blob " + blob.getIndex());
+		}
+		buffer.position(buffer.position() + length);
+	}
+
+	private static long readVarint(ByteBuffer buffer) throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7){
+			if (!buffer.hasRemaining()){
+				throw new IOException("Truncated varint in PBF blob");
+			}
+			byte b = buffer.get();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0){
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint in PBF blob");
+	}
+}
@@ -0,0 +1,52 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+
+/**
+ * Frames PBF blobs from a stream, copying each one into its own array
+ */
+public class PbfBlobReader implements PbfBlobSource
+{
+	private final DataInputStream input;
+	private long index = 0;
+
+	public PbfBlobReader(InputStream input){
+		this.input = new DataInputStream(input);
+	}
+
+	@Override
+	public PbfBlob next() throws IOException {
+		int headerSize;
+		try {
+			headerSize = input.readInt();
+		}
+		catch (EOFException e) {
+			return null;
+		}
+		if (headerSize < 0 || headerSize > MAX_HEADER_SIZE){
+			throw new IOException("Invalid PBF blob header size: " + headerSize);
+		}
+		byte[] header = new byte[headerSize];
+		input.readFully(header);
+		Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+
+		if (blobHeader.getDatasize() < 0 || blobHeader.getDatasize() > MAX_BLOB_SIZE){
+			throw new IOException("Invalid PBF blob size: " + blobHeader.getDatasize());
+		}
+		byte[] blob = new byte[blobHeader.getDatasize()];
+		input.readFully(blob);
+		return new PbfBlob(index++, blobHeader.getType(), ByteBuffer.wrap(blob));
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOUtils.closeQuietly(input);
+	}
+}
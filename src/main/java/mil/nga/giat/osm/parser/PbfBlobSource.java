@@ -0,0 +1,20 @@
+package mil.nga.giat.osm.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Frames the raw (still compressed) blobs of a PBF file without decoding them.
+ * See http://wiki.openstreetmap.org/wiki/PBF_Format#File_format
+ */
+public interface PbfBlobSource extends Closeable
+{
+	//limits from the PBF specification
+	public static final int MAX_HEADER_SIZE = 64 * 1024;
+	public static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * @return the next blob in the file, or null at the end of the file
+	 */
+	public PbfBlob next() throws IOException;
+}
@@ -0,0 +1,71 @@
+package mil.nga.giat.osm.parser;
+
+import java.util.Arrays;
+
+import mil.nga.giat.osm.types.FixedPoint;
+
+/**
+ * Sparse store - parallel id/location arrays on the heap, 16 bytes a node, searched with a binary
+ * search. Ids must be added in ascending order, as they appear in sorted PBF and XML files.
+ */
+public class SortedNodeLocationStore
+		implements NodeLocationStore
+{
+	private final int maxEntries;
+	private long[] ids;
+	private long[] locations;
+	private int size = 0;
+
+	public SortedNodeLocationStore(int maxEntries){
+		this.maxEntries = Math.max(0, maxEntries);
+		ids = new long[Math.min(this.maxEntries, 1 << 16)];
+		locations = new long[ids.length];
+	}
+
+	/**
+	 * @return whether put would take this id - there is room, and it is larger than every id so far
+	 */
+	public boolean accepts(long id){
+		return size < maxEntries && (size == 0 || id > ids[size - 1]);
+	}
+
+	@Override
+	public void put(long id, long location){
+		if (!accepts(id)){
+			throw new IllegalArgumentException("Node " + id + " is out of order or over the " + maxEntries + " node limit");
+		}
+		if (size == ids.length){
+			int grown = (int) Math.min(maxEntries, Math.max(16L, ids.length * 2L));
+			ids = Arrays.copyOf(ids, grown);
+			locations = Arrays.copyOf(locations, grown);
+		}
+		ids[size] = id;
+		locations[size] = location;
+		size++;
+	}
+
+	@Override
+	public long get(long id){
+		int i = Arrays.binarySearch(ids, 0, size, id);
+		return i < 0 ? FixedPoint.NO_LOCATION : locations[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long idAt(int i){
+		return ids[i];
+	}
+
+	public long locationAt(int i){
+		return locations[i];
+	}
+
+	@Override
+	public void close(){
+		ids = new long[0];
+		locations = new long[0];
+		size = 0;
+	}
+}
@@ -0,0 +1,71 @@
+package mil.nga.giat.osm.types;
+
+import com.google.common.primitives.Longs;
+
+import mil.nga.giat.geowave.core.store.data.field.FieldReader;
+
+/**
+ * Degrees as 32 bit integers at 1e-7 precision - the resolution OSM itself stores coordinates with
+ */
+public class FixedPoint {
+
+	public static final double SCALE = 1e7;
+
+	//encoded length; lets readers tell a fixed-point column from an 8 byte double
+	public static final int BYTES = 4;
+
+	//a latitude of -2^31 is out of range, so no real packed location has this value
+	public static final long NO_LOCATION = Long.MIN_VALUE;
+
+	public static int toFixed(double degrees){
+		return (int) Math.round(degrees * SCALE);
+	}
+
+	public static double toDegrees(int fixed){
+		return fixed / SCALE;
+	}
+
+	/**
+	 * Fixed-point latitude and longitude in one long, latitude in the high half
+	 */
+	public static long pack(int latitude, int longitude){
+		return ((long) latitude << 32) | (longitude & 0xFFFFFFFFL);
+	}
+
+	public static int packedLatitude(long packed){
+		return (int) (packed >> 32);
+	}
+
+	public static int packedLongitude(long packed){
+		return (int) packed;
+	}
+
+	public static byte[] toBytes(int fixed){
+		return new byte[] {(byte) (fixed >>> 24), (byte) (fixed >>> 16), (byte) (fixed >>> 8), (byte) fixed};
+	}
+
+	/**
+	 * Reads a coordinate column that may hold either a fixed-point int or a double from the given reader
+	 */
+	public static double readCoordinate(byte[] value, FieldReader<Double> doubleReader){
+		if (value.length == BYTES){
+			return toDegrees(fromBytes(value, 0));
+		}
+		return doubleReader.readField(value);
+	}
+
+	/**
+	 * Reads a coordinate column that may hold either a fixed-point int or an 8 byte big endian double,
+	 * without boxing
+	 */
+	public static double readCoordinate(byte[] value){
+		if (value.length == BYTES){
+			return toDegrees(fromBytes(value, 0));
+		}
+		return Double.longBitsToDouble(Longs.fromByteArray(value));
+	}
+
+	public static int fromBytes(byte[] bytes, int offset){
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,62 @@
+package mil.nga.giat.osm.types;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes UTF-8 strings, handing back the previous instance when the same bytes were decoded into
+ * the same slot before. Tag keys, common tag values, roles and user names repeat across millions of
+ * rows, so most lookups allocate nothing. Direct mapped - a colliding string simply replaces the slot.
+ *
+ * Not thread safe.
+ */
+public class StringCache {
+
+	public static final int DEFAULT_SIZE = 4096;
+
+	//longer strings are rarely repeated; decode them without caching
+	private static final int MAX_CACHED_LENGTH = 64;
+
+	private final byte[][] bytes;
+	private final String[] strings;
+	private final int mask;
+
+	public StringCache(int size){
+		int capacity = Integer.highestOneBit(Math.max(16, size - 1) << 1);
+		bytes = new byte[capacity][];
+		strings = new String[capacity];
+		mask = capacity - 1;
+	}
+
+	public String get(byte[] data, int offset, int length){
+		if (length > MAX_CACHED_LENGTH){
+			return new String(data, offset, length, StandardCharsets.UTF_8);
+		}
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++){
+			hash = 31 * hash + data[i];
+		}
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		byte[] cached = bytes[slot];
+		if (cached != null && equals(cached, data, offset, length)){
+			return strings[slot];
+		}
+		cached = Arrays.copyOfRange(data, offset, offset + length);
+		String value = new String(cached, StandardCharsets.UTF_8);
+		bytes[slot] = cached;
+		strings[slot] = value;
+		return value;
+	}
+
+	private static boolean equals(byte[] cached, byte[] data, int offset, int length){
+		if (cached.length != length){
+			return false;
+		}
+		for (int i = 0; i < length; i++){
+			if (cached[i] != data[offset + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+}
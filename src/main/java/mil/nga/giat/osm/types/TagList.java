@@ -0,0 +1,65 @@
+package mil.nga.giat.osm.types;
+
+import java.util.Arrays;
+
+/**
+ * Tags of one entity as parallel key/value arrays. Cleared and refilled in place, so decoding a row
+ * does not allocate a map or map entries; lookups are a linear scan, which is faster than hashing
+ * for the handful of tags an entity carries.
+ */
+public class TagList {
+
+	private String[] keys = new String[16];
+	private String[] values = new String[16];
+	private int size = 0;
+
+	public void clear(){
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Adds the tag, replacing the value of an existing tag with the same key
+	 */
+	public void put(String key, String value){
+		for (int i = 0; i < size; i++){
+			if (keys[i].equals(key)){
+				values[i] = value;
+				return;
+			}
+		}
+		if (size == keys.length){
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+	}
+
+	public String get(String key){
+		for (int i = 0; i < size; i++){
+			if (keys[i].equals(key)){
+				return values[i];
+			}
+		}
+		return null;
+	}
+
+	public String getKey(int i){
+		return keys[i];
+	}
+
+	public String getValue(int i){
+		return values[i];
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+}
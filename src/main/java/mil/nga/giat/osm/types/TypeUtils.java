@@ -2,7 +2,10 @@ package mil.nga.giat.osm.types;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.avro.Schema;
@@ -13,6 +16,8 @@ import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
 
+import com.google.common.primitives.Longs;
+
 import mil.nga.giat.osm.types.generated.LongArray;
 
 /**
@@ -59,6 +64,101 @@ public class TypeUtils {
         return deserialize(avroObject, LongArray.getClassSchema(), LongArray.class);
     }
 
+    /**
+     * Varint count followed by zigzag varint deltas between consecutive ids - way refs are mostly
+     * sequential, so most entries take a byte or two instead of an absolute 8 byte long
+     */
+    public static byte[] serializeDeltaLongArray(final List<Long> ids) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(ids.size() * 2 + 5);
+        VarInt.writeUnsignedVarLong(ids.size(), os);
+        long last = 0;
+        for (long id : ids) {
+            VarInt.writeSignedVarLong(id - last, os);
+            last = id;
+        }
+        return os.toByteArray();
+    }
+
+    public static long[] deserializeDeltaLongArray(final byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        //every delta takes at least a byte
+        long[] ids = new long[readCount(in, 1, "ids")];
+        long last = 0;
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                last += VarInt.readSignedVarLong(in);
+                ids[i] = last;
+            }
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Delta encoded id array ends after " + data.length + " bytes", e);
+        }
+        return ids;
+    }
+
+    /**
+     * Reads the varint count of an array, checked against the bytes left so corrupt data can't size the allocation
+     */
+    private static int readCount(final ByteBuffer in, final int minBytesEach, final String what) throws IOException {
+        long count;
+        try {
+            count = VarInt.readUnsignedVarLong(in);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Missing count of " + what, e);
+        }
+        if (count < 0 || count > in.remaining() / minBytesEach) {
+            throw new IOException("Count of " + count + " " + what + " doesn't fit the " + in.remaining() + " bytes remaining");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Varint count followed by zigzag varint deltas of the fixed-point latitude and longitude of each
+     * packed location (see FixedPoint.pack) - consecutive way nodes are close, so deltas stay small
+     */
+    public static byte[] serializeLocations(final List<Long> locations) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(locations.size() * 4 + 5);
+        VarInt.writeUnsignedVarLong(locations.size(), os);
+        long lastLat = 0;
+        long lastLon = 0;
+        for (long packed : locations) {
+            long lat = FixedPoint.packedLatitude(packed);
+            long lon = FixedPoint.packedLongitude(packed);
+            VarInt.writeSignedVarLong(lat - lastLat, os);
+            VarInt.writeSignedVarLong(lon - lastLon, os);
+            lastLat = lat;
+            lastLon = lon;
+        }
+        return os.toByteArray();
+    }
+
+    public static long[] deserializeLocations(final byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        //a latitude and a longitude delta, a byte or more each
+        long[] locations = new long[readCount(in, 2, "locations")];
+        long lat = 0;
+        long lon = 0;
+        for (int i = 0; i < locations.length; i++) {
+            try {
+                lat += VarInt.readSignedVarLong(in);
+                lon += VarInt.readSignedVarLong(in);
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Location array ends after " + data.length + " bytes", e);
+            }
+            locations[i] = FixedPoint.pack((int) lat, (int) lon);
+        }
+        return locations;
+    }
+
+    /**
+     * Reads the avro LongArray REFERENCES column into a primitive array; REFERENCES_DELTA is read by deserializeDeltaLongArray
+     */
+    public static long[] deserializeReferences(final byte[] data) throws IOException {
+        return Longs.toArray(deserializeLongArray(data, null).getIds());
+    }
+
 
 /*
 
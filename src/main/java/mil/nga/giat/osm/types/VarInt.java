@@ -0,0 +1,67 @@
+package mil.nga.giat.osm.types;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protobuf style base 128 varints; signed values are zigzag encoded so small negatives stay small
+ */
+public class VarInt {
+
+	public static void writeUnsignedVarLong(long value, ByteArrayOutputStream out){
+		while ((value & ~0x7FL) != 0){
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	public static void writeSignedVarLong(long value, ByteArrayOutputStream out){
+		writeUnsignedVarLong(zigzag(value), out);
+	}
+
+	public static long readUnsignedVarLong(ByteBuffer in){
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7){
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	public static long readSignedVarLong(ByteBuffer in){
+		return unzigzag(readUnsignedVarLong(in));
+	}
+
+	public static long zigzag(long value){
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unzigzag(long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Length prefixed UTF-8 string
+	 */
+	public static void writeString(String value, ByteArrayOutputStream out){
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeUnsignedVarLong(bytes.length, out);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	public static String readString(ByteBuffer in){
+		int length = (int) readUnsignedVarLong(in);
+		if (length > in.remaining()){
+			throw new BufferUnderflowException();
+		}
+		String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+}
@@ -7,10 +7,11 @@ package mil.nga.giat.osm.types.generated;
 @SuppressWarnings("all")
 @org.apache.avro.specific.AvroGenerated
 public class Way extends org.apache.avro.specific.SpecificRecordBase implements org.apache.avro.specific.SpecificRecord {
-  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Way\",\"namespace\":\"mil.nga.giat.osm.types.generated\",\"fields\":[{\"name\":\"common\",\"type\":{\"type\":\"record\",\"name\":\"Primitive\",\"fields\":[{\"name\":\"id\",\"type\":\"long\"},{\"name\":\"version\",\"type\":\"long\"},{\"name\":\"timestamp\",\"type\":\"long\"},{\"name\":\"user_id\",\"type\":[\"null\",\"long\"]},{\"name\":\"user_name\",\"type\":[\"null\",\"string\"]},{\"name\":\"changeset_id\",\"type\":\"long\"},{\"name\":\"visible\",\"type\":\"boolean\",\"default\":\"true\"},{\"name\":\"tags\",\"type\":[\"null\",{\"type\":\"map\",\"values\":\"string\"}]}]}},{\"name\":\"nodes\",\"type\":[\"null\",{\"type\":\"array\",\"items\":\"long\"}]}]}");
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Way\",\"namespace\":\"mil.nga.giat.osm.types.generated\",\"fields\":[{\"name\":\"common\",\"type\":{\"type\":\"record\",\"name\":\"Primitive\",\"fields\":[{\"name\":\"id\",\"type\":\"long\"},{\"name\":\"version\",\"type\":\"long\"},{\"name\":\"timestamp\",\"type\":\"long\"},{\"name\":\"user_id\",\"type\":[\"null\",\"long\"]},{\"name\":\"user_name\",\"type\":[\"null\",\"string\"]},{\"name\":\"changeset_id\",\"type\":\"long\"},{\"name\":\"visible\",\"type\":\"boolean\",\"default\":\"true\"},{\"name\":\"tags\",\"type\":[\"null\",{\"type\":\"map\",\"values\":\"string\"}]}]}},{\"name\":\"nodes\",\"type\":[\"null\",{\"type\":\"array\",\"items\":\"long\"}]},{\"name\":\"locations\",\"type\":[\"null\",{\"type\":\"array\",\"items\":\"long\"}],\"default\":null}]}");
   public static org.apache.avro.Schema getClassSchema() { return SCHEMA$; }
   @Deprecated public mil.nga.giat.osm.types.generated.Primitive common;
   @Deprecated public java.util.List<java.lang.Long> nodes;
+  @Deprecated public java.util.List<java.lang.Long> locations;
 
   /**
    * Default constructor.  Note that this does not initialize fields
@@ -22,9 +23,10 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
   /**
    * All-args constructor.
    */
-  public Way(mil.nga.giat.osm.types.generated.Primitive common, java.util.List<java.lang.Long> nodes) {
+  public Way(mil.nga.giat.osm.types.generated.Primitive common, java.util.List<java.lang.Long> nodes, java.util.List<java.lang.Long> locations) {
     this.common = common;
     this.nodes = nodes;
+    this.locations = locations;
   }
 
   public org.apache.avro.Schema getSchema() { return SCHEMA$; }
@@ -33,6 +35,7 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
     switch (field$) {
     case 0: return common;
     case 1: return nodes;
+    case 2: return locations;
     default: throw new org.apache.avro.AvroRuntimeException("Bad index");
     }
   }
@@ -42,6 +45,7 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
     switch (field$) {
     case 0: common = (mil.nga.giat.osm.types.generated.Primitive)value$; break;
     case 1: nodes = (java.util.List<java.lang.Long>)value$; break;
+    case 2: locations = (java.util.List<java.lang.Long>)value$; break;
     default: throw new org.apache.avro.AvroRuntimeException("Bad index");
     }
   }
@@ -76,6 +80,21 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
     this.nodes = value;
   }
 
+  /**
+   * Gets the value of the 'locations' field.
+   */
+  public java.util.List<java.lang.Long> getLocations() {
+    return locations;
+  }
+
+  /**
+   * Sets the value of the 'locations' field.
+   * @param value the value to set.
+   */
+  public void setLocations(java.util.List<java.lang.Long> value) {
+    this.locations = value;
+  }
+
   /** Creates a new Way RecordBuilder */
   public static mil.nga.giat.osm.types.generated.Way.Builder newBuilder() {
     return new mil.nga.giat.osm.types.generated.Way.Builder();
@@ -99,6 +118,7 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
 
     private mil.nga.giat.osm.types.generated.Primitive common;
     private java.util.List<java.lang.Long> nodes;
+    private java.util.List<java.lang.Long> locations;
 
     /** Creates a new Builder */
     private Builder() {
@@ -116,6 +136,10 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
         this.nodes = data().deepCopy(fields()[1].schema(), other.nodes);
         fieldSetFlags()[1] = true;
       }
+      if (isValidValue(fields()[2], other.locations)) {
+        this.locations = data().deepCopy(fields()[2].schema(), other.locations);
+        fieldSetFlags()[2] = true;
+      }
     }
     
     /** Creates a Builder by copying an existing Way instance */
@@ -129,6 +153,10 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
         this.nodes = data().deepCopy(fields()[1].schema(), other.nodes);
         fieldSetFlags()[1] = true;
       }
+      if (isValidValue(fields()[2], other.locations)) {
+        this.locations = data().deepCopy(fields()[2].schema(), other.locations);
+        fieldSetFlags()[2] = true;
+      }
     }
 
     /** Gets the value of the 'common' field */
@@ -181,12 +209,38 @@ public class Way extends org.apache.avro.specific.SpecificRecordBase implements
       return this;
     }
 
+    /** Gets the value of the 'locations' field */
+    public java.util.List<java.lang.Long> getLocations() {
+      return locations;
+    }
+    
+    /** Sets the value of the 'locations' field */
+    public mil.nga.giat.osm.types.generated.Way.Builder setLocations(java.util.List<java.lang.Long> value) {
+      validate(fields()[2], value);
+      this.locations = value;
+      fieldSetFlags()[2] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'locations' field has been set */
+    public boolean hasLocations() {
+      return fieldSetFlags()[2];
+    }
+    
+    /** Clears the value of the 'locations' field */
+    public mil.nga.giat.osm.types.generated.Way.Builder clearLocations() {
+      locations = null;
+      fieldSetFlags()[2] = false;
+      return this;
+    }
+
     @Override
     public Way build() {
       try {
         Way record = new Way();
         record.common = fieldSetFlags()[0] ? this.common : (mil.nga.giat.osm.types.generated.Primitive) defaultValue(fields()[0]);
         record.nodes = fieldSetFlags()[1] ? this.nodes : (java.util.List<java.lang.Long>) defaultValue(fields()[1]);
+        record.locations = fieldSetFlags()[2] ? this.locations : (java.util.List<java.lang.Long>) defaultValue(fields()[2]);
         return record;
       } catch (Exception e) {
         throw new org.apache.avro.AvroRuntimeException(e);
@@ -0,0 +1,29 @@
+package mil.nga.giat.osm;
+
+import net.lingala.zip4j.core.ZipFile;
+
+import java.io.File;
+
+/**
+ * Test fixtures shared across packages
+ */
+public class TestData
+{
+
+	public static final String TEST_RESOURCE_DIR = new File("./src/test/data/").getAbsolutePath().toString();
+	public static final String TEST_DATA_ZIP_RESOURCE_PATH = TEST_RESOURCE_DIR + "/" + "andorra-latest.zip";
+	public static final String TEST_DATA_BASE_DIR = new File("./target/data/").getAbsoluteFile().toString();
+	public static final String TEST_DATA_PBF = TEST_DATA_BASE_DIR + "/" + "andorra-latest.osm.pbf";
+
+	/**
+	 * Extracts the zipped andorra PBF into target/data, once per JVM
+	 */
+	public static synchronized String getAndorraPbf()
+			throws Exception {
+		if (!new File(TEST_DATA_PBF).exists()){
+			ZipFile data = new ZipFile(new File(TEST_DATA_ZIP_RESOURCE_PATH));
+			data.extractAll(TEST_DATA_BASE_DIR);
+		}
+		return TEST_DATA_PBF;
+	}
+}
@@ -0,0 +1,192 @@
+package mil.nga.giat.osm.accumulo;
+
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AccumuloChangeSinkTest {
+
+	private static final String TABLE = "OSM";
+	private static final Authorizations AUTHS = new Authorizations("public", "private");
+
+	private Connector connector;
+	private final OsmMutationBuilder builder = new OsmMutationBuilder(new ColumnVisibility("public"));
+
+	@Before
+	public void setup() throws Exception {
+		connector = new MockInstance("changes").getConnector("root", new PasswordToken(""));
+		if (connector.tableOperations().exists(TABLE)){
+			connector.tableOperations().delete(TABLE);
+		}
+		connector.tableOperations().create(TABLE);
+		connector.securityOperations().changeUserAuthorizations("root", AUTHS);
+	}
+
+	private AccumuloChangeSink sink() throws Exception {
+		return sink(builder);
+	}
+
+	private AccumuloChangeSink sink(OsmMutationBuilder builder) throws Exception {
+		return new AccumuloChangeSink(
+				connector.createBatchWriter(TABLE, new BatchWriterConfig()),
+				connector.createBatchScanner(TABLE, AUTHS, 1),
+				builder,
+				10,
+				Schema.hasWayLocations(connector.tableOperations(), TABLE));
+	}
+
+	private static Node node(long id, long version, String... tags){
+		Primitive p = new Primitive();
+		p.setId(id);
+		p.setVersion(version);
+		p.setTimestamp(1L);
+		p.setChangesetId(1L);
+		Map<CharSequence, CharSequence> tagMap = new HashMap<>();
+		for (int i = 0; i < tags.length; i += 2){
+			tagMap.put(tags[i], tags[i + 1]);
+		}
+		p.setTags(tagMap);
+		Node n = new Node();
+		n.setCommon(p);
+		n.setLatitude(1.0);
+		n.setLongitude(2.0);
+		return n;
+	}
+
+	private static Way way(long id, long version){
+		Primitive p = new Primitive();
+		p.setId(id);
+		p.setVersion(version);
+		p.setTimestamp(1L);
+		p.setChangesetId(1L);
+		p.setTags(new HashMap<CharSequence, CharSequence>());
+		Way w = new Way();
+		w.setCommon(p);
+		w.setNodes(Arrays.asList(1L, 2L));
+		return w;
+	}
+
+	private void ingestWithLocations(Way way) throws Exception {
+		way.setLocations(Arrays.asList(FixedPoint.pack(10, 20), FixedPoint.pack(30, 40)));
+		BatchWriter writer = connector.createBatchWriter(TABLE, new BatchWriterConfig());
+		writer.addMutation(builder.getMutation(way));
+		writer.close();
+		Schema.markWayLocations(connector.tableOperations(), TABLE);
+	}
+
+	private Map<String, String> columns(long id) throws Exception {
+		Scanner scanner = connector.createScanner(TABLE, AUTHS);
+		scanner.setRange(new Range(new Text(Schema.getIdHash(id))));
+		Map<String, String> columns = new HashMap<>();
+		for (Map.Entry<Key, Value> kvp : scanner){
+			columns.put(kvp.getKey().getColumnQualifier().toString(), new String(kvp.getValue().get(), Schema.CHARSET));
+		}
+		return columns;
+	}
+
+	private int entries(long id) throws Exception {
+		Scanner scanner = connector.createScanner(TABLE, AUTHS);
+		scanner.setRange(new Range(new Text(Schema.getIdHash(id))));
+		int entries = 0;
+		for (Map.Entry<Key, Value> kvp : scanner){
+			entries++;
+		}
+		return entries;
+	}
+
+	@Test
+	public void testAppliesNewerVersionsOnly() throws Exception {
+		AccumuloChangeSink sink = sink();
+		sink.write(node(1, 1, "amenity", "school", "name", "a"));
+		sink.write(node(2, 2, "amenity", "cafe"));
+		sink.close();
+
+		sink = sink();
+		//name dropped in version 2
+		sink.write(node(1, 2, "amenity", "school"));
+		//older than the stored version
+		sink.write(node(2, 1, "amenity", "pub"));
+		sink.close();
+
+		Map<String, String> first = columns(1);
+		Assert.assertEquals("school", first.get("amenity"));
+		Assert.assertFalse(first.containsKey("name"));
+		Assert.assertEquals("cafe", columns(2).get("amenity"));
+
+		sink = sink();
+		sink.delete(node(1, 3));
+		sink.close();
+		Assert.assertTrue(columns(1).isEmpty());
+		Assert.assertFalse(columns(2).isEmpty());
+	}
+
+	@Test
+	public void testChangedVisibilityReplacesColumns() throws Exception {
+		AccumuloChangeSink sink = sink();
+		sink.write(node(1, 1, "amenity", "school"));
+		sink.close();
+		int stored = entries(1);
+
+		sink = sink(new OsmMutationBuilder(new ColumnVisibility("private")));
+		sink.write(node(1, 2, "amenity", "school"));
+		sink.close();
+		Assert.assertEquals(stored, entries(1));
+		Scanner scanner = connector.createScanner(TABLE, AUTHS);
+		scanner.setRange(new Range(new Text(Schema.getIdHash(1))));
+		for (Map.Entry<Key, Value> kvp : scanner){
+			Assert.assertEquals("private", kvp.getKey().getColumnVisibility().toString());
+		}
+	}
+
+	@Test
+	public void testWayChangesDropStoredLocations() throws Exception {
+		ingestWithLocations(way(5, 1));
+		Assert.assertTrue(columns(5).containsKey(new String(Schema.CQ.LOCATIONS, Schema.CHARSET)));
+
+		AccumuloChangeSink sink = sink();
+		sink.write(way(5, 2));
+		sink.close();
+		Assert.assertFalse(columns(5).containsKey(new String(Schema.CQ.LOCATIONS, Schema.CHARSET)));
+	}
+
+	@Test
+	public void testUnmarkedTablesTakeNodeChanges() throws Exception {
+		Assert.assertFalse(Schema.hasWayLocations(connector.tableOperations(), TABLE));
+		AccumuloChangeSink sink = sink();
+		sink.write(way(5, 1));
+		sink.write(node(1, 2));
+		sink.close();
+		Assert.assertFalse(columns(1).isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void testRefusesNodeChangesWithStoredLocations() throws Exception {
+		ingestWithLocations(way(5, 1));
+		AccumuloChangeSink sink = sink();
+		sink.write(node(1, 2));
+		sink.close();
+	}
+}
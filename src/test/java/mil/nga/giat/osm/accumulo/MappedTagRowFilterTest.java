@@ -0,0 +1,61 @@
+package mil.nga.giat.osm.accumulo;
+
+import mil.nga.giat.osm.accumulo.osmschema.ColumnFamily;
+import mil.nga.giat.osm.accumulo.osmschema.ColumnQualifier;
+import mil.nga.giat.osm.accumulo.osmschema.PackedRow;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.osmfeature.types.features.MappingIndex;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class MappedTagRowFilterTest {
+
+	private static void put(TreeMap<Key, Value> data, long id, byte[] cq, byte[] value){
+		data.put(new Key(Schema.getIdHash(id), ColumnFamily.NODE, cq, new byte[0], 0), new Value(value));
+	}
+
+	@Test
+	public void testDropsUnmatchedRows() throws Exception {
+		TreeMap<Key, Value> data = new TreeMap<>();
+		//untagged vertex
+		put(data, 1, ColumnQualifier.LATITUDE, "1".getBytes(Schema.CHARSET));
+		//tagged, but with nothing mapped
+		put(data, 2, ColumnQualifier.TAG_QUALIFIER("created_by"), "JOSM".getBytes(Schema.CHARSET));
+		put(data, 3, ColumnQualifier.TAG_QUALIFIER("amenity"), "school".getBytes(Schema.CHARSET));
+		Map<CharSequence, CharSequence> tags = new HashMap<>();
+		tags.put("building", "yes");
+		put(data, 4, ColumnQualifier.PACKED_TAGS, PackedRow.encodeTags(tags));
+
+		Map<String, String> options = new HashMap<>();
+		options.put(MappedTagRowFilter.TAG_OPTION_PREFIX + "amenity", "school\nuniversity");
+		options.put(MappedTagRowFilter.TAG_OPTION_PREFIX + "building", MappingIndex.WILDCARD_VALUE);
+
+		MappedTagRowFilter filter = new MappedTagRowFilter();
+		filter.init(new SortedMapIterator(data), options, null);
+		filter.seek(new Range(), new ArrayList<ByteSequence>(), false);
+
+		Set<Text> rows = new HashSet<>();
+		while (filter.hasTop()){
+			rows.add(filter.getTopKey().getRow());
+			filter.next();
+		}
+		List<Text> expected = new ArrayList<>();
+		expected.add(new Text(Schema.getIdHash(3)));
+		expected.add(new Text(Schema.getIdHash(4)));
+		Assert.assertEquals(new HashSet<>(expected), rows);
+	}
+}
@@ -0,0 +1,138 @@
+package mil.nga.giat.osm.accumulo.osmschema;
+
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.StringCache;
+import mil.nga.giat.osm.types.TagList;
+import mil.nga.giat.osm.types.TypeUtils;
+import mil.nga.giat.osm.types.generated.Primitive;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PackedRowTest {
+
+    @Test
+    public void testCoreRoundTrip() throws Exception {
+        Primitive p = new Primitive();
+        p.setId(-42L);
+        p.setVersion(3L);
+        p.setTimestamp(1420070400000L);
+        p.setChangesetId(27615324L);
+        p.setUserId(0L);
+        p.setUserName("マッパー");
+        p.setVisible(false);
+
+        PackedRow.Core core = PackedRow.decodeCore(PackedRow.encodeCore(p, 42.5063186, 1.5218355));
+        Assert.assertEquals(-42L, core.id);
+        Assert.assertEquals(3L, core.version);
+        Assert.assertEquals(1420070400000L, core.timestamp);
+        Assert.assertEquals(27615324L, core.changeset);
+        Assert.assertEquals(0L, core.userId);
+        Assert.assertEquals("マッパー", core.userName);
+        Assert.assertFalse(core.visible);
+        Assert.assertTrue(core.hasCoordinates);
+        Assert.assertEquals(42.5063186, FixedPoint.toDegrees(core.latitude), 1e-9);
+        Assert.assertEquals(1.5218355, FixedPoint.toDegrees(core.longitude), 1e-9);
+    }
+
+    @Test
+    public void testCoreWithoutCoordinates() throws Exception {
+        Primitive p = new Primitive();
+        p.setId(Long.MAX_VALUE);
+        p.setVersion(0L);
+        p.setTimestamp(0L);
+        p.setChangesetId(0L);
+        p.setUserId(0L);
+
+        PackedRow.Core core = PackedRow.decodeCore(PackedRow.encodeCore(p, null, null));
+        Assert.assertEquals(Long.MAX_VALUE, core.id);
+        Assert.assertEquals(0L, core.version);
+        Assert.assertNull(core.userName);
+        Assert.assertTrue(core.visible);
+        Assert.assertFalse(core.hasCoordinates);
+    }
+
+    @Test
+    public void testTagsRoundTrip() throws Exception {
+        Map<CharSequence, CharSequence> tags = new HashMap<>();
+        tags.put("highway", "residential");
+        tags.put("name", "Carrer de la Unió");
+        tags.put("empty", "");
+
+        Map<String, String> decoded = PackedRow.decodeTags(PackedRow.encodeTags(tags));
+        Assert.assertEquals(3, decoded.size());
+        Assert.assertEquals("residential", decoded.get("highway"));
+        Assert.assertEquals("Carrer de la Unió", decoded.get("name"));
+        Assert.assertEquals("", decoded.get("empty"));
+    }
+
+    @Test
+    public void testTagsIntoReusedList() throws Exception {
+        Map<CharSequence, CharSequence> tags = new HashMap<>();
+        tags.put("highway", "residential");
+        tags.put("name", "Carrer de la Unió");
+        byte[] packed = PackedRow.encodeTags(tags);
+
+        StringCache strings = new StringCache(64);
+        TagList list = new TagList();
+        PackedRow.decodeTags(packed, list, strings);
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("Carrer de la Unió", list.get("name"));
+        String highway = list.get("highway");
+
+        list.clear();
+        PackedRow.decodeTags(packed, list, strings);
+        Assert.assertEquals(2, list.size());
+        //repeated strings come back from the cache
+        Assert.assertSame(highway, list.get("highway"));
+    }
+
+    @Test
+    public void testDeltaReferencesRoundTrip() throws Exception {
+        long[] refs = new long[] {3361946340L, 3361946341L, 3361946342L, 26262962L, -5L, 3361946340L};
+        byte[] packed = TypeUtils.serializeDeltaLongArray(Arrays.asList(3361946340L, 3361946341L, 3361946342L, 26262962L, -5L, 3361946340L));
+        Assert.assertArrayEquals(refs, TypeUtils.deserializeDeltaLongArray(packed));
+        Assert.assertTrue(packed.length < refs.length * 8);
+        Assert.assertEquals(0, TypeUtils.deserializeDeltaLongArray(TypeUtils.serializeDeltaLongArray(Arrays.<Long>asList())).length);
+    }
+
+    @Test
+    public void testLocationsRoundTrip() throws Exception {
+        long[] locations = new long[] {
+                FixedPoint.pack(425063186, 15218355),
+                FixedPoint.pack(425063190, 15218301),
+                FixedPoint.pack(-900000000, -1800000000),
+                FixedPoint.pack(900000000, 1800000000)};
+        byte[] packed = TypeUtils.serializeLocations(Arrays.asList(locations[0], locations[1], locations[2], locations[3]));
+        Assert.assertArrayEquals(locations, TypeUtils.deserializeLocations(packed));
+        Assert.assertEquals(-900000000, FixedPoint.packedLatitude(locations[2]));
+        Assert.assertEquals(-1800000000, FixedPoint.packedLongitude(locations[2]));
+    }
+
+    @Test
+    public void testCorruptArraysAreRejected() throws Exception {
+        byte[] packed = TypeUtils.serializeDeltaLongArray(Arrays.asList(1L, 2L, 3L));
+        //a count far beyond the bytes that follow
+        byte[] huge = new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0x02};
+        for (byte[] corrupt : new byte[][] {huge, Arrays.copyOf(packed, packed.length - 1), new byte[0]}) {
+            try {
+                TypeUtils.deserializeDeltaLongArray(corrupt);
+                Assert.fail("corrupt id array accepted");
+            }
+            catch (IOException e) {
+                //expected
+            }
+            try {
+                TypeUtils.deserializeLocations(corrupt);
+                Assert.fail("corrupt location array accepted");
+            }
+            catch (IOException e) {
+                //expected
+            }
+        }
+    }
+}
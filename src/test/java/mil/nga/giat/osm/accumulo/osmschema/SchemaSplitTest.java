@@ -0,0 +1,77 @@
+package mil.nga.giat.osm.accumulo.osmschema;
+
+import org.apache.accumulo.core.client.admin.TableOperations;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class SchemaSplitTest {
+
+    @Test
+    public void testNoSplitsForOneTablet() throws Exception {
+        Assert.assertTrue(Schema.getSplitPoints(1).isEmpty());
+        Assert.assertTrue(Schema.getSplitPoints(0).isEmpty());
+    }
+
+    @Test
+    public void testSplitsAreEvenlySpaced() throws Exception {
+        SortedSet<Text> splits = Schema.getSplitPoints(4);
+        Assert.assertEquals(3, splits.size());
+        List<Text> ordered = new ArrayList<>(splits);
+        for (Text split : ordered) {
+            Assert.assertEquals(Schema.ID_HASH_LENGTH, split.getLength());
+        }
+        Assert.assertEquals(0x40, ordered.get(0).getBytes()[0] & 0xFF);
+        Assert.assertEquals(0x80, ordered.get(1).getBytes()[0] & 0xFF);
+        Assert.assertEquals(0xC0, ordered.get(2).getBytes()[0] & 0xFF);
+    }
+
+    @Test
+    public void testHashesSpreadOverTablets() throws Exception {
+        int tablets = 8;
+        List<Text> splits = new ArrayList<>(Schema.getSplitPoints(tablets));
+        int[] counts = new int[tablets];
+        for (long id = 0; id < 80000; id++) {
+            Text row = new Text(Schema.getIdHash(id));
+            int tablet = 0;
+            while (tablet < splits.size() && row.compareTo(splits.get(tablet)) >= 0) {
+                tablet++;
+            }
+            counts[tablet]++;
+        }
+        for (int count : counts) {
+            Assert.assertTrue(count > 9000 && count < 11000);
+        }
+    }
+
+    @Test
+    public void testTabletCount() throws Exception {
+        Assert.assertEquals(7, Schema.getTabletCount(7, 1000000000L, 1, 1L << 40));
+        //100 bytes an entity
+        Assert.assertEquals(10, Schema.getTabletCount(0, 1024 * 1024 / 10, 1, 1L << 40));
+        Assert.assertEquals(3, Schema.getTabletCount(0, 0, 1, 2 * 1024 * 1024 + 1));
+        Assert.assertEquals(0, Schema.getTabletCount(0, 0, 1, 0));
+    }
+
+    @Test
+    public void testPresplitOnlyNewTables() throws Exception {
+        TableOperations tableOps = new MockInstance("splits").getConnector("root", new PasswordToken("")).tableOperations();
+        tableOps.create("single");
+        Assert.assertFalse(Schema.presplit(tableOps, "single", 1));
+        Assert.assertTrue(tableOps.listSplits("single").isEmpty());
+
+        tableOps.create("split");
+        Assert.assertTrue(Schema.presplit(tableOps, "split", 4));
+        Assert.assertEquals(Schema.getSplitPoints(4), new TreeSet<>(tableOps.listSplits("split")));
+        //a later run keeps the existing splits
+        Assert.assertFalse(Schema.presplit(tableOps, "split", 8));
+        Assert.assertEquals(3, tableOps.listSplits("split").size());
+    }
+}
@@ -0,0 +1,317 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import mil.nga.giat.geowave.core.geotime.GeometryUtils;
+import mil.nga.giat.geowave.mapreduce.output.GeoWaveOutputKey;
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+import mil.nga.giat.osm.mapreduce.Ingest.OSMMapperCommandArgs;
+import mil.nga.giat.osm.types.FixedPoint;
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.ReduceContext;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class JoinReducerTest
+{
+	//the corners of a unit square, as lon, lat
+	private static final double[][] NODES = {{0, 0}, {0, 1}, {1, 1}, {1, 0}};
+	private static final long SQUARE = 10;
+	//runs through node 5, which isn't stored
+	private static final long BROKEN = 11;
+	private static final long MULTIPOLYGON = 100;
+
+	private final OsmMutationBuilder builder = new OsmMutationBuilder(new ColumnVisibility("public"));
+	private final Map<Long, Way> ways = new HashMap<>();
+
+	@Before
+	public void setup(){
+		ways.put(SQUARE, way(SQUARE, 1L, 2L, 3L, 4L, 1L));
+		ways.put(BROKEN, way(BROKEN, 1L, 2L, 5L, 1L));
+	}
+
+	private static Primitive primitive(long id, String... tags){
+		Primitive p = new Primitive();
+		p.setId(id);
+		p.setVersion(1L);
+		p.setTimestamp(1L);
+		p.setChangesetId(1L);
+		Map<CharSequence, CharSequence> tagMap = new HashMap<>();
+		for (int i = 0; i < tags.length; i += 2){
+			tagMap.put(tags[i], tags[i + 1]);
+		}
+		p.setTags(tagMap);
+		return p;
+	}
+
+	private static Way way(long id, Long... nodes){
+		Way w = new Way();
+		w.setCommon(primitive(id, "building", "yes"));
+		w.setNodes(Arrays.asList(nodes));
+		return w;
+	}
+
+	private static Relation multipolygon(){
+		Relation r = new Relation();
+		r.setCommon(primitive(MULTIPOLYGON, "type", "multipolygon", "building", "yes"));
+		RelationMember rm = new RelationMember();
+		rm.setMember(SQUARE);
+		rm.setMemberType(MemberType.WAY);
+		rm.setRole("outer");
+		r.setMembers(Arrays.asList(rm));
+		return r;
+	}
+
+	/**
+	 * The mutation as the WholeRowIterator row the join mapper reads
+	 */
+	private static JoinValue row(Mutation m) throws Exception {
+		TreeMap<Key, Value> columns = new TreeMap<>();
+		for (ColumnUpdate update : m.getUpdates()){
+			columns.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(), update.getColumnVisibility(), 0L), new Value(update.getValue()));
+		}
+		Value encoded = WholeRowIterator.encodeRow(new ArrayList<>(columns.keySet()), new ArrayList<>(columns.values()));
+		return JoinValue.row(new Key(new Text(m.getRow())), encoded);
+	}
+
+	/**
+	 * Hands every reducer call a context that records what is written
+	 */
+	private static class Collector implements InvocationHandler
+	{
+		private final Configuration conf = new Configuration(false);
+		private final Counters counters = new Counters();
+		private final TreeMap<JoinKey, List<Object>> written = new TreeMap<>();
+		//values written under other key types
+		private final List<Object> features = new ArrayList<>();
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args){
+			switch (method.getName()){
+				case "write": {
+					if (args[0] instanceof JoinKey){
+						add(written, (JoinKey) args[0], args[1]);
+					}
+					else {
+						features.add(args[1]);
+					}
+					return null;
+				}
+				case "getCounter": {
+					return args.length == 1 ? counters.findCounter((Enum<?>) args[0]) : counters.findCounter((String) args[0], (String) args[1]);
+				}
+				case "getConfiguration": {
+					return conf;
+				}
+				default: {
+					return null;
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		<KEYOUT, VALUEOUT> Reducer<JoinKey, JoinValue, KEYOUT, VALUEOUT>.Context context(){
+			ReduceContext<JoinKey, JoinValue, KEYOUT, VALUEOUT> reduceContext = (ReduceContext<JoinKey, JoinValue, KEYOUT, VALUEOUT>) Proxy.newProxyInstance(
+					ReduceContext.class.getClassLoader(),
+					new Class<?>[] {ReduceContext.class},
+					this);
+			return new WrappedReducer<JoinKey, JoinValue, KEYOUT, VALUEOUT>().getReducerContext(reduceContext);
+		}
+
+		long count(Enum<?> counter){
+			return counters.findCounter(counter).getValue();
+		}
+	}
+
+	private static <V> void add(Map<JoinKey, List<V>> groups, JoinKey key, V value){
+		List<V> group = groups.get(key);
+		if (group == null){
+			group = new ArrayList<>();
+			groups.put(key, group);
+		}
+		group.add(value);
+	}
+
+	/**
+	 * The node join shuffle: node locations and the way references to them, keyed by node
+	 */
+	private TreeMap<JoinKey, List<JoinValue>> nodeJoinInput(){
+		TreeMap<JoinKey, List<JoinValue>> input = new TreeMap<>();
+		for (Way way : ways.values()){
+			for (int i = 0; i < way.getNodes().size(); i++){
+				add(input, new JoinKey(SimpleFeatureGenerator.OSMType.NODE, way.getNodes().get(i)), JoinValue.wayReference(way.getCommon().getId(), i));
+			}
+		}
+		for (int i = 0; i < NODES.length; i++){
+			add(input, new JoinKey(SimpleFeatureGenerator.OSMType.NODE, i + 1), JoinValue.coordinate(FixedPoint.toFixed(NODES[i][1]), FixedPoint.toFixed(NODES[i][0])));
+		}
+		return input;
+	}
+
+	/**
+	 * The way join shuffle: the node join output plus the rows and memberships the mapper writes directly
+	 */
+	private TreeMap<JoinKey, List<JoinValue>> wayJoinInput(Map<JoinKey, List<Object>> nodeJoined) throws Exception {
+		TreeMap<JoinKey, List<JoinValue>> input = new TreeMap<>();
+		for (Map.Entry<JoinKey, List<Object>> kvp : nodeJoined.entrySet()){
+			for (Object value : kvp.getValue()){
+				add(input, kvp.getKey(), (JoinValue) value);
+			}
+		}
+		for (Way way : ways.values()){
+			add(input, new JoinKey(SimpleFeatureGenerator.OSMType.WAY, way.getCommon().getId()), row(builder.getMutation(way)));
+		}
+		add(input, new JoinKey(SimpleFeatureGenerator.OSMType.WAY, SQUARE), JoinValue.memberOf(MULTIPOLYGON));
+		add(input, new JoinKey(SimpleFeatureGenerator.OSMType.RELATION, MULTIPOLYGON), row(builder.getMutation(multipolygon())));
+		return input;
+	}
+
+	private static Collector runNodeJoin(TreeMap<JoinKey, List<JoinValue>> input) throws Exception {
+		Collector collector = new Collector();
+		Reducer<JoinKey, JoinValue, JoinKey, JoinValue>.Context context = collector.context();
+		NodeJoinReducer reducer = new NodeJoinReducer();
+		for (Map.Entry<JoinKey, List<JoinValue>> kvp : input.entrySet()){
+			reducer.reduce(kvp.getKey(), kvp.getValue(), context);
+		}
+		return collector;
+	}
+
+	private static Collector runWayJoin(TreeMap<JoinKey, List<JoinValue>> input) throws Exception {
+		Collector collector = new Collector();
+		Reducer<JoinKey, JoinValue, JoinKey, JoinValue>.Context context = collector.context();
+		WayJoinReducer reducer = new WayJoinReducer();
+		for (Map.Entry<JoinKey, List<JoinValue>> kvp : input.entrySet()){
+			reducer.reduce(kvp.getKey(), kvp.getValue(), context);
+		}
+		return collector;
+	}
+
+	private static JoinValue geometry(List<Object> values){
+		for (Object value : values){
+			if (((JoinValue) value).getKind() == JoinValue.Kind.WAY_GEOMETRY){
+				return (JoinValue) value;
+			}
+		}
+		return null;
+	}
+
+	private static Polygon square(){
+		Coordinate[] ring = new Coordinate[NODES.length + 1];
+		for (int i = 0; i < NODES.length; i++){
+			ring[i] = new Coordinate(NODES[i][0], NODES[i][1]);
+		}
+		ring[NODES.length] = ring[0];
+		return GeometryUtils.GEOMETRY_FACTORY.createPolygon(ring);
+	}
+
+	@Test
+	public void testNodeJoinKeysLocationsByWay() throws Exception {
+		Collector nodeJoin = runNodeJoin(nodeJoinInput());
+		Assert.assertEquals(1, nodeJoin.count(NodeJoinReducer.JoinCounters.MISSING_NODES));
+
+		List<Object> square = nodeJoin.written.get(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, SQUARE));
+		Assert.assertEquals(5, square.size());
+		for (Object value : square){
+			JoinValue c = (JoinValue) value;
+			Assert.assertEquals(JoinValue.Kind.WAY_COORDINATE, c.getKind());
+			int node = (int) (ways.get(SQUARE).getNodes().get(c.getPosition()) - 1);
+			Assert.assertEquals(FixedPoint.toFixed(NODES[node][1]), c.getLatitude());
+			Assert.assertEquals(FixedPoint.toFixed(NODES[node][0]), c.getLongitude());
+		}
+		//every reference but the one to node 5
+		Assert.assertEquals(3, nodeJoin.written.get(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, BROKEN)).size());
+	}
+
+	@Test
+	public void testWayJoinOrdersGeometries() throws Exception {
+		Collector wayJoin = runWayJoin(wayJoinInput(runNodeJoin(nodeJoinInput()).written));
+
+		JoinValue square = geometry(wayJoin.written.get(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, SQUARE)));
+		Assert.assertNotNull(square);
+		Assert.assertArrayEquals(new long[] {1, 2, 3, 4, 1}, square.getReferences());
+		for (int i = 0; i < square.getReferences().length; i++){
+			int node = (int) square.getReferences()[i] - 1;
+			Assert.assertEquals(FixedPoint.toFixed(NODES[node][1]), square.getLatitudes()[i]);
+			Assert.assertEquals(FixedPoint.toFixed(NODES[node][0]), square.getLongitudes()[i]);
+		}
+
+		JoinValue broken = geometry(wayJoin.written.get(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, BROKEN)));
+		Assert.assertNotNull(broken);
+		Assert.assertEquals(JoinValue.MISSING, broken.getLatitudes()[2]);
+		Assert.assertEquals(JoinValue.MISSING, broken.getLongitudes()[2]);
+		Assert.assertNotEquals(JoinValue.MISSING, broken.getLatitudes()[1]);
+
+		//the member way's geometry goes to its relation too, next to the relation row
+		List<Object> relation = wayJoin.written.get(new JoinKey(SimpleFeatureGenerator.OSMType.RELATION, MULTIPOLYGON));
+		Assert.assertEquals(2, relation.size());
+		Assert.assertArrayEquals(square.getReferences(), geometry(relation).getReferences());
+		Assert.assertEquals(0, wayJoin.count(NodeJoinReducer.JoinCounters.MISSING_WAY_ROWS));
+	}
+
+	@Test
+	public void testWayJoinCountsMissingRows() throws Exception {
+		TreeMap<JoinKey, List<JoinValue>> input = new TreeMap<>();
+		add(input, new JoinKey(SimpleFeatureGenerator.OSMType.WAY, 12), JoinValue.wayCoordinate(0, 1, 1));
+		Collector wayJoin = runWayJoin(input);
+		Assert.assertEquals(1, wayJoin.count(NodeJoinReducer.JoinCounters.MISSING_WAY_ROWS));
+		Assert.assertTrue(wayJoin.written.isEmpty());
+	}
+
+	@Test
+	public void testFeaturesFromJoinedGeometries() throws Exception {
+		Collector wayJoin = runWayJoin(wayJoinInput(runNodeJoin(nodeJoinInput()).written));
+
+		Collector featureJoin = new Collector();
+		featureJoin.conf.set("osm_mapping", new OSMMapperCommandArgs().getMappingContents());
+		Reducer<JoinKey, JoinValue, GeoWaveOutputKey, Object>.Context context = featureJoin.context();
+		FeatureJoinReducer reducer = new FeatureJoinReducer();
+		reducer.setup(context);
+		for (Map.Entry<JoinKey, List<Object>> kvp : wayJoin.written.entrySet()){
+			List<JoinValue> values = new ArrayList<>();
+			for (Object value : kvp.getValue()){
+				values.add((JoinValue) value);
+			}
+			reducer.reduce(kvp.getKey(), values, context);
+		}
+
+		Map<Long, Geometry> buildings = new HashMap<>();
+		for (Object value : featureJoin.features){
+			SimpleFeature feature = (SimpleFeature) value;
+			Assert.assertEquals("buildings", feature.getType().getTypeName());
+			buildings.put((Long) feature.getAttribute("osm_id"), (Geometry) feature.getAttribute("geometry"));
+		}
+		//the way through the missing node has no feature
+		Assert.assertEquals(2, buildings.size());
+		Assert.assertTrue(square().equalsTopo(buildings.get(SQUARE)));
+		Assert.assertTrue(square().equalsTopo(buildings.get(MULTIPOLYGON)));
+	}
+}
@@ -0,0 +1,53 @@
+package mil.nga.giat.osm.mapreduce.Convert.Join;
+
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class JoinValueTest {
+
+    private static <T extends Writable> T roundTrip(Writable in, T out) throws IOException {
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        in.write(buffer);
+        DataInputBuffer input = new DataInputBuffer();
+        input.reset(buffer.getData(), buffer.getLength());
+        out.readFields(input);
+        return out;
+    }
+
+    @Test
+    public void testWayGeometryRoundTrip() throws Exception {
+        JoinValue v = roundTrip(JoinValue.wayGeometry(7L, new long[]{1L, 2L, 1L}, new int[]{10, JoinValue.MISSING, 10}, new int[]{-20, JoinValue.MISSING, -20}), new JoinValue());
+        Assert.assertEquals(JoinValue.Kind.WAY_GEOMETRY, v.getKind());
+        Assert.assertEquals(7L, v.getId());
+        Assert.assertArrayEquals(new long[]{1L, 2L, 1L}, v.getReferences());
+        Assert.assertArrayEquals(new int[]{10, JoinValue.MISSING, 10}, v.getLatitudes());
+        Assert.assertArrayEquals(new int[]{-20, JoinValue.MISSING, -20}, v.getLongitudes());
+    }
+
+    @Test
+    public void testRowRoundTrip() throws Exception {
+        JoinValue v = roundTrip(JoinValue.row(new Key("row", "n", "-id"), new Value("value".getBytes())), new JoinValue());
+        Assert.assertEquals(JoinValue.Kind.ROW, v.getKind());
+        Assert.assertEquals(new Key("row", "n", "-id"), v.getRowKey());
+        Assert.assertArrayEquals("value".getBytes(), v.getRowValue().get());
+    }
+
+    @Test
+    public void testKeysOfDifferentTypesDiffer() throws Exception {
+        JoinKey node = new JoinKey(SimpleFeatureGenerator.OSMType.NODE, 5L);
+        JoinKey way = roundTrip(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, 5L), new JoinKey());
+        Assert.assertEquals(SimpleFeatureGenerator.OSMType.WAY, way.getType());
+        Assert.assertEquals(5L, way.getId());
+        Assert.assertNotEquals(node, way);
+        Assert.assertTrue(node.compareTo(way) < 0);
+        Assert.assertTrue(new JoinKey(SimpleFeatureGenerator.OSMType.WAY, -1L).compareTo(way) < 0);
+    }
+}
@@ -0,0 +1,165 @@
+package mil.nga.giat.osm.mapreduce.Convert;
+
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class OSMUnionInputFormatTest
+{
+	private static final String INSTANCE = "unions";
+	private static final String TABLE = "OSM";
+	private static final Authorizations AUTHS = new Authorizations("public");
+	private static final int NODES = 50;
+
+	//row -> node id, in row order
+	private final TreeMap<Text, Long> rows = new TreeMap<>();
+
+	@Before
+	public void setup() throws Exception {
+		Connector connector = new MockInstance(INSTANCE).getConnector("root", new PasswordToken(""));
+		if (connector.tableOperations().exists(TABLE)){
+			connector.tableOperations().delete(TABLE);
+		}
+		connector.tableOperations().create(TABLE);
+		connector.securityOperations().changeUserAuthorizations("root", AUTHS);
+
+		OsmMutationBuilder builder = new OsmMutationBuilder(new ColumnVisibility("public"));
+		BatchWriter writer = connector.createBatchWriter(TABLE, new BatchWriterConfig());
+		for (long id = 1; id <= NODES; id++){
+			Primitive p = new Primitive();
+			p.setId(id);
+			p.setVersion(1L);
+			p.setTimestamp(1L);
+			p.setChangesetId(1L);
+			Map<CharSequence, CharSequence> tags = new HashMap<>();
+			tags.put("ref", Long.toString(id));
+			p.setTags(tags);
+			Node n = new Node();
+			n.setCommon(p);
+			n.setLatitude(id / 10.0);
+			n.setLongitude(-id / 10.0);
+			writer.addMutation(builder.getMutation(n));
+			rows.put(new Text(Schema.getIdHash(id)), id);
+		}
+		writer.close();
+	}
+
+	private Job job(int poolSize, Range... ranges) throws Exception {
+		Job job = Job.getInstance();
+		OSMUnionInputFormat.setMockInstance(job, INSTANCE);
+		OSMUnionInputFormat.setConnectorInfo(job, "root", new PasswordToken(""));
+		OSMUnionInputFormat.setInputTableName(job, TABLE);
+		OSMUnionInputFormat.setScanAuthorizations(job, AUTHS);
+		if (ranges.length > 0){
+			OSMUnionInputFormat.setRanges(job, Arrays.asList(ranges));
+		}
+		OSMUnionInputFormat.setPoolSize(job, poolSize);
+		return job;
+	}
+
+	/**
+	 * Reads every split, checking each value against the row it was read from
+	 */
+	private List<Long> read(Job job, List<InputSplit> splits) throws Exception {
+		OSMUnionInputFormat format = new OSMUnionInputFormat();
+		List<Long> ids = new ArrayList<>();
+		for (InputSplit split : splits){
+			TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+			RecordReader<Text, SimpleFeatureGenerator.OSMUnion> reader = format.createRecordReader(split, context);
+			try {
+				reader.initialize(split, context);
+				while (reader.nextKeyValue()){
+					SimpleFeatureGenerator.OSMUnion union = reader.getCurrentValue();
+					Long id = rows.get(reader.getCurrentKey());
+					Assert.assertNotNull(id);
+					Assert.assertEquals(SimpleFeatureGenerator.OSMType.NODE, union.OsmType);
+					Assert.assertEquals(id.longValue(), union.Id);
+					Assert.assertEquals(Long.toString(id), union.tags.get("ref"));
+					Assert.assertEquals(1, union.tags.size());
+					Assert.assertTrue(union.hasCoordinates());
+					Assert.assertEquals(id / 10.0, union.Lattitude, 1e-7);
+					Assert.assertEquals(-id / 10.0, union.Longitude, 1e-7);
+					ids.add(id);
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return ids;
+	}
+
+	@Test
+	public void testReadsOneUnionPerRow() throws Exception {
+		Job job = job(1);
+		List<InputSplit> splits = new OSMUnionInputFormat().getSplits(job);
+		Assert.assertEquals(1, splits.size());
+		Assert.assertEquals(new ArrayList<>(rows.values()), read(job, splits));
+	}
+
+	@Test
+	public void testSplitsCoverEveryRowOnce() throws Exception {
+		Text middle = new ArrayList<>(rows.keySet()).get(NODES / 2);
+		Job job = job(1, new Range(null, true, middle, false), new Range(middle, true, null, false));
+		List<InputSplit> splits = new OSMUnionInputFormat().getSplits(job);
+		Assert.assertEquals(2, splits.size());
+
+		List<Long> ids = read(job, splits);
+		Assert.assertEquals(NODES, ids.size());
+		Set<Long> unique = new HashSet<>(ids);
+		Assert.assertEquals(new HashSet<>(rows.values()), unique);
+	}
+
+	@Test
+	public void testValuesComeFromThePool() throws Exception {
+		Job job = job(2);
+		List<InputSplit> splits = new OSMUnionInputFormat().getSplits(job);
+		TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		RecordReader<Text, SimpleFeatureGenerator.OSMUnion> reader = new OSMUnionInputFormat().createRecordReader(splits.get(0), context);
+		try {
+			reader.initialize(splits.get(0), context);
+			Assert.assertTrue(reader.nextKeyValue());
+			SimpleFeatureGenerator.OSMUnion first = reader.getCurrentValue();
+			long firstId = first.Id;
+			Assert.assertTrue(reader.nextKeyValue());
+			SimpleFeatureGenerator.OSMUnion second = reader.getCurrentValue();
+			Assert.assertNotSame(first, second);
+			//the held value is untouched until its turn comes round again
+			Assert.assertEquals(firstId, first.Id);
+			Assert.assertTrue(reader.nextKeyValue());
+			Assert.assertSame(first, reader.getCurrentValue());
+			Assert.assertNotEquals(firstId, first.Id);
+		}
+		finally {
+			reader.close();
+		}
+	}
+}
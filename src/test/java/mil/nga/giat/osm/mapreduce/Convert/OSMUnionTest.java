@@ -0,0 +1,199 @@
+package mil.nga.giat.osm.mapreduce.Convert;
+
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator.OSMUnion;
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator.RelationSet;
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class OSMUnionTest
+{
+	//more than ten, so the member columns sort out of index order
+	private static final int MEMBERS = 12;
+
+	private static OsmMutationBuilder builder(int schemaVersion){
+		return new OsmMutationBuilder(new ColumnVisibility("public"), schemaVersion, false);
+	}
+
+	private static Primitive primitive(long id, String... tags){
+		Primitive p = new Primitive();
+		p.setId(id);
+		p.setVersion(3L);
+		p.setTimestamp(1400000000L);
+		p.setChangesetId(55L);
+		p.setUserId(7L);
+		p.setUserName("mapper");
+		p.setVisible(true);
+		Map<CharSequence, CharSequence> tagMap = new HashMap<>();
+		for (int i = 0; i < tags.length; i += 2){
+			tagMap.put(tags[i], tags[i + 1]);
+		}
+		p.setTags(tagMap);
+		return p;
+	}
+
+	private static Node node(){
+		Node n = new Node();
+		n.setCommon(primitive(1, "amenity", "school"));
+		n.setLatitude(42.5);
+		n.setLongitude(-1.25);
+		return n;
+	}
+
+	private static Way way(){
+		Way w = new Way();
+		w.setCommon(primitive(2, "highway", "path"));
+		w.setNodes(Arrays.asList(5L, 6L, 7L));
+		return w;
+	}
+
+	private static Relation relation(){
+		Relation r = new Relation();
+		r.setCommon(primitive(3, "type", "route"));
+		List<RelationMember> members = new ArrayList<>();
+		for (int i = 0; i < MEMBERS; i++){
+			RelationMember rm = new RelationMember();
+			rm.setMember(100L + i);
+			rm.setRole("role" + i);
+			rm.setMemberType(MemberType.values()[i % 3]);
+			members.add(rm);
+		}
+		r.setMembers(members);
+		return r;
+	}
+
+	/**
+	 * Feeds the mutation's columns to the union in the order a scan returns them
+	 */
+	private static OSMUnion decode(OSMUnion union, Mutation m){
+		TreeMap<Key, Value> row = new TreeMap<>();
+		for (ColumnUpdate update : m.getUpdates()){
+			row.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(), update.getColumnVisibility(), 0L), new Value(update.getValue()));
+		}
+		for (Map.Entry<Key, Value> kvp : row.entrySet()){
+			union.add(kvp.getKey(), kvp.getValue());
+		}
+		return union;
+	}
+
+	private static void assertCommon(OSMUnion union, long id){
+		Assert.assertTrue(union.hasId());
+		Assert.assertEquals(id, union.Id);
+		Assert.assertEquals(3L, union.Version);
+		Assert.assertEquals(1400000000L, union.Timestamp);
+		Assert.assertEquals(55L, union.Changeset);
+		Assert.assertEquals(7L, union.UserId);
+		Assert.assertEquals("mapper", union.UserName);
+		Assert.assertTrue(union.Visible);
+	}
+
+	private static void assertNode(OSMUnion union){
+		Assert.assertEquals(SimpleFeatureGenerator.OSMType.NODE, union.OsmType);
+		assertCommon(union, 1);
+		Assert.assertTrue(union.hasCoordinates());
+		Assert.assertEquals(42.5, union.Lattitude, 1e-7);
+		Assert.assertEquals(-1.25, union.Longitude, 1e-7);
+		Assert.assertEquals(1, union.tags.size());
+		Assert.assertEquals("school", union.tags.get("amenity"));
+		Assert.assertNull(union.Nodes);
+		Assert.assertTrue(union.relationSets.isEmpty());
+	}
+
+	private static void assertWay(OSMUnion union){
+		Assert.assertEquals(SimpleFeatureGenerator.OSMType.WAY, union.OsmType);
+		assertCommon(union, 2);
+		Assert.assertFalse(union.hasCoordinates());
+		Assert.assertArrayEquals(new long[] {5, 6, 7}, union.Nodes);
+		Assert.assertEquals(1, union.tags.size());
+		Assert.assertEquals("path", union.tags.get("highway"));
+		Assert.assertTrue(union.relationSets.isEmpty());
+	}
+
+	private static void assertRelation(OSMUnion union){
+		Assert.assertEquals(SimpleFeatureGenerator.OSMType.RELATION, union.OsmType);
+		assertCommon(union, 3);
+		Assert.assertFalse(union.hasCoordinates());
+		Assert.assertEquals("route", union.tags.get("type"));
+		Assert.assertEquals(1, union.tags.size());
+		Assert.assertEquals(MEMBERS, union.relationSets.size());
+		for (int i = 0; i < MEMBERS; i++){
+			RelationSet set = union.relationSets.get(i);
+			Assert.assertEquals(Long.valueOf(100L + i), set.MemId);
+			Assert.assertEquals("role" + i, set.RoleId);
+			Assert.assertEquals(MemberType.values()[i % 3], set.MemType);
+		}
+	}
+
+	private static void testRoundTrip(int schemaVersion){
+		OsmMutationBuilder builder = builder(schemaVersion);
+		OSMUnion union = new OSMUnion();
+		assertNode(decode(union, builder.getMutation(node())));
+		//one instance reused, as the input formats do
+		union.reset();
+		assertRelation(decode(union, builder.getMutation(relation())));
+		union.reset();
+		assertWay(decode(union, builder.getMutation(way())));
+		union.reset();
+		assertNode(decode(union, builder.getMutation(node())));
+	}
+
+	@Test
+	public void testColumnsRoundTrip(){
+		testRoundTrip(Schema.VERSION_COLUMNS);
+	}
+
+	@Test
+	public void testPackedRoundTrip(){
+		testRoundTrip(Schema.VERSION_PACKED);
+	}
+
+	@Test
+	public void testResetClearsEverything(){
+		OSMUnion union = decode(new OSMUnion(), builder(Schema.VERSION_COLUMNS).getMutation(relation()));
+		union.reset();
+		Assert.assertFalse(union.hasId());
+		Assert.assertFalse(union.hasCoordinates());
+		Assert.assertEquals(SimpleFeatureGenerator.OSMType.UNSET, union.OsmType);
+		Assert.assertEquals(0L, union.Version);
+		Assert.assertNull(union.UserName);
+		Assert.assertTrue(union.tags.isEmpty());
+		Assert.assertTrue(union.relationSets.isEmpty());
+	}
+
+	@Test
+	public void testPartialRows(){
+		OSMUnion union = new OSMUnion();
+		byte[] row = Schema.getIdHash(9L);
+		union.add(new Key(row, Schema.CF.NODE, "name".getBytes(Schema.CHARSET), new byte[0], 0L), new Value("x".getBytes(Schema.CHARSET)));
+		Assert.assertFalse(union.hasId());
+		Assert.assertEquals("x", union.tags.get("name"));
+
+		//one coordinate isn't a location
+		Mutation m = builder(Schema.VERSION_COLUMNS).getMutation(node());
+		for (ColumnUpdate update : m.getUpdates()){
+			if (Arrays.equals(update.getColumnQualifier(), Schema.CQ.LATITUDE)){
+				union.add(new Key(row, update.getColumnFamily(), update.getColumnQualifier(), update.getColumnVisibility(), 0L), new Value(update.getValue()));
+			}
+		}
+		Assert.assertFalse(union.hasCoordinates());
+	}
+}
@@ -0,0 +1,77 @@
+package mil.nga.giat.osm.mapreduce.Convert.OsmProvider;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MultipolygonBuilderTest
+{
+
+	private static final Coordinate[] NODES = new Coordinate[] {
+			null,
+			new Coordinate(0, 0),
+			new Coordinate(10, 0),
+			new Coordinate(10, 10),
+			new Coordinate(0, 10),
+			new Coordinate(20, 20)};
+
+	private static Coordinate[] coordinates(long[] refs){
+		Coordinate[] coords = new Coordinate[refs.length];
+		for (int i = 0; i < refs.length; i++){
+			coords[i] = NODES[(int) refs[i]];
+		}
+		return coords;
+	}
+
+	private static LinearRing square(double min, double max){
+		List<long[]> refs = new ArrayList<>();
+		List<Coordinate[]> coords = new ArrayList<>();
+		refs.add(new long[] {1, 2, 3, 4, 1});
+		coords.add(new Coordinate[] {
+				new Coordinate(min, min),
+				new Coordinate(max, min),
+				new Coordinate(max, max),
+				new Coordinate(min, max),
+				new Coordinate(min, min)});
+		return new MultipolygonBuilder().buildRings(refs, coords).get(0);
+	}
+
+	@Test
+	public void testStitchesSplitRing(){
+		//square split over three ways, the middle one drawn backwards
+		List<long[]> refs = Arrays.asList(new long[] {1, 2, 3}, new long[] {4, 3}, new long[] {4, 1}, new long[] {2, 5});
+		List<Coordinate[]> coords = new ArrayList<>();
+		for (long[] r : refs){
+			coords.add(coordinates(r));
+		}
+
+		MultipolygonBuilder builder = new MultipolygonBuilder();
+		List<LinearRing> rings = builder.buildRings(refs, coords);
+		Assert.assertEquals(1, rings.size());
+		Assert.assertEquals(5, rings.get(0).getNumPoints());
+		Assert.assertEquals(100, rings.get(0).getFactory().createPolygon(rings.get(0), null).getArea(), 1e-9);
+		//the dangling 2-5 way can't be closed
+		Assert.assertEquals(1, builder.getUnclosed());
+	}
+
+	@Test
+	public void testHolesGoToSmallestShell(){
+		LinearRing land = square(0, 100);
+		LinearRing lake = square(10, 90);
+		LinearRing island = square(20, 80);
+		LinearRing pond = square(30, 70);
+
+		List<Polygon> polygons = MultipolygonBuilder.buildPolygons(Arrays.asList(land, island), Arrays.asList(lake, pond));
+		Assert.assertEquals(2, polygons.size());
+		Assert.assertEquals(1, polygons.get(0).getNumInteriorRing());
+		Assert.assertEquals(lake, polygons.get(0).getInteriorRingN(0));
+		Assert.assertEquals(1, polygons.get(1).getNumInteriorRing());
+		Assert.assertEquals(pond, polygons.get(1).getInteriorRingN(0));
+	}
+}
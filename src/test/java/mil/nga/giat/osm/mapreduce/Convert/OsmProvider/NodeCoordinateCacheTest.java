@@ -0,0 +1,54 @@
+package mil.nga.giat.osm.mapreduce.Convert.OsmProvider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NodeCoordinateCacheTest {
+
+    @Test
+    public void testPackRoundTrip() {
+        long packed = NodeCoordinateCache.pack(-900000000, 1799999999);
+        Assert.assertEquals(-900000000, NodeCoordinateCache.latitude(packed));
+        Assert.assertEquals(1799999999, NodeCoordinateCache.longitude(packed));
+        Assert.assertNotEquals(NodeCoordinateCache.MISSING, packed);
+    }
+
+    @Test
+    public void testClockEviction() {
+        NodeCoordinateCache cache = new NodeCoordinateCache(3);
+        cache.put(1, NodeCoordinateCache.pack(1, 1));
+        cache.put(2, NodeCoordinateCache.pack(2, 2));
+        cache.put(3, NodeCoordinateCache.pack(3, 3));
+
+        //1 gets a second chance, 2 is the first unreferenced entry the hand reaches
+        Assert.assertEquals(NodeCoordinateCache.pack(1, 1), cache.get(1));
+        cache.put(4, NodeCoordinateCache.pack(4, 4));
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(NodeCoordinateCache.MISSING, cache.get(2));
+        Assert.assertEquals(NodeCoordinateCache.pack(1, 1), cache.get(1));
+        Assert.assertEquals(NodeCoordinateCache.pack(3, 3), cache.get(3));
+        Assert.assertEquals(NodeCoordinateCache.pack(4, 4), cache.get(4));
+        Assert.assertEquals(4, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testChurnKeepsLookupsConsistent() {
+        NodeCoordinateCache cache = new NodeCoordinateCache(64);
+        for (long id = 0; id < 10000; id++) {
+            cache.put(id, NodeCoordinateCache.pack((int) id, (int) -id));
+            Assert.assertEquals(NodeCoordinateCache.pack((int) id, (int) -id), cache.get(id));
+        }
+        int present = 0;
+        for (long id = 0; id < 10000; id++) {
+            long packed = cache.get(id);
+            if (packed != NodeCoordinateCache.MISSING) {
+                Assert.assertEquals((int) id, NodeCoordinateCache.latitude(packed));
+                present++;
+            }
+        }
+        Assert.assertEquals(64, present);
+    }
+}
@@ -0,0 +1,430 @@
+package mil.nga.giat.osm.mapreduce.Convert.OsmProvider;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import mil.nga.giat.geowave.core.geotime.GeometryUtils;
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.mapreduce.Convert.SimpleFeatureGenerator;
+import mil.nga.giat.osm.mapreduce.Ingest.OSMMapperCommandArgs;
+import mil.nga.giat.osm.osmfeature.types.features.FeatureDefinition;
+import mil.nga.giat.osm.osmfeature.types.features.FeatureType;
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class OsmProviderTest
+{
+	private static final String TABLE = "OSM";
+	private static final Authorizations AUTHS = new Authorizations("public");
+	//way i runs through nodes 2i+1, 2i+2 and 2i+3, so consecutive ways join end to end
+	private static final int WAYS = 20;
+	private static final long WAY_BASE = 1000;
+	//routes over the first and second half of the ways, a superroute of both and a route master above it
+	private static final long FIRST_HALF = 2001;
+	private static final long SECOND_HALF = 2002;
+	private static final long SUPERROUTE = 3001;
+	private static final long ROUTE_MASTER = 4001;
+	//members of each other
+	private static final long CYCLE_A = 5001;
+	private static final long CYCLE_B = 5002;
+
+	private Connector connector;
+	private final OsmMutationBuilder columns = new OsmMutationBuilder(new ColumnVisibility("public"), Schema.VERSION_COLUMNS, false);
+	private final OsmMutationBuilder packed = new OsmMutationBuilder(new ColumnVisibility("public"), Schema.VERSION_PACKED, false);
+
+	@Before
+	public void setup() throws Exception {
+		connector = new MockInstance("provider").getConnector("root", new PasswordToken(""));
+		if (connector.tableOperations().exists(TABLE)){
+			connector.tableOperations().delete(TABLE);
+		}
+		connector.tableOperations().create(TABLE);
+		connector.securityOperations().changeUserAuthorizations("root", AUTHS);
+
+		BatchWriter writer = connector.createBatchWriter(TABLE, new BatchWriterConfig());
+		for (long id = 1; id <= 2 * WAYS + 1; id++){
+			Node n = new Node();
+			n.setCommon(primitive(id));
+			n.setLongitude(lon(id));
+			n.setLatitude(lat(id));
+			//both layouts in one table
+			writer.addMutation(id % 2 == 0 ? packed.getMutation(n) : columns.getMutation(n));
+		}
+		for (int i = 0; i < WAYS; i++){
+			Way w = new Way();
+			w.setCommon(primitive(WAY_BASE + i));
+			w.setNodes(wayNodes(i));
+			writer.addMutation(i % 2 == 0 ? columns.getMutation(w) : packed.getMutation(w));
+		}
+		Object[] firstHalf = new Object[WAYS];
+		Object[] secondHalf = new Object[WAYS];
+		for (int i = 0; i < WAYS / 2; i++){
+			firstHalf[2 * i] = MemberType.WAY;
+			firstHalf[2 * i + 1] = WAY_BASE + i;
+			secondHalf[2 * i] = MemberType.WAY;
+			secondHalf[2 * i + 1] = WAY_BASE + WAYS / 2 + i;
+		}
+		writer.addMutation(columns.getMutation(relation(FIRST_HALF, "route", firstHalf)));
+		writer.addMutation(packed.getMutation(relation(SECOND_HALF, "route", secondHalf)));
+		writer.addMutation(columns.getMutation(relation(SUPERROUTE, "superroute", MemberType.RELATION, FIRST_HALF, MemberType.RELATION, SECOND_HALF)));
+		writer.addMutation(columns.getMutation(relation(CYCLE_A, "route", MemberType.WAY, WAY_BASE, MemberType.RELATION, CYCLE_B)));
+		writer.addMutation(columns.getMutation(relation(CYCLE_B, "route", MemberType.WAY, WAY_BASE + 1, MemberType.RELATION, CYCLE_A)));
+		writer.close();
+	}
+
+	private static Primitive primitive(long id){
+		Primitive p = new Primitive();
+		p.setId(id);
+		p.setVersion(1L);
+		p.setTimestamp(1L);
+		p.setChangesetId(1L);
+		p.setTags(new HashMap<CharSequence, CharSequence>());
+		return p;
+	}
+
+	private static Relation relation(long id, String type, Object... members){
+		Relation r = new Relation();
+		r.setCommon(primitive(id));
+		r.getCommon().getTags().put("type", type);
+		List<RelationMember> list = new ArrayList<>();
+		for (int i = 0; i < members.length; i += 2){
+			RelationMember rm = new RelationMember();
+			rm.setMemberType((MemberType) members[i]);
+			rm.setMember((Long) members[i + 1]);
+			rm.setRole("");
+			list.add(rm);
+		}
+		r.setMembers(list);
+		return r;
+	}
+
+	private static double lon(long id){
+		return id * 0.1;
+	}
+
+	private static double lat(long id){
+		//zig zag, so merged lines keep every point
+		return (id % 2) * 1.0;
+	}
+
+	private static List<Long> wayNodes(int way){
+		List<Long> nodes = new ArrayList<>();
+		for (long id = 2 * way + 1; id <= 2 * way + 3; id++){
+			nodes.add(id);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Hands out the entries of each scan in a shuffled order, as a batch scanner with several query
+	 * threads may, and records the column family of every scan
+	 */
+	private static class ShuffledScanner implements InvocationHandler
+	{
+		private final BatchScanner scanner;
+		private final Random random = new Random(11);
+		final List<String> scans = new ArrayList<>();
+		private String family = null;
+
+		ShuffledScanner(BatchScanner scanner){
+			this.scanner = scanner;
+		}
+
+		BatchScanner proxy(){
+			return (BatchScanner) Proxy.newProxyInstance(BatchScanner.class.getClassLoader(), new Class<?>[] {BatchScanner.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()){
+				case "iterator": {
+					List<Map.Entry<Key, Value>> entries = new ArrayList<>();
+					for (Map.Entry<Key, Value> entry : scanner){
+						entries.add(new AbstractMap.SimpleImmutableEntry<>(new Key(entry.getKey()), new Value(entry.getValue())));
+					}
+					Collections.shuffle(entries, random);
+					scans.add(family);
+					return entries.iterator();
+				}
+				case "clearColumns": {
+					family = null;
+					break;
+				}
+				case "fetchColumnFamily":
+				case "fetchColumn": {
+					family = args[0].toString();
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+			try {
+				return method.invoke(scanner, args);
+			}
+			catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private ShuffledScanner scanner() throws Exception {
+		return new ShuffledScanner(connector.createBatchScanner(TABLE, AUTHS, 4));
+	}
+
+	private static int count(List<String> scans, String family){
+		return Collections.frequency(scans, family);
+	}
+
+	private static OSMMapperCommandArgs args(int nodeCacheSize, int relationCacheSize){
+		OSMMapperCommandArgs args = new OSMMapperCommandArgs();
+		args.nodeCacheSize = nodeCacheSize;
+		args.relationCacheSize = relationCacheSize;
+		return args;
+	}
+
+	private static FeatureDefinition lineFeature(){
+		FeatureDefinition fd = new FeatureDefinition();
+		fd.Type = FeatureType.LineString;
+		return fd;
+	}
+
+	private static SimpleFeatureGenerator.OSMUnion wayUnion(int way){
+		SimpleFeatureGenerator.OSMUnion union = new SimpleFeatureGenerator.OSMUnion();
+		union.OsmType = SimpleFeatureGenerator.OSMType.WAY;
+		union.Id = WAY_BASE + way;
+		List<Long> nodes = wayNodes(way);
+		union.Nodes = new long[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++){
+			union.Nodes[i] = nodes.get(i);
+		}
+		return union;
+	}
+
+	private static void assertWayLine(int way, Geometry geometry){
+		Assert.assertTrue(geometry instanceof LineString);
+		Coordinate[] coords = geometry.getCoordinates();
+		List<Long> nodes = wayNodes(way);
+		Assert.assertEquals(nodes.size(), coords.length);
+		for (int i = 0; i < coords.length; i++){
+			Assert.assertEquals(lon(nodes.get(i)), coords[i].x, 1e-7);
+			Assert.assertEquals(lat(nodes.get(i)), coords[i].y, 1e-7);
+		}
+	}
+
+	/**
+	 * The line through nodes from..to
+	 */
+	private static LineString line(long from, long to){
+		Coordinate[] coords = new Coordinate[(int) (to - from + 1)];
+		for (long id = from; id <= to; id++){
+			coords[(int) (id - from)] = new Coordinate(lon(id), lat(id));
+		}
+		return GeometryUtils.GEOMETRY_FACTORY.createLineString(coords);
+	}
+
+	/**
+	 * Merged lines may run either way
+	 */
+	private static void assertLine(LineString expected, Geometry geometry){
+		Assert.assertTrue(geometry instanceof LineString);
+		Assert.assertTrue(geometry.equalsExact(expected, 1e-7) || geometry.equalsExact(expected.reverse(), 1e-7));
+	}
+
+	private static SimpleFeatureGenerator.OSMUnion relationUnion(long id, String type, Object... members){
+		SimpleFeatureGenerator.OSMUnion union = new SimpleFeatureGenerator.OSMUnion();
+		union.OsmType = SimpleFeatureGenerator.OSMType.RELATION;
+		union.Id = id;
+		union.tags.put("type", type);
+		for (int i = 0; i < members.length; i += 2){
+			SimpleFeatureGenerator.RelationSet set = new SimpleFeatureGenerator.RelationSet();
+			set.MemType = (MemberType) members[i];
+			set.MemId = (Long) members[i + 1];
+			set.RoleId = "";
+			union.relationSets.put(i / 2, set);
+		}
+		return union;
+	}
+
+	@Test
+	public void testPrefetchedWaysFromShuffledScans() throws Exception {
+		ShuffledScanner scanner = scanner();
+		OsmProvider provider = new OsmProvider(args(0, 0), scanner.proxy());
+		List<SimpleFeatureGenerator.OSMUnion> batch = new ArrayList<>();
+		for (int i = 0; i < WAYS; i++){
+			batch.add(wayUnion(i));
+		}
+		provider.prefetch(batch);
+		//every node of the batch in one scan
+		Assert.assertEquals(Collections.singletonList("n"), scanner.scans);
+		for (int i = 0; i < WAYS; i++){
+			assertWayLine(i, provider.processWay(batch.get(i), lineFeature()));
+		}
+		Assert.assertEquals(1, scanner.scans.size());
+		provider.close();
+	}
+
+	@Test
+	public void testWaysFromShuffledScans() throws Exception {
+		OsmProvider provider = new OsmProvider(args(0, 0), scanner().proxy());
+		for (int i = 0; i < WAYS; i++){
+			assertWayLine(i, provider.processWay(wayUnion(i), lineFeature()));
+		}
+		provider.close();
+	}
+
+	@Test
+	public void testMemberWaysFromShuffledScans() throws Exception {
+		Object[] members = new Object[2 * WAYS];
+		for (int i = 0; i < WAYS; i++){
+			members[2 * i] = MemberType.WAY;
+			members[2 * i + 1] = WAY_BASE + i;
+		}
+		SimpleFeatureGenerator.OSMUnion route = relationUnion(5000, "route", members);
+
+		ShuffledScanner scanner = scanner();
+		OsmProvider provider = new OsmProvider(args(0, 0), scanner.proxy());
+		provider.prefetch(Collections.singletonList(route));
+		//one way scan and one node scan for the whole relation
+		Assert.assertEquals(2, scanner.scans.size());
+		assertLine(line(1, 2 * WAYS + 1), provider.processRelation(route, lineFeature()));
+		Assert.assertEquals(2, scanner.scans.size());
+		provider.close();
+	}
+
+	@Test
+	public void testNestedRelationsReadOneLevelPerScan() throws Exception {
+		ShuffledScanner scanner = scanner();
+		OsmProvider provider = new OsmProvider(args(0, 100), scanner.proxy());
+		SimpleFeatureGenerator.OSMUnion master = relationUnion(ROUTE_MASTER, "route_master", MemberType.RELATION, SUPERROUTE);
+		assertLine(line(1, 2 * WAYS + 1), provider.processRelation(master, lineFeature()));
+		//the superroute, then both routes together
+		Assert.assertEquals(2, count(scanner.scans, "r"));
+		//the nodes of each route's ways together, not one scan per way
+		Assert.assertEquals(2, count(scanner.scans, "n"));
+		provider.close();
+	}
+
+	@Test
+	public void testRelationLinesAreCached() throws Exception {
+		ShuffledScanner scanner = scanner();
+		OsmProvider provider = new OsmProvider(args(0, 100), scanner.proxy());
+		SimpleFeatureGenerator.OSMUnion master = relationUnion(ROUTE_MASTER, "route_master", MemberType.RELATION, SUPERROUTE);
+		assertLine(line(1, 2 * WAYS + 1), provider.processRelation(master, lineFeature()));
+		int scans = scanner.scans.size();
+
+		//every member line was built for the route master
+		SimpleFeatureGenerator.OSMUnion superroute = relationUnion(SUPERROUTE, "superroute", MemberType.RELATION, FIRST_HALF, MemberType.RELATION, SECOND_HALF);
+		assertLine(line(1, 2 * WAYS + 1), provider.processRelation(superroute, lineFeature()));
+		SimpleFeatureGenerator.OSMUnion firstHalf = relationUnion(FIRST_HALF + 100, "route", MemberType.RELATION, FIRST_HALF);
+		assertLine(line(1, WAYS + 1), provider.processRelation(firstHalf, lineFeature()));
+		Assert.assertEquals(scans, scanner.scans.size());
+
+		provider.close();
+
+		//without the cache the members are read again
+		scanner = scanner();
+		provider = new OsmProvider(args(0, 0), scanner.proxy());
+		assertLine(line(1, 2 * WAYS + 1), provider.processRelation(superroute, lineFeature()));
+		//one scan for both routes, then one way and one node scan per route
+		Assert.assertEquals(1, count(scanner.scans, "r"));
+		Assert.assertEquals(2, count(scanner.scans, "w"));
+		Assert.assertEquals(2, count(scanner.scans, "n"));
+		provider.close();
+	}
+
+	@Test
+	public void testCachedMembersSurviveEviction() throws Exception {
+		OsmProvider provider = new OsmProvider(args(0, 1), scanner().proxy());
+		SimpleFeatureGenerator.OSMUnion firstHalf = relationUnion(FIRST_HALF + 100, "route", MemberType.RELATION, FIRST_HALF);
+		assertLine(line(1, WAYS + 1), provider.processRelation(firstHalf, lineFeature()));
+
+		//the second half is assembled first and pushes the cached first half out
+		SimpleFeatureGenerator.OSMUnion superroute = relationUnion(SUPERROUTE + 100, "superroute", MemberType.RELATION, SECOND_HALF, MemberType.RELATION, FIRST_HALF);
+		assertLine(line(1, 2 * WAYS + 1), provider.processRelation(superroute, lineFeature()));
+		provider.close();
+	}
+
+	@Test
+	public void testMultipolygonNodesInOneScan() throws Exception {
+		ShuffledScanner scanner = scanner();
+		OsmProvider provider = new OsmProvider(args(0, 0), scanner.proxy());
+		//ways 0 and 1 run out along the zig zag, and the closing way back to the start is stored alongside
+		BatchWriter writer = connector.createBatchWriter(TABLE, new BatchWriterConfig());
+		Way closing = new Way();
+		closing.setCommon(primitive(WAY_BASE + 100));
+		closing.setNodes(Arrays.asList(5L, 1L));
+		writer.addMutation(columns.getMutation(closing));
+		writer.close();
+
+		SimpleFeatureGenerator.OSMUnion area = relationUnion(8001, "multipolygon", MemberType.WAY, WAY_BASE, MemberType.WAY, WAY_BASE + 1, MemberType.WAY, WAY_BASE + 100);
+		for (SimpleFeatureGenerator.RelationSet member : area.relationSets.values()){
+			member.RoleId = "outer";
+		}
+		FeatureDefinition fd = new FeatureDefinition();
+		fd.Type = FeatureType.Polygon;
+		Geometry polygon = provider.processRelation(area, fd);
+		Assert.assertNotNull(polygon);
+		Assert.assertEquals(6, polygon.getCoordinates().length);
+		Assert.assertEquals(1, count(scanner.scans, "w"));
+		Assert.assertEquals(1, count(scanner.scans, "n"));
+		provider.close();
+	}
+
+	@Test
+	public void testMemberCyclesAreSkipped() throws Exception {
+		ShuffledScanner scanner = scanner();
+		OsmProvider provider = new OsmProvider(args(0, 100), scanner.proxy());
+		SimpleFeatureGenerator.OSMUnion cycle = relationUnion(CYCLE_A, "route", MemberType.WAY, WAY_BASE, MemberType.RELATION, CYCLE_B);
+		//way 0 and, through the other relation, way 1
+		assertLine(line(1, 5), provider.processRelation(cycle, lineFeature()));
+		Assert.assertEquals(1, count(scanner.scans, "r"));
+
+		SimpleFeatureGenerator.OSMUnion self = relationUnion(6001, "route", MemberType.WAY, WAY_BASE + 2, MemberType.RELATION, 6001L);
+		assertLine(line(5, 7), provider.processRelation(self, lineFeature()));
+		Assert.assertEquals(1, count(scanner.scans, "r"));
+		provider.close();
+	}
+
+	@Test
+	public void testMissingMembersAreLeftOut() throws Exception {
+		OsmProvider provider = new OsmProvider(args(0, 100), scanner().proxy());
+		SimpleFeatureGenerator.OSMUnion route = relationUnion(7001, "route", MemberType.WAY, WAY_BASE + 3, MemberType.WAY, 9999L, MemberType.RELATION, 9998L, MemberType.NODE, 1L);
+		assertLine(line(7, 9), provider.processRelation(route, lineFeature()));
+
+		SimpleFeatureGenerator.OSMUnion empty = relationUnion(7002, "route", MemberType.WAY, 9999L);
+		Assert.assertNull(provider.processRelation(empty, lineFeature()));
+		provider.close();
+	}
+}
@@ -0,0 +1,117 @@
+package mil.nga.giat.osm.mapreduce.Ingest;
+
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.RelationMember;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.mapred.AvroKey;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class OSMEntityMapperTest
+{
+
+	private static Primitive primitive(long id){
+		Primitive p = new Primitive();
+		p.setId(id);
+		p.setVersion(1L);
+		p.setTimestamp(1L);
+		p.setChangesetId(1L);
+		p.setVisible(true);
+		return p;
+	}
+
+	private static Way way(long id){
+		Way w = new Way();
+		w.setCommon(primitive(id));
+		w.setNodes(Arrays.asList(1L, 2L));
+		return w;
+	}
+
+	/**
+	 * Keeps the mutations instead of writing them to the context
+	 */
+	private static class CollectingMapper extends OSMEntityMapper
+	{
+		private final List<Mutation> mutations = new ArrayList<>();
+
+		@Override
+		protected void write(Context context, Mutation m) {
+			mutations.add(m);
+		}
+	}
+
+	private static byte[] family(Mutation m){
+		ColumnUpdate update = m.getUpdates().get(0);
+		return update.getColumnFamily();
+	}
+
+	@Test
+	public void testStagedFileResolvesToItsBranch() throws IOException {
+		File file = File.createTempFile("ways", ".avro");
+		file.deleteOnExit();
+		DataFileWriter<Way> writer = new DataFileWriter<>(new SpecificDatumWriter<>(Way.class));
+		writer.create(Way.getClassSchema(), file);
+		writer.append(way(5));
+		writer.close();
+
+		DataFileReader<Object> reader = new DataFileReader<>(file, new SpecificDatumReader<Object>(OSMEntityMapper.UNION_SCHEMA));
+		try {
+			Object datum = reader.next();
+			Assert.assertTrue(datum instanceof Way);
+			Assert.assertEquals(Long.valueOf(5), ((Way) datum).getCommon().getId());
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testDispatchesOnRecordType() throws Exception {
+		Node node = new Node();
+		node.setCommon(primitive(1));
+		node.setLatitude(1.0);
+		node.setLongitude(2.0);
+
+		RelationMember member = new RelationMember();
+		member.setMember(5L);
+		member.setRole("outer");
+		member.setMemberType(MemberType.WAY);
+		Relation relation = new Relation();
+		relation.setCommon(primitive(9));
+		relation.setMembers(Arrays.asList(member));
+
+		CollectingMapper mapper = new CollectingMapper();
+		mapper.map(new AvroKey<Object>(node), null, null);
+		mapper.map(new AvroKey<Object>(way(5)), null, null);
+		mapper.map(new AvroKey<Object>(relation), null, null);
+
+		Assert.assertEquals(3, mapper.mutations.size());
+		Assert.assertArrayEquals(Schema.getIdHash(1), mapper.mutations.get(0).getRow());
+		Assert.assertArrayEquals(Schema.CF.NODE, family(mapper.mutations.get(0)));
+		Assert.assertArrayEquals(Schema.getIdHash(5), mapper.mutations.get(1).getRow());
+		Assert.assertArrayEquals(Schema.CF.WAY, family(mapper.mutations.get(1)));
+		Assert.assertArrayEquals(Schema.getIdHash(9), mapper.mutations.get(2).getRow());
+		Assert.assertArrayEquals(Schema.CF.RELATION, family(mapper.mutations.get(2)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsOtherRecords() throws Exception {
+		new CollectingMapper().map(new AvroKey<Object>("not an entity"), null, null);
+	}
+}
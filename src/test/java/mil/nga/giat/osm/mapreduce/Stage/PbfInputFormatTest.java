@@ -0,0 +1,104 @@
+package mil.nga.giat.osm.mapreduce.Stage;
+
+import mil.nga.giat.osm.TestData;
+import mil.nga.giat.osm.parser.PbfBlob;
+import mil.nga.giat.osm.parser.PbfBlobReader;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PbfInputFormatTest
+{
+
+	private static String TEST_DATA_PBF;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setupTestData()
+			throws Exception {
+		TEST_DATA_PBF = TestData.getAndorraPbf();
+	}
+
+	@Test
+	public void testSplitsCoverEveryBlobOnce()
+			throws Exception {
+		List<Integer> expected = new ArrayList<>();
+		PbfBlobReader reader = new PbfBlobReader(new FileInputStream(TEST_DATA_PBF));
+		try {
+			PbfBlob blob;
+			while ((blob = reader.next()) != null){
+				expected.add(blob.getData().remaining());
+			}
+		}
+		finally {
+			IOUtils.closeQuietly(reader);
+		}
+
+		//split sizes well below the blob size, so most splits start mid blob and some contain no blob start at all
+		long length = new File(TEST_DATA_PBF).length();
+		long splitSize = 100 * 1024;
+		Configuration conf = new Configuration();
+		List<Integer> actual = new ArrayList<>();
+		for (long start = 0; start < length; start += splitSize){
+			PbfBlobRecordReader split = new PbfBlobRecordReader();
+			try {
+				split.initialize(
+						new FileSplit(new Path(new File(TEST_DATA_PBF).toURI()), start, Math.min(splitSize, length - start), null),
+						new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+				while (split.nextKeyValue()){
+					actual.add(split.getCurrentValue().getData().remaining());
+				}
+			}
+			finally {
+				split.close();
+			}
+		}
+
+		Assert.assertTrue(expected.size() > 1);
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testListsOnlyPbfFiles()
+			throws Exception {
+		folder.newFile("a.pbf");
+		folder.newFile("_SUCCESS");
+		folder.newFile("README");
+		folder.newFolder("extracts");
+		folder.newFile("extracts/b.pbf");
+		folder.newFile("extracts/notes.txt");
+
+		Job job = Job.getInstance(new Configuration());
+		FileInputFormat.setInputPaths(job, new Path(folder.getRoot().toURI()));
+		FileInputFormat.setInputDirRecursive(job, true);
+		Set<String> names = new HashSet<>();
+		for (FileStatus status : new PbfInputFormat().listStatus(job)){
+			names.add(status.getPath().getName());
+		}
+
+		Set<String> expected = new HashSet<>();
+		expected.add("a.pbf");
+		expected.add("b.pbf");
+		Assert.assertEquals(expected, names);
+	}
+}
@@ -0,0 +1,44 @@
+package mil.nga.giat.osm.osmfeature.types.features;
+
+import mil.nga.giat.osm.osmfeature.types.attributes.AttributeDefinition;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FeaturePlanTest {
+
+	private static AttributeDefinition attribute(String type, String name, String key){
+		AttributeDefinition ad = new AttributeDefinition();
+		ad.Type = type;
+		ad.Name = name;
+		ad.Key = key;
+		return ad;
+	}
+
+	@Test
+	public void testSteps() {
+		FeatureDefinition fd = new FeatureDefinition();
+		fd.Name = "amenities";
+		fd.Attributes.add(attribute("id", "osm_id", null));
+		fd.Attributes.add(attribute("string", "Name:EN", "name:en"));
+		fd.Attributes.add(attribute("mapping_value", "type", null));
+		fd.Attributes.add(attribute("unknown", "skipped", "skipped"));
+
+		SimpleFeatureTypeBuilder sftb = new SimpleFeatureTypeBuilder();
+		sftb.setName("amenities");
+		sftb.add("osm_id", Long.class);
+		sftb.add("name_en", String.class);
+		sftb.add("type", String.class);
+
+		FeaturePlan plan = new FeaturePlan(fd, sftb.buildFeatureType());
+		Assert.assertEquals(3, plan.steps.size());
+		Assert.assertEquals(FeaturePlan.Source.ID, plan.steps.get(0).source);
+		Assert.assertEquals(0, plan.steps.get(0).slot);
+		Assert.assertEquals(42L, plan.steps.get(0).convert(42L));
+		Assert.assertEquals(FeaturePlan.Source.TAG, plan.steps.get(1).source);
+		Assert.assertEquals(1, plan.steps.get(1).slot);
+		Assert.assertEquals("name:en", plan.steps.get(1).tagKey);
+		Assert.assertEquals(FeaturePlan.Source.MAPPING_VALUE, plan.steps.get(2).source);
+		Assert.assertEquals(2, plan.steps.get(2).slot);
+	}
+}
@@ -0,0 +1,60 @@
+package mil.nga.giat.osm.osmfeature.types.features;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MappingIndexTest {
+
+	private static FeatureDefinition mapping(String name, String key, String... values){
+		FeatureDefinition fd = new FeatureDefinition();
+		fd.Name = name;
+		fd.Mappings.put(key, Arrays.asList(values));
+		fd.MappingKeys.add(key);
+		return fd;
+	}
+
+	@Test
+	public void testMatch() {
+		FeatureDefinition schools = mapping("schools", "amenity", "school", "university");
+		FeatureDefinition buildings = mapping("buildings", "building", MappingIndex.WILDCARD_VALUE);
+		FeatureDefinition roads = new FeatureDefinition();
+		roads.Name = "roads";
+		Map<String, List<String>> sub = new HashMap<>();
+		sub.put("highway", Arrays.asList("primary"));
+		roads.SubMappings.put("main", new ArrayList<Map<String, List<String>>>(Arrays.asList(sub)));
+		roads.MappingKeys.add("highway");
+
+		MappingIndex index = new MappingIndex(Arrays.asList(schools, buildings, roads));
+		List<MappingIndex.Rule> rules = new ArrayList<>();
+
+		index.match("amenity", "school", rules);
+		Assert.assertEquals(1, rules.size());
+		Assert.assertSame(schools, rules.get(0).definition);
+		Assert.assertEquals(0, rules.get(0).ordinal);
+
+		rules.clear();
+		index.match("amenity", "cafe", rules);
+		Assert.assertTrue(rules.isEmpty());
+
+		rules.clear();
+		index.match("building", "yes", rules);
+		Assert.assertEquals(1, rules.size());
+		Assert.assertSame(buildings, rules.get(0).definition);
+
+		rules.clear();
+		index.match("highway", "primary", rules);
+		Assert.assertEquals(1, rules.size());
+		Assert.assertTrue(rules.get(0).subMapping);
+		Assert.assertEquals(2, rules.get(0).ordinal);
+
+		rules.clear();
+		index.match("name", "school", rules);
+		Assert.assertTrue(rules.isEmpty());
+	}
+}
@@ -0,0 +1,74 @@
+package mil.nga.giat.osm.parser;
+
+import mil.nga.giat.osm.types.FixedPoint;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class NodeLocationIndexTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testHeapAndSpill() throws Exception {
+		File spill = new File(folder.getRoot(), "locations.idx");
+		NodeLocationIndex index = new NodeLocationIndex(4, spill);
+		index.put(1L, FixedPoint.pack(0, 0));
+		index.put(5L, FixedPoint.pack(10, -10));
+		Assert.assertEquals(FixedPoint.pack(0, 0), index.get(1L));
+		Assert.assertEquals(FixedPoint.pack(10, -10), index.get(5L));
+		Assert.assertEquals(FixedPoint.NO_LOCATION, index.get(3L));
+		Assert.assertFalse(spill.exists());
+
+		//out of order ids move everything to the mapped file
+		index.put(2L, FixedPoint.pack(2, 2));
+		index.put(-7L, FixedPoint.pack(7, 7));
+		index.put(300000000L, FixedPoint.pack(-900000000, 1800000000));
+		Assert.assertTrue(spill.exists());
+		Assert.assertEquals(FixedPoint.pack(0, 0), index.get(1L));
+		Assert.assertEquals(FixedPoint.pack(10, -10), index.get(5L));
+		Assert.assertEquals(FixedPoint.pack(2, 2), index.get(2L));
+		Assert.assertEquals(FixedPoint.pack(7, 7), index.get(-7L));
+		Assert.assertEquals(FixedPoint.pack(-900000000, 1800000000), index.get(300000000L));
+		Assert.assertEquals(FixedPoint.NO_LOCATION, index.get(3L));
+		Assert.assertEquals(FixedPoint.NO_LOCATION, index.get(9000000000L));
+
+		index.close();
+		Assert.assertFalse(spill.exists());
+	}
+
+	@Test
+	public void testSortedStore() throws Exception {
+		SortedNodeLocationStore store = new SortedNodeLocationStore(3);
+		store.put(10L, FixedPoint.pack(1, 1));
+		store.put(20L, FixedPoint.pack(2, 2));
+		Assert.assertFalse(store.accepts(15L));
+		Assert.assertTrue(store.accepts(30L));
+		store.put(30L, FixedPoint.pack(3, 3));
+		Assert.assertFalse(store.accepts(40L));
+		Assert.assertEquals(FixedPoint.pack(2, 2), store.get(20L));
+		Assert.assertEquals(FixedPoint.NO_LOCATION, store.get(25L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSortedStoreRejectsOutOfOrder() throws Exception {
+		SortedNodeLocationStore store = new SortedNodeLocationStore(10);
+		store.put(10L, FixedPoint.pack(1, 1));
+		store.put(5L, FixedPoint.pack(1, 1));
+	}
+
+	@Test
+	public void testMappedStoreKeepsZeroLocations() throws Exception {
+		File path = new File(folder.getRoot(), "mapped.idx");
+		MappedNodeLocationStore store = new MappedNodeLocationStore(path);
+		store.put(42L, FixedPoint.pack(0, 0));
+		Assert.assertEquals(FixedPoint.pack(0, 0), store.get(42L));
+		Assert.assertEquals(FixedPoint.NO_LOCATION, store.get(41L));
+		store.close();
+		Assert.assertFalse(path.exists());
+	}
+}
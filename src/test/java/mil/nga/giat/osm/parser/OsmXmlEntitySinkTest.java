@@ -0,0 +1,170 @@
+package mil.nga.giat.osm.parser;
+
+import mil.nga.giat.osm.types.generated.MemberType;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class OsmXmlEntitySinkTest
+{
+	private static final String XML =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<osm version=\"0.6\" generator=\"test\">\n" +
+			" <node id=\"1\" version=\"2\" timestamp=\"2014-01-01T00:00:10Z\" uid=\"7\" user=\"mapper\" changeset=\"3\" lat=\"42.5\" lon=\"1.5\">\n" +
+			"  <tag k=\"amenity\" v=\"school\"/>\n" +
+			" </node>\n" +
+			" <node id=\"2\" version=\"1\" timestamp=\"2014-01-01T00:00:00Z\" uid=\"7\" user=\"mapper\" changeset=\"3\" lat=\"-42.25\" lon=\"-1.25\"/>\n" +
+			" <way id=\"10\" version=\"1\" timestamp=\"2014-01-01T00:00:00Z\" uid=\"7\" user=\"mapper\" changeset=\"3\">\n" +
+			"  <nd ref=\"1\"/>\n" +
+			"  <nd ref=\"2\"/>\n" +
+			"  <tag k=\"highway\" v=\"path\"/>\n" +
+			" </way>\n" +
+			" <relation id=\"20\" version=\"1\" timestamp=\"2014-01-01T00:00:00Z\" uid=\"7\" user=\"mapper\" changeset=\"3\">\n" +
+			"  <member type=\"way\" ref=\"10\" role=\"outer\"/>\n" +
+			"  <member type=\"node\" ref=\"2\" role=\"\"/>\n" +
+			"  <tag k=\"type\" v=\"multipolygon\"/>\n" +
+			" </relation>\n" +
+			"</osm>\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class CollectingSink implements OsmEntitySink
+	{
+		private final List<Node> nodes = new ArrayList<>();
+		private final List<Way> ways = new ArrayList<>();
+		private final List<Relation> relations = new ArrayList<>();
+
+		@Override
+		public void write(Node node) throws IOException {
+			nodes.add(node);
+		}
+
+		@Override
+		public void write(Way way) throws IOException {
+			ways.add(way);
+		}
+
+		@Override
+		public void write(Relation relation) throws IOException {
+			relations.add(relation);
+		}
+	}
+
+	private static File write(OutputStream os, File file) throws IOException {
+		try {
+			os.write(XML.getBytes("UTF-8"));
+		}
+		finally {
+			os.close();
+		}
+		return file;
+	}
+
+	private File plain() throws IOException {
+		File file = new File(folder.getRoot(), "test.osm");
+		return write(new FileOutputStream(file), file);
+	}
+
+	private File gzip() throws IOException {
+		File file = new File(folder.getRoot(), "test.osm.gz");
+		return write(new GZIPOutputStream(new FileOutputStream(file)), file);
+	}
+
+	private File bzip2() throws IOException {
+		File file = new File(folder.getRoot(), "test.osm.bz2");
+		return write(new BZip2CompressorOutputStream(new FileOutputStream(file)), file);
+	}
+
+	private static void assertEntities(CollectingSink sink){
+		Assert.assertEquals(2, sink.nodes.size());
+		Node node = sink.nodes.get(0);
+		Assert.assertEquals(1L, node.getCommon().getId().longValue());
+		Assert.assertEquals(2L, node.getCommon().getVersion().longValue());
+		Assert.assertEquals(3L, node.getCommon().getChangesetId().longValue());
+		Assert.assertEquals(7L, node.getCommon().getUserId().longValue());
+		Assert.assertEquals("mapper", node.getCommon().getUserName().toString());
+		//seconds, as PBF parsing stores them
+		Assert.assertEquals(1388534410L, node.getCommon().getTimestamp().longValue());
+		Assert.assertEquals(42.5, node.getLatitude(), 0);
+		Assert.assertEquals(1.5, node.getLongitude(), 0);
+		Assert.assertEquals("school", node.getCommon().getTags().get("amenity").toString());
+		Assert.assertEquals(-42.25, sink.nodes.get(1).getLatitude(), 0);
+		Assert.assertTrue(sink.nodes.get(1).getCommon().getTags().isEmpty());
+
+		Assert.assertEquals(1, sink.ways.size());
+		Way way = sink.ways.get(0);
+		Assert.assertEquals(10L, way.getCommon().getId().longValue());
+		Assert.assertEquals(Arrays.asList(1L, 2L), way.getNodes());
+		Assert.assertEquals("path", way.getCommon().getTags().get("highway").toString());
+
+		Assert.assertEquals(1, sink.relations.size());
+		Relation relation = sink.relations.get(0);
+		Assert.assertEquals(20L, relation.getCommon().getId().longValue());
+		Assert.assertEquals(2, relation.getMembers().size());
+		Assert.assertEquals(10L, relation.getMembers().get(0).getMember().longValue());
+		Assert.assertEquals(MemberType.WAY, relation.getMembers().get(0).getMemberType());
+		Assert.assertEquals("outer", relation.getMembers().get(0).getRole().toString());
+		Assert.assertEquals(2L, relation.getMembers().get(1).getMember().longValue());
+		Assert.assertEquals(MemberType.NODE, relation.getMembers().get(1).getMemberType());
+		Assert.assertEquals("", relation.getMembers().get(1).getRole().toString());
+		Assert.assertEquals("multipolygon", relation.getCommon().getTags().get("type").toString());
+	}
+
+	@Test
+	public void testReadsPlainXml() throws IOException {
+		CollectingSink sink = new CollectingSink();
+		OsmXmlEntitySink.read(plain(), sink, 1);
+		assertEntities(sink);
+	}
+
+	@Test
+	public void testReadsGzipXml() throws IOException {
+		CollectingSink sink = new CollectingSink();
+		OsmXmlEntitySink.read(gzip(), sink, 1);
+		assertEntities(sink);
+	}
+
+	@Test
+	public void testReadsBzip2Xml() throws IOException {
+		CollectingSink sink = new CollectingSink();
+		OsmXmlEntitySink.read(bzip2(), sink, 2);
+		assertEntities(sink);
+	}
+
+	@Test
+	public void testSinkErrorsStopTheParse() throws IOException {
+		final List<Node> written = new ArrayList<>();
+		OsmEntitySink failing = new CollectingSink()
+		{
+			@Override
+			public void write(Node node) throws IOException {
+				written.add(node);
+				throw new IOException("full");
+			}
+		};
+		try {
+			OsmXmlEntitySink.read(plain(), failing, 1);
+			Assert.fail("sink error was swallowed");
+		}
+		catch (OsmosisRuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertEquals(1, written.size());
+	}
+}
@@ -0,0 +1,122 @@
+package mil.nga.giat.osm.parser;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+public class ParallelBzip2InputStreamTest
+{
+
+	private static byte[] xml(int nodes){
+		Random random = new Random(7);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < nodes; i++){
+			sb.append("<node id=\"").append(random.nextLong()).append("\" lat=\"").append(random.nextDouble()).append("\"/>\n");
+		}
+		return sb.toString().getBytes();
+	}
+
+	private static void compress(byte[] data, int from, int to, ByteArrayOutputStream into) throws IOException {
+		//100k blocks, so the data spans many blocks
+		BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(into, 1);
+		out.write(data, from, to - from);
+		out.finish();
+	}
+
+	@Test
+	public void testMatchesSerialDecompression() throws IOException {
+		byte[] data = xml(50000);
+		//two concatenated streams, as pbzip2 writes
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compress(data, 0, data.length / 3, compressed);
+		compress(data, data.length / 3, data.length, compressed);
+
+		InputStream is = new ParallelBzip2InputStream(new ByteArrayInputStream(compressed.toByteArray()), 4);
+		try {
+			Assert.assertArrayEquals(data, IOUtils.toByteArray(is));
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Cuts every block in two, as a block magic occurring by chance inside the compressed data would
+	 */
+	private static class FalseMagicStream extends ParallelBzip2InputStream
+	{
+		FalseMagicStream(InputStream in, int threads) throws IOException {
+			super(in, threads);
+		}
+
+		@Override
+		void emit(BitBuffer bits, boolean block) throws InterruptedException {
+			if (!block){
+				super.emit(bits, block);
+				return;
+			}
+			long half = bits.length() / 2;
+			super.emit(bits.slice(0, half), true);
+			super.emit(bits.slice(half, bits.length()), true);
+		}
+	}
+
+	@Test
+	public void testFalseMagicIsMerged() throws IOException {
+		byte[] data = xml(20000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compress(data, 0, data.length, compressed);
+		byte[] serial = IOUtils.toByteArray(new BZip2CompressorInputStream(new ByteArrayInputStream(compressed.toByteArray()), true));
+
+		InputStream is = new FalseMagicStream(new ByteArrayInputStream(compressed.toByteArray()), 3);
+		try {
+			Assert.assertArrayEquals(serial, IOUtils.toByteArray(is));
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testReaderFailuresReachTheCaller() throws IOException {
+		byte[] data = xml(20000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compress(data, 0, data.length, compressed);
+		final byte[] bytes = compressed.toByteArray();
+		InputStream failing = new ByteArrayInputStream(bytes)
+		{
+			@Override
+			public synchronized int read(byte[] b, int off, int len){
+				if (pos > bytes.length / 2){
+					throw new IllegalStateException("source failed");
+				}
+				return super.read(b, off, len);
+			}
+		};
+
+		InputStream is = new ParallelBzip2InputStream(failing, 2);
+		try {
+			IOUtils.toByteArray(is);
+			Assert.fail("reader failure was swallowed");
+		}
+		catch (IOException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsOtherInput() throws IOException {
+		new ParallelBzip2InputStream(new ByteArrayInputStream("<osm/>".getBytes()), 2);
+	}
+}
@@ -0,0 +1,94 @@
+package mil.nga.giat.osm.parser;
+
+import mil.nga.giat.osm.TestData;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Relation;
+import mil.nga.giat.osm.types.generated.Way;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.osmosis.osmbinary.file.BlockInputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelPbfProcessorTest
+{
+
+	private static String TEST_DATA_PBF;
+
+	@BeforeClass
+	public static void setupTestData()
+			throws Exception {
+		TEST_DATA_PBF = TestData.getAndorraPbf();
+	}
+
+	@Test
+	public void testParallelMatchesSerialOrder()
+			throws IOException {
+		IdCollectingSink serial = new IdCollectingSink();
+		InputStream is = new FileInputStream(TEST_DATA_PBF);
+		try {
+			OsmAvroBinaryParser parser = new OsmAvroBinaryParser();
+			parser.setSink(serial);
+			new BlockInputStream(is, parser).process();
+		}
+		finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		IdCollectingSink parallel = new IdCollectingSink();
+		is = new FileInputStream(TEST_DATA_PBF);
+		try {
+			new ParallelPbfProcessor(4, parallel).process(is);
+		}
+		finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		IdCollectingSink mapped = new IdCollectingSink();
+		MappedPbfBlobReader blobs = new MappedPbfBlobReader(new File(TEST_DATA_PBF));
+		try {
+			new ParallelPbfProcessor(2, mapped).process(blobs);
+		}
+		finally {
+			IOUtils.closeQuietly(blobs);
+		}
+
+		Assert.assertTrue(serial.nodes.size() > 0);
+		Assert.assertTrue(serial.ways.size() > 0);
+		Assert.assertEquals(serial.nodes, parallel.nodes);
+		Assert.assertEquals(serial.ways, parallel.ways);
+		Assert.assertEquals(serial.relations, parallel.relations);
+		Assert.assertEquals(serial.nodes, mapped.nodes);
+		Assert.assertEquals(serial.ways, mapped.ways);
+		Assert.assertEquals(serial.relations, mapped.relations);
+	}
+
+	private static class IdCollectingSink implements OsmEntitySink
+	{
+		private final List<Long> nodes = new ArrayList<>();
+		private final List<Long> ways = new ArrayList<>();
+		private final List<Long> relations = new ArrayList<>();
+
+		@Override
+		public void write(Node node) {
+			nodes.add(node.getCommon().getId());
+		}
+
+		@Override
+		public void write(Way way) {
+			ways.add(way.getCommon().getId());
+		}
+
+		@Override
+		public void write(Relation relation) {
+			relations.add(relation.getCommon().getId());
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package mil.nga.giat.osm.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class PbfBlobDecoderTest
+{
+
+	private static void decode(byte... data) throws IOException {
+		PbfBlobDecoder decoder = new PbfBlobDecoder();
+		try {
+			decoder.decode(new PbfBlob(7, PbfBlob.DATA_BLOCK, ByteBuffer.wrap(data)));
+		}
+		finally {
+			decoder.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFixed64() throws IOException {
+		//field 15, wire type 1, with 3 of its 8 bytes
+		decode((byte) ((15 << 3) | 1), 1, 2, 3);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFixed32() throws IOException {
+		//field 15, wire type 5, with 2 of its 4 bytes
+		decode((byte) ((15 << 3) | 5), 1, 2);
+	}
+}
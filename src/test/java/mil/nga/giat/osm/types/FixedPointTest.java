@@ -0,0 +1,85 @@
+package mil.nga.giat.osm.types;
+
+import mil.nga.giat.geowave.core.store.data.field.FieldReader;
+import mil.nga.giat.geowave.core.store.data.field.FieldUtils;
+import mil.nga.giat.osm.accumulo.osmschema.ColumnQualifier;
+import mil.nga.giat.osm.accumulo.osmschema.OsmMutationBuilder;
+import mil.nga.giat.osm.accumulo.osmschema.Schema;
+import mil.nga.giat.osm.types.generated.Node;
+import mil.nga.giat.osm.types.generated.Primitive;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class FixedPointTest
+{
+
+	private final FieldReader<Double> doubleReader = FieldUtils.getDefaultReaderForClass(Double.class);
+
+	private static Node node(double latitude, double longitude){
+		Primitive p = new Primitive();
+		p.setId(1L);
+		p.setVersion(1L);
+		p.setTimestamp(1L);
+		p.setChangesetId(1L);
+		Node n = new Node();
+		n.setCommon(p);
+		n.setLatitude(latitude);
+		n.setLongitude(longitude);
+		return n;
+	}
+
+	private static byte[] column(Mutation m, byte[] cq){
+		for (ColumnUpdate update : m.getUpdates()){
+			if (Arrays.equals(cq, update.getColumnQualifier())){
+				return update.getValue();
+			}
+		}
+		Assert.fail("column not written");
+		return null;
+	}
+
+	private void assertRoundTrip(boolean fixedPoint, double latitude, double longitude, double expectedLatitude, double expectedLongitude){
+		OsmMutationBuilder builder = new OsmMutationBuilder(new ColumnVisibility("public"), Schema.VERSION_COLUMNS, fixedPoint);
+		Mutation m = builder.getMutation(node(latitude, longitude));
+		byte[] lat = column(m, ColumnQualifier.LATITUDE);
+		byte[] lon = column(m, ColumnQualifier.LONGITUDE);
+		Assert.assertEquals(fixedPoint ? FixedPoint.BYTES : 8, lat.length);
+		Assert.assertEquals(expectedLatitude, FixedPoint.readCoordinate(lat), 0);
+		Assert.assertEquals(expectedLongitude, FixedPoint.readCoordinate(lon), 0);
+		Assert.assertEquals(expectedLatitude, FixedPoint.readCoordinate(lat, doubleReader), 0);
+		Assert.assertEquals(expectedLongitude, FixedPoint.readCoordinate(lon, doubleReader), 0);
+	}
+
+	@Test
+	public void testFixedPointColumns(){
+		assertRoundTrip(true, 90, 180, 90, 180);
+		assertRoundTrip(true, -90, -180, -90, -180);
+		assertRoundTrip(true, 42.5063862, 1.5218355, 42.5063862, 1.5218355);
+	}
+
+	@Test
+	public void testFixedPointRoundsToNearest(){
+		//beyond 1e-7 precision, rounded to the nearest step - up to the range limits, never past them
+		assertRoundTrip(true, 89.99999996, 179.99999996, 90, 180);
+		assertRoundTrip(true, -89.99999996, -179.99999996, -90, -180);
+		assertRoundTrip(true, 0.00000004, -0.00000006, 0, -0.0000001);
+	}
+
+	@Test
+	public void testLegacyDoubleColumns(){
+		assertRoundTrip(false, 89.99999996, -179.99999996, 89.99999996, -179.99999996);
+		assertRoundTrip(false, -90, 180, -90, 180);
+	}
+
+	@Test
+	public void testPack(){
+		long packed = FixedPoint.pack(FixedPoint.toFixed(-90), FixedPoint.toFixed(-180));
+		Assert.assertEquals(-90, FixedPoint.toDegrees(FixedPoint.packedLatitude(packed)), 0);
+		Assert.assertEquals(-180, FixedPoint.toDegrees(FixedPoint.packedLongitude(packed)), 0);
+	}
+}